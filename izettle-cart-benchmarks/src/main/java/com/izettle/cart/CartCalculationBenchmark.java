@@ -0,0 +1,82 @@
+package com.izettle.cart;
+
+import com.izettle.cart.benchmarks.BenchmarkDiscount;
+import com.izettle.cart.benchmarks.BenchmarkItem;
+import com.izettle.cart.benchmarks.BenchmarkServiceCharge;
+import com.izettle.cart.benchmarks.Carts;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The item line calculations of a cart, done by the primitive {@link CartCalculation} against the reference
+ * implementation in {@link CartUtils} (which the cart used before), and the construction of a complete cart. Lives in
+ * the cart's package to reach the package private calculations. Run with {@code -prof gc} to compare allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartCalculationBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int lines;
+
+    @Param({"false", "true"})
+    public boolean discounts;
+
+    private List<BenchmarkItem> items;
+    private List<BenchmarkDiscount> cartDiscounts;
+    private BenchmarkServiceCharge serviceCharge;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        items = Carts.items(lines, 42L);
+        cartDiscounts = Carts.discounts(discounts);
+        serviceCharge = Carts.serviceCharge(true);
+    }
+
+    @Benchmark
+    public void reference(final Blackhole blackhole) {
+        final long grossValue = CartUtils.getGrossValue(items);
+        final Long cartWideDiscountValue = CartUtils.getTotalCartWideDiscountValue(cartDiscounts, grossValue);
+        final List<ItemLine<BenchmarkItem, BenchmarkDiscount>> itemLines =
+            CartUtils.buildItemLines(items, grossValue, cartWideDiscountValue);
+        blackhole.consume(CartUtils.getTotalDiscountValue(cartDiscounts, grossValue, items));
+        blackhole.consume(CartUtils.summarizeGrossVat(itemLines));
+        blackhole.consume(CartUtils.summarizeEffectiveVat(itemLines, null));
+        blackhole.consume(itemLines);
+    }
+
+    @Benchmark
+    public void primitive(final Blackhole blackhole) {
+        final CartCalculation calculation = new CartCalculation(items, cartDiscounts);
+        blackhole.consume(calculation.getDiscountValue());
+        blackhole.consume(calculation.getGrossVat());
+        blackhole.consume(calculation.getActualVat(null));
+        blackhole.consume(calculation.buildItemLines(items));
+    }
+
+    @Benchmark
+    public Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> cart() {
+        return new Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge>(
+            items,
+            cartDiscounts,
+            serviceCharge
+        );
+    }
+}
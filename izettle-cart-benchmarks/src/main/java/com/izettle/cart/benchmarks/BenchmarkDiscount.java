@@ -0,0 +1,39 @@
+package com.izettle.cart.benchmarks;
+
+import com.izettle.cart.Discount;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+public final class BenchmarkDiscount implements Discount<BenchmarkDiscount>, Serializable {
+
+    private static final long serialVersionUID = 4907254190843826129L;
+    private final Long amount;
+    private final Double percentage;
+    private final BigDecimal quantity;
+
+    public BenchmarkDiscount(final Long amount, final Double percentage, final BigDecimal quantity) {
+        this.amount = amount;
+        this.percentage = percentage;
+        this.quantity = quantity;
+    }
+
+    @Override
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public Long getAmount() {
+        return amount;
+    }
+
+    @Override
+    public Double getPercentage() {
+        return percentage;
+    }
+
+    @Override
+    public BenchmarkDiscount inverse() {
+        return new BenchmarkDiscount(amount, percentage, quantity.negate());
+    }
+}
@@ -0,0 +1,65 @@
+package com.izettle.cart.benchmarks;
+
+import com.izettle.cart.Item;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+public final class BenchmarkItem implements Item<BenchmarkItem, BenchmarkDiscount>, Serializable {
+
+    private static final long serialVersionUID = -2150813397015361872L;
+    private final Object id;
+    private final long unitPrice;
+    private final Float vatPercentage;
+    private final BigDecimal quantity;
+    private final BenchmarkDiscount discount;
+
+    public BenchmarkItem(
+        final Object id,
+        final long unitPrice,
+        final Float vatPercentage,
+        final BigDecimal quantity,
+        final BenchmarkDiscount discount
+    ) {
+        this.id = id;
+        this.unitPrice = unitPrice;
+        this.vatPercentage = vatPercentage;
+        this.quantity = quantity;
+        this.discount = discount;
+    }
+
+    @Override
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public long getUnitPrice() {
+        return unitPrice;
+    }
+
+    @Override
+    public Float getVatPercentage() {
+        return vatPercentage;
+    }
+
+    @Override
+    public BenchmarkItem inverse() {
+        return new BenchmarkItem(
+            id,
+            unitPrice,
+            vatPercentage,
+            quantity.negate(),
+            discount == null ? null : discount.inverse()
+        );
+    }
+
+    @Override
+    public BenchmarkDiscount getDiscount() {
+        return discount;
+    }
+
+    @Override
+    public Object getId() {
+        return id;
+    }
+}
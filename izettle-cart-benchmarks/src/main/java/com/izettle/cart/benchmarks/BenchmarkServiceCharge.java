@@ -0,0 +1,51 @@
+package com.izettle.cart.benchmarks;
+
+import com.izettle.cart.ServiceCharge;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+public final class BenchmarkServiceCharge implements ServiceCharge<BenchmarkServiceCharge>, Serializable {
+
+    private static final long serialVersionUID = -6781052339176532301L;
+    private final Float vatPercentage;
+    private final Long amount;
+    private final Double percentage;
+    private final BigDecimal quantity;
+
+    public BenchmarkServiceCharge(
+        final Float vatPercentage,
+        final Long amount,
+        final Double percentage,
+        final BigDecimal quantity
+    ) {
+        this.vatPercentage = vatPercentage;
+        this.amount = amount;
+        this.percentage = percentage;
+        this.quantity = quantity;
+    }
+
+    @Override
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public Float getVatPercentage() {
+        return vatPercentage;
+    }
+
+    @Override
+    public Long getAmount() {
+        return amount;
+    }
+
+    @Override
+    public Double getPercentage() {
+        return percentage;
+    }
+
+    @Override
+    public BenchmarkServiceCharge inverse() {
+        return new BenchmarkServiceCharge(vatPercentage, amount, percentage, quantity.negate());
+    }
+}
@@ -0,0 +1,174 @@
+package com.izettle.cart.benchmarks;
+
+import com.izettle.cart.AlterationCart;
+import com.izettle.cart.AlterationLedger;
+import com.izettle.cart.Cart;
+import com.izettle.cart.CartCache;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The public operations of a cart, as used by a point of sale: its value only (as in a list of purchases), all its
+ * values and lines (as on a receipt), the same receipt created through a {@link CartCache} holding its calculation, its
+ * inverse (a full return), a series of partial returns, and previews of returning each line after a first return.
+ * Run with {@code -prof gc} to see the allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartBenchmark {
+
+    private static final int ALTERATIONS = 5;
+
+    @Param({"1", "10", "100", "1000"})
+    public int lines;
+
+    @Param({"false", "true"})
+    public boolean discounts;
+
+    private List<BenchmarkItem> items;
+    private List<BenchmarkDiscount> cartDiscounts;
+    private BenchmarkServiceCharge serviceCharge;
+    private Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> cart;
+    private List<Map<Object, BigDecimal>> alterations;
+    private CartCache cache;
+    private List<Map<Object, BigDecimal>> previousAlterations;
+    private List<Map<Object, BigDecimal>> previews;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        items = Carts.items(lines, 42L);
+        cartDiscounts = Carts.discounts(discounts);
+        serviceCharge = Carts.serviceCharge(discounts);
+        cart = newCart();
+        alterations = Carts.alterations(items, ALTERATIONS, 42L);
+        cache = new CartCache(16);
+        previousAlterations = alterations.subList(0, 1);
+        previews = new ArrayList<Map<Object, BigDecimal>>();
+        for (Map.Entry<Object, BigDecimal> remaining : cart.getRemainingItems(previousAlterations).entrySet()) {
+            if (remaining.getValue().signum() > 0) {
+                previews.add(Collections.singletonMap(remaining.getKey(), remaining.getValue().negate()));
+            }
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public long value() {
+        return newCart().getValue();
+    }
+
+    @Benchmark
+    public void receipt(final Blackhole blackhole) {
+        receipt(blackhole, newCart());
+    }
+
+    private static void receipt(
+        final Blackhole blackhole,
+        final Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> receipt
+    ) {
+        blackhole.consume(receipt.getValue());
+        blackhole.consume(receipt.getActualVat());
+        blackhole.consume(receipt.getDiscountValue());
+        blackhole.consume(receipt.getItemLines());
+        blackhole.consume(receipt.getDiscountLines());
+        blackhole.consume(receipt.groupValuesByVatPercentage());
+    }
+
+    /**
+     * The receipt again, with the calculation of the cart taken from the cache.
+     */
+    @Benchmark
+    public void cachedReceipt(final Blackhole blackhole) {
+        receipt(blackhole, cache.cart(items, cartDiscounts, serviceCharge));
+    }
+
+    @Benchmark
+    public long inverse() {
+        return cart.inverse().getValue();
+    }
+
+    /**
+     * Each partial return calculated from the original cart and the returns before it, as a stateless service does.
+     */
+    @Benchmark
+    public void alterations(final Blackhole blackhole) {
+        for (int i = 0; i < alterations.size(); i++) {
+            blackhole.consume(cart.createAlterationCart(alterations.subList(0, i), alterations.get(i)).getValue());
+        }
+    }
+
+    /**
+     * The same partial returns, applied one after the other to a ledger.
+     */
+    @Benchmark
+    public void ledger(final Blackhole blackhole) {
+        final AlterationLedger<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> ledger =
+            AlterationLedger.of(cart);
+        for (Map<Object, BigDecimal> alteration : alterations) {
+            blackhole.consume(ledger.apply(alteration).getValue());
+        }
+    }
+
+    /**
+     * The value of returning each remaining line, one preview after the other as a refund screen does today.
+     */
+    @Benchmark
+    public void previews(final Blackhole blackhole) {
+        for (Map<Object, BigDecimal> preview : previews) {
+            final AlterationCart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> refund =
+                cart.createAlterationCart(previousAlterations, preview);
+            blackhole.consume(refund.getValue());
+            blackhole.consume(refund.getActualVat());
+        }
+    }
+
+    /**
+     * The same previews, calculated in parallel from the cart after the first return.
+     */
+    @Benchmark
+    public void parallelPreviews(final Blackhole blackhole) {
+        for (AlterationCart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> refund
+            : cart.createAlterationCarts(previousAlterations, previews, executor)) {
+            blackhole.consume(refund.getValue());
+            blackhole.consume(refund.getActualVat());
+        }
+    }
+
+    private Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> newCart() {
+        return new Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge>(
+            items,
+            cartDiscounts,
+            serviceCharge
+        );
+    }
+}
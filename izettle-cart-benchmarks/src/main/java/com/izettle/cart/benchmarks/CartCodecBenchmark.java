@@ -0,0 +1,169 @@
+package com.izettle.cart.benchmarks;
+
+import com.izettle.cart.Cart;
+import com.izettle.cart.CartCodec;
+import com.izettle.cart.CartInput;
+import com.izettle.cart.CartOutput;
+import com.izettle.cart.PayloadCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding computed carts with {@link CartCodec}, against Java serialization. The encoded size is reported
+ * as the {@code bytes} counter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartCodecBenchmark {
+
+    private static final PayloadCodec<BenchmarkDiscount> DISCOUNT_CODEC = new PayloadCodec<BenchmarkDiscount>() {
+        @Override
+        public void write(final BenchmarkDiscount discount, final CartOutput out) {
+            out.writeNullableVarLong(discount.getAmount());
+            out.writeNullableDouble(discount.getPercentage());
+            out.writeBigDecimal(discount.getQuantity());
+        }
+
+        @Override
+        public BenchmarkDiscount read(final CartInput in) {
+            return new BenchmarkDiscount(in.readNullableVarLong(), in.readNullableDouble(), in.readBigDecimal());
+        }
+    };
+
+    private static final PayloadCodec<BenchmarkItem> ITEM_CODEC = new PayloadCodec<BenchmarkItem>() {
+        @Override
+        public void write(final BenchmarkItem item, final CartOutput out) {
+            out.writeVarLong(((Integer) item.getId()).longValue());
+            out.writeVarLong(item.getUnitPrice());
+            out.writeVatPercentage(item.getVatPercentage());
+            out.writeBigDecimal(item.getQuantity());
+            out.writeBoolean(item.getDiscount() != null);
+            if (item.getDiscount() != null) {
+                DISCOUNT_CODEC.write(item.getDiscount(), out);
+            }
+        }
+
+        @Override
+        public BenchmarkItem read(final CartInput in) {
+            return new BenchmarkItem(
+                (int) in.readVarLong(),
+                in.readVarLong(),
+                in.readVatPercentage(),
+                in.readBigDecimal(),
+                in.readBoolean() ? DISCOUNT_CODEC.read(in) : null
+            );
+        }
+    };
+
+    private static final PayloadCodec<BenchmarkServiceCharge> SERVICE_CHARGE_CODEC =
+        new PayloadCodec<BenchmarkServiceCharge>() {
+            @Override
+            public void write(final BenchmarkServiceCharge serviceCharge, final CartOutput out) {
+                out.writeVatPercentage(serviceCharge.getVatPercentage());
+                out.writeNullableVarLong(serviceCharge.getAmount());
+                out.writeNullableDouble(serviceCharge.getPercentage());
+                out.writeBigDecimal(serviceCharge.getQuantity());
+            }
+
+            @Override
+            public BenchmarkServiceCharge read(final CartInput in) {
+                return new BenchmarkServiceCharge(
+                    in.readVatPercentage(),
+                    in.readNullableVarLong(),
+                    in.readNullableDouble(),
+                    in.readBigDecimal()
+                );
+            }
+        };
+
+    @Param({"1", "10", "100", "1000"})
+    public int lines;
+
+    private final CartCodec<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> codec =
+        new CartCodec<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge>(
+            ITEM_CODEC,
+            DISCOUNT_CODEC,
+            SERVICE_CHARGE_CODEC
+        );
+    private Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> cart;
+    private byte[] encoded;
+    private byte[] serialized;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cart = new Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge>(
+            Carts.items(lines, 42L),
+            Carts.discounts(true),
+            Carts.serviceCharge(true)
+        );
+        encoded = codec.encode(cart);
+        serialized = serialize(cart);
+    }
+
+    @Benchmark
+    public byte[] encode(final Size size) {
+        final byte[] bytes = codec.encode(cart);
+        size.bytes += bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Cart<BenchmarkItem, BenchmarkDiscount, BenchmarkDiscount, BenchmarkServiceCharge> decode() {
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] serialize(final Size size) throws IOException {
+        final byte[] bytes = serialize(cart);
+        size.bytes += bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] serialize(final Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        try {
+            out.writeObject(object);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,102 @@
+package com.izettle.cart.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reproducible cart contents resembling real purchases: mixed VAT rates, fractional (weighed) quantities, the
+ * occasional percentage or amount item discount, and partial returns.
+ */
+public final class Carts {
+
+    private static final Float[] VAT_PERCENTAGES = {25f, 12f, 6f, 0f, null};
+
+    private Carts() {
+    }
+
+    public static List<BenchmarkItem> items(final int lines, final long seed) {
+        final Random random = new Random(seed);
+        final List<BenchmarkItem> items = new ArrayList<BenchmarkItem>(lines);
+        for (int i = 0; i < lines; i++) {
+            final BigDecimal quantity = random.nextInt(4) == 0
+                ? BigDecimal.valueOf(1 + random.nextInt(2500), 3)
+                : BigDecimal.valueOf(1 + random.nextInt(3));
+            final BenchmarkDiscount discount;
+            switch (random.nextInt(10)) {
+                case 0:
+                    discount = new BenchmarkDiscount(null, (double) (5 * (1 + random.nextInt(10))), BigDecimal.ONE);
+                    break;
+                case 1:
+                    discount = new BenchmarkDiscount((long) (10 * (1 + random.nextInt(10))), null, BigDecimal.ONE);
+                    break;
+                default:
+                    discount = null;
+                    break;
+            }
+            items.add(new BenchmarkItem(
+                i,
+                100 + random.nextInt(50000),
+                VAT_PERCENTAGES[random.nextInt(VAT_PERCENTAGES.length)],
+                quantity,
+                discount
+            ));
+        }
+        return items;
+    }
+
+    public static List<BenchmarkDiscount> discounts(final boolean withDiscounts) {
+        if (!withDiscounts) {
+            return Collections.emptyList();
+        }
+        final List<BenchmarkDiscount> discounts = new ArrayList<BenchmarkDiscount>(2);
+        discounts.add(new BenchmarkDiscount(null, 12.5d, BigDecimal.ONE));
+        discounts.add(new BenchmarkDiscount(1000L, null, BigDecimal.ONE));
+        return discounts;
+    }
+
+    /**
+     * Partial returns of the items, as made one after the other: each returns one unit, or all of a weighed quantity,
+     * of a few of the items that remain.
+     * @param items the items of the cart, with unique ids
+     * @param steps the number of alterations
+     * @param seed the seed of the returned items
+     * @return the alterations, in order
+     */
+    public static List<Map<Object, BigDecimal>> alterations(
+        final List<BenchmarkItem> items,
+        final int steps,
+        final long seed
+    ) {
+        final Random random = new Random(seed);
+        final Map<Object, BigDecimal> remaining = new HashMap<Object, BigDecimal>();
+        for (BenchmarkItem item : items) {
+            remaining.put(item.getId(), item.getQuantity());
+        }
+        final List<Map<Object, BigDecimal>> alterations = new ArrayList<Map<Object, BigDecimal>>(steps);
+        for (int step = 0; step < steps; step++) {
+            final Map<Object, BigDecimal> alteration = new HashMap<Object, BigDecimal>();
+            for (int i = 0; i < 1 + items.size() / 10; i++) {
+                final Object id = items.get(random.nextInt(items.size())).getId();
+                final BigDecimal quantity = remaining.get(id);
+                if (quantity.signum() > 0 && !alteration.containsKey(id)) {
+                    final BigDecimal returned = quantity.compareTo(BigDecimal.ONE) > 0 ? BigDecimal.ONE : quantity;
+                    alteration.put(id, returned.negate());
+                    remaining.put(id, quantity.subtract(returned));
+                }
+            }
+            if (!alteration.isEmpty()) {
+                alterations.add(alteration);
+            }
+        }
+        return alterations;
+    }
+
+    public static BenchmarkServiceCharge serviceCharge(final boolean withServiceCharge) {
+        return withServiceCharge ? new BenchmarkServiceCharge(25f, null, 10d, BigDecimal.ONE) : null;
+    }
+}
@@ -20,19 +20,28 @@ import java.util.TreeMap;
 public class AlterationCart<T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>> {
 
     /**
-     * The last version of the cart, after previous alterations has been applied
+     * The last version of the cart, after previous alterations has been applied. It holds altered copies of the items,
+     * discounts and service charge of the cart, rather than instances of the type parameters.
      */
-    private final Cart<T, D, K, S> originalCart;
+    private final Cart<?, ?, ?, ?> originalCart;
     /**
      * The residual cart after the current alteration has been applied
     */
-    private final Cart<T, D, K, S> resultingCart;
+    private final Cart<?, ?, ?, ?> resultingCart;
 
-    AlterationCart(final Cart<T, D, K, S> originalCart, final Cart<T, D, K, S> resultingCart) {
+    AlterationCart(final Cart<?, ?, ?, ?> originalCart, final Cart<?, ?, ?, ?> resultingCart) {
         this.originalCart = originalCart;
         this.resultingCart = resultingCart;
     }
 
+    Cart<?, ?, ?, ?> getOriginalCart() {
+        return originalCart;
+    }
+
+    Cart<?, ?, ?, ?> getResultingCart() {
+        return resultingCart;
+    }
+
     public Double getActualDiscountPercentage() {
         return originalCart.getActualDiscountPercentage();
     }
@@ -0,0 +1,228 @@
+package com.izettle.cart;
+
+import com.izettle.cart.exception.CartException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The alterations made so far to a cart, such as the partial returns of a purchase, together with the state of the
+ * cart after them. Where {@link Cart#createAlterationCart(List, Map)} merges all previous alterations and applies them
+ * to the original cart on every call, the ledger keeps the merged alterations and the altered cart, and only merges in
+ * each new alteration as it is applied.
+ * <p>
+ * The ledger answers exactly as {@link Cart#createAlterationCart(List, Map)} and {@link Cart#getRemainingItems(List)}
+ * would, given the alterations applied to it as previous alterations. When the cart has cart wide discounts, a service
+ * charge, item discounts with amounts (all of which are scaled by how much of the cart remains) or several items with
+ * the same id, the altered cart is therefore rebuilt from the original cart after each alteration, but only when it is
+ * next needed, and without merging the earlier alterations again.
+ * <p>
+ * A ledger is persisted as its cart and merged alterations, see {@link #restore(Cart, Map)}, or by serialization. It
+ * is not thread safe, but calculates previews of many alterations in parallel, see
+ * {@link #createAlterationCarts(ExecutorService, List)}.
+ * @param <T> the type of the items
+ * @param <D> the type of the line item discounts
+ * @param <K> the type of the cart-wide discounts
+ * @param <S> the type of the service charge
+ */
+public final class AlterationLedger<T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>,
+    S extends ServiceCharge<S>> implements Serializable {
+
+    private static final long serialVersionUID = 2935811326187145632L;
+    private final Cart<T, D, K, S> cart;
+    private final Map<Object, BigDecimal> mergedAlterations;
+    /**
+     * Whether applying an alteration to the altered cart gives the same cart as applying all alterations so far to the
+     * original cart.
+     */
+    private final boolean incremental;
+    /**
+     * The cart after the merged alterations, or null if not calculated since the last alteration.
+     */
+    private transient Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge>
+        alteredCart;
+
+    private AlterationLedger(final Cart<T, D, K, S> cart, final Map<Object, BigDecimal> mergedAlterations) {
+        this.cart = cart;
+        this.mergedAlterations = mergedAlterations;
+        this.incremental = isIncremental(cart);
+    }
+
+    /**
+     * @param cart the original cart
+     * @return a ledger of a cart without alterations
+     */
+    public static <T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>>
+    AlterationLedger<T, D, K, S> of(final Cart<T, D, K, S> cart) {
+        return new AlterationLedger<T, D, K, S>(cart, new HashMap<Object, BigDecimal>());
+    }
+
+    /**
+     * @param cart the original cart
+     * @param previousAlterations the alterations already made to the cart, possibly null
+     * @return a ledger of the cart with the alterations applied
+     */
+    public static <T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>>
+    AlterationLedger<T, D, K, S> of(
+        final Cart<T, D, K, S> cart,
+        final List<Map<Object, BigDecimal>> previousAlterations
+    ) {
+        return new AlterationLedger<T, D, K, S>(cart, AlterationUtils.mergeAlterations(previousAlterations));
+    }
+
+    /**
+     * Restores a persisted ledger.
+     * @param cart the original cart
+     * @param mergedAlterations the merged alterations of the ledger, as returned by {@link #getMergedAlterations()}
+     * @return a ledger of the cart with the alterations applied
+     */
+    public static <T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>>
+    AlterationLedger<T, D, K, S> restore(
+        final Cart<T, D, K, S> cart,
+        final Map<Object, BigDecimal> mergedAlterations
+    ) {
+        return new AlterationLedger<T, D, K, S>(cart, new HashMap<Object, BigDecimal>(mergedAlterations));
+    }
+
+    /**
+     * Calculates the alteration without applying it to the ledger.
+     * @param alteration the altered quantities to apply
+     * @return the value of the alteration
+     * @see Cart#createAlterationCart(List, Map)
+     */
+    public AlterationCart<T, D, K, S> createAlterationCart(final Map<Object, BigDecimal> alteration) {
+        final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> before =
+            getAlteredCart();
+        return new AlterationCart<T, D, K, S>(before, before.applyAlteration(alteration));
+    }
+
+    /**
+     * Calculates many alterations in parallel without applying any of them to the ledger, such as previews of returning
+     * each line of a purchase, or several lines together. The cart after the alterations so far is calculated once, on
+     * the calling thread, and shared by the tasks, which apply the alterations to it and calculate the totals of the
+     * carts after them. The calling thread waits for all of them.
+     * @param executor the executor to calculate the alterations in
+     * @param alterations the altered quantities of each alteration
+     * @return the value of each alteration, in the order of the alterations, as
+     * {@link #createAlterationCart(Map)} would calculate it
+     * @throws CartException if interrupted while waiting
+     */
+    public List<AlterationCart<T, D, K, S>> createAlterationCarts(
+        final ExecutorService executor,
+        final List<Map<Object, BigDecimal>> alterations
+    ) {
+        final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> before =
+            getAlteredCart();
+        // the totals of the shared cart, calculated once instead of by every task
+        before.getDiscountValue();
+        before.getActualVat();
+        final int size = alterations.size();
+        final int chunkSize = CartBatch.chunkSize(size, Runtime.getRuntime().availableProcessors(), 1);
+        final List<Callable<List<AlterationCart<T, D, K, S>>>> chunks =
+            new ArrayList<Callable<List<AlterationCart<T, D, K, S>>>>();
+        for (int from = 0; from < size; from += chunkSize) {
+            final List<Map<Object, BigDecimal>> chunk = alterations.subList(from, Math.min(from + chunkSize, size));
+            chunks.add(new Callable<List<AlterationCart<T, D, K, S>>>() {
+                @Override
+                public List<AlterationCart<T, D, K, S>> call() {
+                    final List<AlterationCart<T, D, K, S>> alterationCarts =
+                        new ArrayList<AlterationCart<T, D, K, S>>(chunk.size());
+                    for (Map<Object, BigDecimal> alteration : chunk) {
+                        final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount,
+                            AlteredCartServiceCharge> after = before.applyAlteration(alteration);
+                        after.getDiscountValue();
+                        after.getActualVat();
+                        alterationCarts.add(new AlterationCart<T, D, K, S>(before, after));
+                    }
+                    return alterationCarts;
+                }
+            });
+        }
+        final List<AlterationCart<T, D, K, S>> alterationCarts = new ArrayList<AlterationCart<T, D, K, S>>(size);
+        for (List<AlterationCart<T, D, K, S>> chunk : CartBatch.invokeAll(executor, chunks, "altering cart")) {
+            alterationCarts.addAll(chunk);
+        }
+        return alterationCarts;
+    }
+
+    /**
+     * Calculates the alteration and applies it to the ledger, as the last of the previous alterations. Nothing is
+     * applied if the alteration is invalid.
+     * @param alteration the altered quantities to apply
+     * @return the value of the alteration
+     * @see Cart#createAlterationCart(List, Map)
+     */
+    public AlterationCart<T, D, K, S> apply(final Map<Object, BigDecimal> alteration) {
+        final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> before =
+            getAlteredCart();
+        final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> after =
+            before.applyAlteration(alteration);
+        final boolean zero = AlterationUtils.mergeAlteration(mergedAlterations, alteration);
+        // a zero merged quantity is rejected by the original cart, but not by the altered one
+        alteredCart = incremental && !zero ? after : null;
+        return new AlterationCart<T, D, K, S>(before, after);
+    }
+
+    /**
+     * @return A map of quantities available for alteration
+     * @see Cart#getRemainingItems(List)
+     */
+    public Map<Object, BigDecimal> getRemainingItems() {
+        final ItemIndex items = cart.getItemIndex();
+        if (alteredCart != null || items.hasDuplicateIds()) {
+            return cart.getRemainingItems(getAlteredCart());
+        }
+        // validated as applying them to the cart would, without building the cart after them
+        ItemUtils.validateQuantities(mergedAlterations.values());
+        AlterationUtils.validateItems(cart, mergedAlterations);
+        return items.getRemainingQuantities(mergedAlterations);
+    }
+
+    /**
+     * @return the sum of the alterations applied so far, per item id
+     */
+    public Map<Object, BigDecimal> getMergedAlterations() {
+        return Collections.unmodifiableMap(mergedAlterations);
+    }
+
+    /**
+     * @return the original cart
+     */
+    public Cart<T, D, K, S> getCart() {
+        return cart;
+    }
+
+    private Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge>
+    getAlteredCart() {
+        if (alteredCart == null) {
+            alteredCart = cart.applyAlteration(mergedAlterations);
+        }
+        return alteredCart;
+    }
+
+    /**
+     * Applying alterations one by one only gives the same cart as applying them at once if nothing is scaled by the
+     * ratio between the gross values before and after an alteration, and if every alteration is applied to a single
+     * item.
+     */
+    private static boolean isIncremental(final Cart<?, ?, ?, ?> cart) {
+        if (!cart.getDiscounts().isEmpty() || cart.getServiceChargeLine() != null) {
+            return false;
+        }
+        if (cart.getItemIndex().hasDuplicateIds()) {
+            return false;
+        }
+        for (Item<?, ?> item : cart.getItems()) {
+            if (item.getDiscount() != null && item.getDiscount().getAmount() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -5,7 +5,6 @@ import static com.izettle.cart.CartUtils.coalesce;
 import com.izettle.cart.exception.InsufficientQuantityException;
 import com.izettle.cart.exception.UnknownItemException;
 import java.math.BigDecimal;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,11 +17,11 @@ public class AlterationUtils {
         final Cart<T, D, K, S> originalCart,
         final Map<Object, BigDecimal> alteredItems
     ) {
-        final Map<Object, BigDecimal> originalQuantities = getQuantityById(originalCart);
+        final ItemIndex originalItems = originalCart.getItemIndex();
         for (Map.Entry<Object, BigDecimal> entry : alteredItems.entrySet()) {
             final Object itemId = entry.getKey();
             final BigDecimal quantityChange = entry.getValue();
-            final BigDecimal originalQuantity = originalQuantities.get(itemId);
+            final BigDecimal originalQuantity = originalItems.getQuantity(itemId);
             if (originalQuantity == null) {
                 throw new UnknownItemException(
                     "Cannot alter quantity, as original cart did not contain any item with id: " + itemId
@@ -39,22 +38,6 @@ public class AlterationUtils {
         }
     }
 
-    private static <T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>, I extends Object>
-        Map<Object, BigDecimal> getQuantityById(
-        final Cart<T, D, K, S> cart
-    ) {
-        if (cart == null) {
-            return Collections.EMPTY_MAP;
-        }
-        final Map<Object, BigDecimal> quantityById = new HashMap<Object, BigDecimal>();
-        for (ItemLine<T, D> itemLine : cart.getItemLines()) {
-            final T item = itemLine.getItem();
-            final Object id = item.getId();
-            quantityById.put(id, coalesce(quantityById.get(id), BigDecimal.ZERO).add(item.getQuantity()));
-        }
-        return quantityById;
-    }
-
     static Map<Object, BigDecimal> mergeAlterations(
         final List<Map<Object, BigDecimal>> alterations
     ) {
@@ -62,13 +45,27 @@ public class AlterationUtils {
         final Map<Object, BigDecimal> mergedAlterations = new HashMap<Object, BigDecimal>();
         if (alterations != null) {
             for (Map<Object, BigDecimal> previousAlteration : alterations) {
-                for (Entry<Object, BigDecimal> entry : previousAlteration.entrySet()) {
-                    final Object id = entry.getKey();
-                    final BigDecimal quantity = entry.getValue();
-                    mergedAlterations.put(id, coalesce(mergedAlterations.get(id), BigDecimal.ZERO).add(quantity));
-                }
+                mergeAlteration(mergedAlterations, previousAlteration);
             }
         }
         return mergedAlterations;
     }
+
+    /**
+     * Adds the quantities of the alteration to the merged alterations.
+     * @return true if any of the merged quantities became zero
+     */
+    static boolean mergeAlteration(
+        final Map<Object, BigDecimal> mergedAlterations,
+        final Map<Object, BigDecimal> alteration
+    ) {
+        boolean zero = false;
+        for (Entry<Object, BigDecimal> entry : alteration.entrySet()) {
+            final Object id = entry.getKey();
+            final BigDecimal quantity = coalesce(mergedAlterations.get(id), BigDecimal.ZERO).add(entry.getValue());
+            mergedAlterations.put(id, quantity);
+            zero |= quantity.signum() == 0;
+        }
+        return zero;
+    }
 }
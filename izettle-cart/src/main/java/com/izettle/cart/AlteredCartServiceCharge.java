@@ -12,7 +12,7 @@ class AlteredCartServiceCharge implements ServiceCharge<AlteredCartServiceCharge
     private final Double percentage;
     private final BigDecimal quantity;
 
-    static <S extends ServiceCharge<S>> AlteredCartServiceCharge from(final S serviceCharge) {
+    static AlteredCartServiceCharge from(final ServiceCharge<?> serviceCharge) {
         return new AlteredCartServiceCharge(
             serviceCharge.getVatPercentage(),
             serviceCharge.getAmount(),
@@ -2,6 +2,9 @@ package com.izettle.cart;
 
 import static com.izettle.cart.CartUtils.coalesce;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.MathContext;
@@ -12,21 +15,49 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
 
+/**
+ * An immutable cart. The gross value, cart wide discounts and service charge are calculated on construction, which is
+ * all {@link #getValue()} needs. The item and discount lines, the VAT and the discount values are calculated when first
+ * asked for, and then kept. A cart may be read by several threads: each lazily calculated part is published through a
+ * volatile field, so reading one that is already calculated takes no lock, and threads racing to calculate the same
+ * part calculate the same values.
+ */
 public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>>
     implements Serializable {
 
     private static final long serialVersionUID = 8764117057191413242L;
-    private final List<ItemLine<T, D>> itemLines;
-    private final List<DiscountLine<K>> discountLines;
+    /**
+     * The items and cart wide discounts the lines are calculated from, null in a deserialized cart, which has all its
+     * lines.
+     */
+    private final transient List<T> items;
+    private final transient List<K> discounts;
+    /**
+     * The calculation of the items, null in decoded and deserialized carts, which have everything calculated.
+     */
+    private final transient CartCalculation calculation;
+    private volatile List<ItemLine<T, D>> itemLines;
+    private volatile List<DiscountLine<K>> discountLines;
     private final ServiceChargeLine<S> serviceChargeLine;
     private final long grossValue;
-    private final Long discountValue;
+    private Long discountValue;
     private final Long serviceChargeValue;
     private final Long cartWideDiscountValue;
-    private final Long actualVat;
-    private final Double actualDiscountPercentage;
-    private final Long grossVat;
+    private Long actualVat;
+    private Double actualDiscountPercentage;
+    private Long grossVat;
+    /**
+     * Set after the discount value and actual discount percentage, as null is a valid value for both.
+     */
+    private transient volatile boolean discountValueCalculated;
+    /**
+     * Set after the gross and actual VAT, as null is a valid value for both.
+     */
+    private transient volatile boolean vatCalculated;
+    private transient volatile SortedMap<Float, VatGroupValues> vatGroupValues;
+    private transient volatile ItemIndex itemIndex;
 
     /**
      * Produces a new immutable cart object from Items, Discounts and Service Charge
@@ -35,20 +66,127 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @param serviceCharge The applied service charge, possibly null
      */
     public Cart(final List<T> items, final List<K> discounts, final S serviceCharge) {
+        this(validItems(items), validDiscounts(discounts), serviceCharge, null);
+    }
+
+    /**
+     * @param itemList the validated items, not changed after this call
+     * @param discountList the validated cart wide discounts, not changed after this call
+     * @param serviceCharge the applied service charge, possibly null
+     * @param itemCalculation the calculation of the items and discounts, not changed after this call, or null
+     */
+    Cart(
+        final List<T> itemList,
+        final List<K> discountList,
+        final S serviceCharge,
+        final CartCalculation itemCalculation
+    ) {
+        this.items = itemList;
+        this.discounts = discountList;
+        this.calculation =
+            itemCalculation == null ? new CartCalculation(itemList, discountList) : itemCalculation;
+        this.grossValue = calculation.getGrossValue();
+        this.cartWideDiscountValue = calculation.getCartWideDiscountValue();
+        this.serviceChargeLine = CartUtils.buildServiceChargeLine(grossValue, cartWideDiscountValue, serviceCharge);
+        this.serviceChargeValue = serviceChargeLine == null ? null : serviceChargeLine.getValue();
+    }
+
+    /**
+     * Restores a computed cart, such as one decoded by {@link CartCodec}, without calculating anything.
+     */
+    Cart(
+        final List<ItemLine<T, D>> itemLines,
+        final List<DiscountLine<K>> discountLines,
+        final ServiceChargeLine<S> serviceChargeLine,
+        final long grossValue,
+        final Long discountValue,
+        final Long serviceChargeValue,
+        final Long cartWideDiscountValue,
+        final Long actualVat,
+        final Double actualDiscountPercentage,
+        final Long grossVat
+    ) {
+        this.items = null;
+        this.discounts = null;
+        this.calculation = null;
+        this.itemLines = itemLines;
+        this.discountLines = discountLines;
+        this.serviceChargeLine = serviceChargeLine;
+        this.grossValue = grossValue;
+        this.discountValue = discountValue;
+        this.serviceChargeValue = serviceChargeValue;
+        this.cartWideDiscountValue = cartWideDiscountValue;
+        this.actualVat = actualVat;
+        this.actualDiscountPercentage = actualDiscountPercentage;
+        this.grossVat = grossVat;
+        this.discountValueCalculated = true;
+        this.vatCalculated = true;
+    }
+
+    /**
+     * @return a copy of the items, after validating them
+     */
+    static <T extends Item> List<T> validItems(final List<T> items) {
         ItemUtils.validateItems(items);
-        final List<T> itemList = coalesce(items, Collections.<T>emptyList());
+        return items == null ? Collections.<T>emptyList() : new ArrayList<T>(items);
+    }
+
+    /**
+     * @return a copy of the cart wide discounts, after validating them
+     */
+    static <K extends Discount> List<K> validDiscounts(final List<K> discounts) {
         DiscountUtils.validateDiscounts(discounts);
-        final List<K> discountList = coalesce(discounts, Collections.<K>emptyList());
-        this.grossValue = CartUtils.getGrossValue(itemList);
-        this.discountValue = CartUtils.getTotalDiscountValue(discountList, grossValue, itemList);
-        this.actualDiscountPercentage = CartUtils.getDiscountPercentage(grossValue, discountValue);
-        this.cartWideDiscountValue = CartUtils.getTotalCartWideDiscountValue(discountList, grossValue);
-        this.discountLines = CartUtils.buildDiscountLines(discountList, grossValue, cartWideDiscountValue);
-        this.itemLines = CartUtils.buildItemLines(itemList, grossValue, cartWideDiscountValue);
-        this.serviceChargeLine = CartUtils.buildServiceChargeLine(grossValue, cartWideDiscountValue, serviceCharge);
-        this.serviceChargeValue = CartUtils.getServiceChargeValue(grossValue, cartWideDiscountValue, serviceCharge);
-        this.grossVat = CartUtils.summarizeGrossVat(itemLines);
-        this.actualVat = CartUtils.summarizeEffectiveVat(itemLines, serviceChargeLine);
+        return discounts == null || discounts.isEmpty()
+            ? Collections.<K>emptyList()
+            : new ArrayList<K>(discounts);
+    }
+
+    /**
+     * Calculates everything not yet calculated before writing the cart, so that it is serialized as before the lines
+     * were calculated lazily.
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        getItemLines();
+        getDiscountLines();
+        getDiscountValue();
+        getActualVat();
+        out.defaultWriteObject();
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        discountValueCalculated = true;
+        vatCalculated = true;
+    }
+
+    /**
+     * @return the items of the cart, without calculating the item lines if not already done
+     */
+    List<T> getItems() {
+        if (items != null) {
+            return items;
+        }
+        final List<ItemLine<T, D>> lines = getItemLines();
+        final List<T> itemList = new ArrayList<T>(lines.size());
+        for (ItemLine<T, D> itemLine : lines) {
+            itemList.add(itemLine.getItem());
+        }
+        return itemList;
+    }
+
+    /**
+     * @return the cart wide discounts of the cart, without calculating the discount lines if not already done
+     */
+    List<K> getDiscounts() {
+        if (discounts != null) {
+            return discounts;
+        }
+        final List<DiscountLine<K>> lines = getDiscountLines();
+        final List<K> discountList = new ArrayList<K>(lines.size());
+        for (DiscountLine<K> discountLine : lines) {
+            discountList.add(discountLine.getDiscount());
+        }
+        return discountList;
     }
 
     /**
@@ -68,8 +206,7 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
         AlterationUtils.validateItems(this, alteration);
         //reduce items
         final List<AlteredCartItem> remainingItems = new LinkedList<AlteredCartItem>();
-        for (ItemLine<T, D> itemLine : this.getItemLines()) {
-            final T originalItem = itemLine.getItem();
+        for (T originalItem : getItems()) {
             final AlteredCartItem newItem;
             if (alteration.containsKey(originalItem.getId())) {
                 final BigDecimal quantityChange = alteration.get(originalItem.getId());
@@ -108,8 +245,7 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
                 .divide(BigDecimal.valueOf(this.grossValue), mathContext);
             //reduce discounts
             remainingDiscounts = new LinkedList<AlteredCartDiscount>();
-            for (DiscountLine<K> discountLine : discountLines) {
-                final K oldDiscount = discountLine.getDiscount();
+            for (K oldDiscount : getDiscounts()) {
                 final BigDecimal newQuantity = oldDiscount.getQuantity().multiply(grossValueRatio);
                 if (newQuantity.signum() != 0) {
                     remainingDiscounts.add(AlteredCartDiscount.from(oldDiscount).withQuantity(newQuantity));
@@ -126,8 +262,8 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
         } else {
             //previous cart held no gross value, just copy discounts and service charge as-is
             remainingDiscounts = new LinkedList<AlteredCartDiscount>();
-            for (DiscountLine<K> discountLine : discountLines) {
-                remainingDiscounts.add(AlteredCartDiscount.from(discountLine.getDiscount()));
+            for (K discount : getDiscounts()) {
+                remainingDiscounts.add(AlteredCartDiscount.from(discount));
             }
             if (serviceChargeLine == null) {
                 remainingServiceCharge = null;
@@ -138,20 +274,6 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
         return new Cart(remainingItems, remainingDiscounts, remainingServiceCharge);
     }
 
-    /**
-     * Creates a new cart representing the results after performing multiple quantity alterations of some of the items.
-     * This would typically be used when doing a partial return
-     * This instance is immutable and unaffected by this method call.
-     * @param alterations The items to be altered in the cart. Needs to be a subset of the items in this cart
-     * @return A newly created cart representing the reduced cart
-     */
-    Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> applyAlterations(
-            final List<Map<Object, BigDecimal>> alterations
-    ) {
-        final Map<Object, BigDecimal> mergedAlterations = AlterationUtils.mergeAlterations(alterations);
-        return applyAlteration(mergedAlterations);
-    }
-
     /**
      * Because it's impossible to calculate the value of a return without the context of it's original cart and possible
      * previous returns, this method does just that: calculates the value of a specific alteration.
@@ -166,11 +288,24 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
         final List<Map<Object, BigDecimal>> previousAlterations,
         final Map<Object, BigDecimal> alteration
     ) {
-        final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> cartBeforeLastAlteration
-            = applyAlterations(previousAlterations);
-        final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> cartAfterLatestAlteration
-            = cartBeforeLastAlteration.applyAlteration(alteration);
-        return new AlterationCart(cartBeforeLastAlteration, cartAfterLatestAlteration);
+        return AlterationLedger.of(this, previousAlterations).createAlterationCart(alteration);
+    }
+
+    /**
+     * Calculates the value of each of many alterations in parallel, each as if it were the only one after the previous
+     * alterations, such as previews of returning each line of the cart. The previous alterations are applied once.
+     * @param previousAlterations possibly previous alterations that needs to be taken into consideration
+     * @param alterations the altered quantities of each alteration
+     * @param executor the executor to calculate the alterations in
+     * @return the value of each alteration, in the order of the alterations
+     * @see AlterationLedger#createAlterationCarts(ExecutorService, List)
+     */
+    public List<AlterationCart<T, D, K, S>> createAlterationCarts(
+        final List<Map<Object, BigDecimal>> previousAlterations,
+        final List<Map<Object, BigDecimal>> alterations,
+        final ExecutorService executor
+    ) {
+        return AlterationLedger.of(this, previousAlterations).createAlterationCarts(executor, alterations);
     }
 
     /**
@@ -179,20 +314,37 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return A map of quantities available for alteration
     */
     public Map<Object, BigDecimal> getRemainingItems(final List<Map<Object, BigDecimal>> previousAlterations) {
+        return AlterationLedger.of(this, previousAlterations).getRemainingItems();
+    }
+
+    /**
+     * @return the items by id, made when first asked for
+     */
+    ItemIndex getItemIndex() {
+        ItemIndex index = itemIndex;
+        if (index == null) {
+            index = ItemIndex.of(getItems());
+            itemIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * @param cartAfterAlterations this cart after applying alterations
+     * @return the quantity of each item remaining in the altered cart, zero for the items no longer in it
+     */
+    Map<Object, BigDecimal> getRemainingItems(
         final Cart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> cartAfterAlterations
-            = applyAlterations(previousAlterations);
+    ) {
         final Map<Object, BigDecimal> alterableItems = new HashMap<Object, BigDecimal>();
-        if (cartAfterAlterations.itemLines != null) {
-            for (ItemLine<AlteredCartItem, AlteredCartDiscount> itemLine : cartAfterAlterations.itemLines) {
-                final AlteredCartItem item = itemLine.getItem();
-                alterableItems.put(item.getId(), item.getQuantity());
-            }
+        for (AlteredCartItem item : cartAfterAlterations.getItems()) {
+            alterableItems.put(item.getId(), item.getQuantity());
         }
         //fill out missing ones with zeroes
-        for (ItemLine<T, D> itemLine : getItemLines()) {
-            final Object key = itemLine.getItem().getId();
+        for (T item : getItems()) {
+            final Object key = item.getId();
             if (!alterableItems.containsKey(key)) {
-                alterableItems.put(itemLine.getItem().getId(), BigDecimal.ZERO);
+                alterableItems.put(key, BigDecimal.ZERO);
             }
         }
         return alterableItems;
@@ -206,22 +358,24 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      */
     public Cart<T, D, K, S> inverse() {
         //Copy all items and discounts, but negate the quantities:
+        final List<T> itemList = getItems();
         final List<T> inverseItems;
-        if (itemLines.isEmpty()) {
+        if (itemList.isEmpty()) {
             inverseItems = Collections.emptyList();
         } else {
-            inverseItems = new ArrayList<T>(itemLines.size());
-            for (ItemLine<T, D> itemLine : itemLines) {
-                inverseItems.add(itemLine.getItem().inverse());
+            inverseItems = new ArrayList<T>(itemList.size());
+            for (T item : itemList) {
+                inverseItems.add(item.inverse());
             }
         }
+        final List<K> discountList = getDiscounts();
         final List<K> inverseDiscounts;
-        if (discountLines.isEmpty()) {
+        if (discountList.isEmpty()) {
             inverseDiscounts = Collections.emptyList();
         } else {
-            inverseDiscounts = new ArrayList<K>(discountLines.size());
-            for (DiscountLine<K> discountLine : discountLines) {
-                inverseDiscounts.add(discountLine.getDiscount().inverse());
+            inverseDiscounts = new ArrayList<K>(discountList.size());
+            for (K discount : discountList) {
+                inverseDiscounts.add(discount.inverse());
             }
         }
 
@@ -249,7 +403,12 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return an immutable list of item lines
      */
     public List<ItemLine<T, D>> getItemLines() {
-        return Collections.unmodifiableList(itemLines);
+        List<ItemLine<T, D>> lines = itemLines;
+        if (lines == null) {
+            lines = calculation.buildItemLines(items);
+            itemLines = lines;
+        }
+        return Collections.unmodifiableList(lines);
     }
 
     /**
@@ -258,7 +417,12 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return an immutable list of discount lines
      */
     public List<DiscountLine<K>> getDiscountLines() {
-        return Collections.unmodifiableList(discountLines);
+        List<DiscountLine<K>> lines = discountLines;
+        if (lines == null) {
+            lines = CartUtils.buildDiscountLines(discounts, grossValue, cartWideDiscountValue);
+            discountLines = lines;
+        }
+        return Collections.unmodifiableList(lines);
     }
 
     /**
@@ -282,6 +446,7 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return the amount all discounts
      */
     public Long getDiscountValue() {
+        calculateDiscountValue();
         return discountValue;
     }
 
@@ -290,14 +455,10 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return Total number of discounts.
      */
     public int getNumberOfDiscounts() {
-        int numberOfDiscounts = 0;
+        int numberOfDiscounts = getDiscounts().size();
 
-        if (discountLines != null) {
-            numberOfDiscounts = discountLines.size();
-        }
-
-        for (ItemLine<T, D> itemLine : itemLines) {
-            if (itemLine.getItem().getDiscount() != null) {
+        for (T item : getItems()) {
+            if (item.getDiscount() != null) {
                 numberOfDiscounts++;
             }
         }
@@ -311,6 +472,7 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return The actual VAT amount for this cart, or null of VAT is not applicable
      */
     public Long getActualVat() {
+        calculateVat();
         return actualVat;
     }
 
@@ -319,6 +481,7 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return The VAT amount for this cart before cart wide discounts, or null if VAT is not applicable
      */
     public Long getGrossVat() {
+        calculateVat();
         return grossVat;
     }
 
@@ -328,6 +491,8 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * @return the discount VAT, or null if VAT is not applicable
      */
     public Long getDiscountVat() {
+        calculateDiscountValue();
+        calculateVat();
         if (grossVat == null || actualVat == null || discountValue == null) {
             return null;
         }
@@ -344,15 +509,41 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
      * applicable
      */
     public Double getActualDiscountPercentage() {
+        calculateDiscountValue();
         return actualDiscountPercentage;
     }
 
     /**
      * Will produce a summary of data per used VAT percentage, returned mapped by it's respective VAT percentage
-     * @return the map of values by percentage, or empty maps if VAT is not applicable
+     * @return the unmodifiable map of values by percentage, or empty maps if VAT is not applicable
      */
     public SortedMap<Float, VatGroupValues> groupValuesByVatPercentage() {
-        return CartUtils.groupValuesByVatPercentage(getItemLines(), getServiceChargeLine());
+        SortedMap<Float, VatGroupValues> groups = vatGroupValues;
+        if (groups == null) {
+            groups = Collections.unmodifiableSortedMap(
+                calculation == null
+                    ? VatGroupAccumulator.group(getItemLines(), serviceChargeLine)
+                    : calculation.groupValuesByVatPercentage(serviceChargeLine)
+            );
+            vatGroupValues = groups;
+        }
+        return groups;
+    }
+
+    private void calculateDiscountValue() {
+        if (!discountValueCalculated) {
+            discountValue = calculation.getDiscountValue();
+            actualDiscountPercentage = CartUtils.getDiscountPercentage(grossValue, discountValue);
+            discountValueCalculated = true;
+        }
+    }
+
+    private void calculateVat() {
+        if (!vatCalculated) {
+            grossVat = calculation.getGrossVat();
+            actualVat = calculation.getActualVat(serviceChargeLine);
+            vatCalculated = true;
+        }
     }
 
     public ServiceChargeLine<S> getServiceChargeLine() {
@@ -368,11 +559,11 @@ public class Cart<T extends Item<T, D>, D extends Discount<D>, K extends Discoun
         StringBuilder sb = new StringBuilder();
         sb.append("Cart {\n");
         sb.append("\tItemLines:\n");
-        for (ItemLine<T, D> itemLine : itemLines) {
+        for (ItemLine<T, D> itemLine : getItemLines()) {
             sb.append("\t\t").append(itemLine).append("\n");
         }
         sb.append("\tDiscountLines:\n");
-        for (DiscountLine<K> discountLine : discountLines) {
+        for (DiscountLine<K> discountLine : getDiscountLines()) {
             sb.append("\t\t").append(discountLine).append("\n");
         }
         sb.append("\tGross Amounts:\n");
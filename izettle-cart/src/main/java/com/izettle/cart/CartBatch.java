@@ -0,0 +1,232 @@
+package com.izettle.cart;
+
+import com.izettle.cart.exception.CartException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates many carts at once into {@link CartTotals}, for reports and reconciliations that need the totals of each
+ * cart but none of its lines. Carts are independent of each other, so a batch can be split over the threads of an
+ * executor (typically a {@link java.util.concurrent.ForkJoinPool}) in chunks, with the totals returned in input order.
+ */
+public final class CartBatch {
+
+    /**
+     * Smallest number of carts handed to one task, so that scheduling doesn't outweigh the work of small batches.
+     */
+    static final int MIN_CHUNK_SIZE = 64;
+    /**
+     * Number of chunks per available processor, to even out carts of different sizes.
+     */
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+
+    private CartBatch() {
+    }
+
+    /**
+     * Evaluates the carts on the calling thread.
+     * @param carts the carts to evaluate
+     * @return the totals of each cart, in the order of the carts
+     */
+    public static List<CartTotals> evaluate(final List<? extends CartContents> carts) {
+        final List<CartTotals> totals = new ArrayList<CartTotals>(carts.size());
+        evaluateRange(carts, 0, carts.size(), totals);
+        return totals;
+    }
+
+    /**
+     * Evaluates the carts in parallel, in chunks submitted to the executor. The calling thread waits for all of them.
+     * @param executor the executor to evaluate the chunks in
+     * @param carts the carts to evaluate
+     * @return the totals of each cart, in the order of the carts
+     * @throws CartException if interrupted while waiting
+     */
+    public static List<CartTotals> evaluate(final ExecutorService executor, final List<? extends CartContents> carts) {
+        final int size = carts.size();
+        final int chunkSize = chunkSize(size, Runtime.getRuntime().availableProcessors());
+        if (size <= chunkSize) {
+            return evaluate(carts);
+        }
+        final List<Callable<List<CartTotals>>> chunks = new ArrayList<Callable<List<CartTotals>>>();
+        for (int from = 0; from < size; from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(from + chunkSize, size);
+            chunks.add(new Callable<List<CartTotals>>() {
+                @Override
+                public List<CartTotals> call() {
+                    final List<CartTotals> totals = new ArrayList<CartTotals>(chunkTo - chunkFrom);
+                    evaluateRange(carts, chunkFrom, chunkTo, totals);
+                    return totals;
+                }
+            });
+        }
+        final List<CartTotals> totals = new ArrayList<CartTotals>(size);
+        for (List<CartTotals> chunk : invokeAll(executor, chunks, "evaluating carts")) {
+            totals.addAll(chunk);
+        }
+        return totals;
+    }
+
+    /**
+     * Sums the carts in parallel, each chunk into a summary of its own, merged in the order of the chunks.
+     * @param executor the executor to sum the chunks in
+     * @param carts the carts to sum
+     * @return the summary of the carts
+     * @throws CartException if interrupted while waiting
+     */
+    public static CartSummary summarize(final ExecutorService executor, final List<? extends CartContents> carts) {
+        final int size = carts.size();
+        final int chunkSize = chunkSize(size, Runtime.getRuntime().availableProcessors());
+        if (size <= chunkSize) {
+            return summarizeRange(carts, 0, size);
+        }
+        final List<Callable<CartSummary>> chunks = new ArrayList<Callable<CartSummary>>();
+        for (int from = 0; from < size; from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(from + chunkSize, size);
+            chunks.add(new Callable<CartSummary>() {
+                @Override
+                public CartSummary call() {
+                    return summarizeRange(carts, chunkFrom, chunkTo);
+                }
+            });
+        }
+        final CartSummary summary = new CartSummary();
+        for (CartSummary chunk : invokeAll(executor, chunks, "summarizing carts")) {
+            summary.merge(chunk);
+        }
+        return summary;
+    }
+
+    /**
+     * Evaluates carts as they are read, for batches too large to hold in memory. Each window of carts is evaluated in
+     * parallel before the next one is read, so at most one window of carts and totals is held at a time.
+     * @param executor the executor to evaluate the windows in
+     * @param carts the carts to evaluate, read as the returned totals are
+     * @param windowSize the number of carts read and evaluated together
+     * @return the totals of each cart, in the order of the carts
+     */
+    public static Iterator<CartTotals> evaluate(
+        final ExecutorService executor,
+        final Iterator<? extends CartContents> carts,
+        final int windowSize
+    ) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        return new Iterator<CartTotals>() {
+            private Iterator<CartTotals> window = Collections.<CartTotals>emptyList().iterator();
+
+            @Override
+            public boolean hasNext() {
+                if (!window.hasNext() && carts.hasNext()) {
+                    final List<CartContents> contents = new ArrayList<CartContents>(windowSize);
+                    while (contents.size() < windowSize && carts.hasNext()) {
+                        contents.add(carts.next());
+                    }
+                    window = evaluate(executor, contents).iterator();
+                }
+                return window.hasNext();
+            }
+
+            @Override
+            public CartTotals next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return window.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    static int chunkSize(final int size, final int processors) {
+        return chunkSize(size, processors, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param size the number of tasks
+     * @param processors the number of available processors
+     * @param minChunkSize the smallest number of tasks to run together, as scheduling one costs about as much as that
+     * @return the number of tasks to run together
+     */
+    static int chunkSize(final int size, final int processors, final int minChunkSize) {
+        final int chunks = Math.max(1, processors) * CHUNKS_PER_PROCESSOR;
+        return Math.max(minChunkSize, (size + chunks - 1) / chunks);
+    }
+
+    /**
+     * Submits the tasks to the executor and waits for all of them. If one fails, those not yet started are cancelled,
+     * and its exception is thrown as it is if unchecked.
+     * @param executor the executor to run the tasks in
+     * @param tasks the tasks to run
+     * @param action what the tasks do, for the message of the exceptions
+     * @return the results of the tasks, in the order of the tasks
+     * @throws CartException if interrupted while waiting, or if a task fails with a checked exception
+     */
+    static <R> List<R> invokeAll(
+        final ExecutorService executor,
+        final List<? extends Callable<R>> tasks,
+        final String action
+    ) {
+        final List<Future<R>> futures = new ArrayList<Future<R>>(tasks.size());
+        try {
+            for (Callable<R> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            final List<R> results = new ArrayList<R>(tasks.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CartException("Interrupted while " + action, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CartException("Failed " + action, cause);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static CartSummary summarizeRange(final List<? extends CartContents> carts, final int from, final int to) {
+        final CartSummary summary = new CartSummary();
+        for (int i = from; i < to; i++) {
+            final CartContents cart = carts.get(i);
+            summary.add(CartTotals.of(cart.getItems(), cart.getDiscounts(), cart.getServiceCharge()));
+        }
+        return summary;
+    }
+
+    private static void evaluateRange(
+        final List<? extends CartContents> carts,
+        final int from,
+        final int to,
+        final List<CartTotals> totals
+    ) {
+        for (int i = from; i < to; i++) {
+            final CartContents cart = carts.get(i);
+            totals.add(CartTotals.of(cart.getItems(), cart.getDiscounts(), cart.getServiceCharge()));
+        }
+    }
+}
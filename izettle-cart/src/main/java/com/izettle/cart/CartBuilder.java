@@ -0,0 +1,221 @@
+package com.izettle.cart;
+
+import static com.izettle.cart.CartUtils.coalesce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A mutable cart, for carts that are edited one item at a time, as during checkout. Where building a new {@link Cart}
+ * for every change calculates every item again, the builder only calculates the values of the added or changed item
+ * and keeps the gross value of the cart as a running total. The cart wide discounts are only distributed over the items
+ * when a value depending on them is asked for, and then once until the next change. {@link #build()} produces the same
+ * cart as the {@link Cart#Cart(List, List, ServiceCharge) constructor} would from the same items, discounts and
+ * service charge.
+ * <p>
+ * Not thread safe, as carts being edited are expected to belong to one checkout at a time.
+ */
+public final class CartBuilder<T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>,
+    S extends ServiceCharge<S>> {
+
+    private final List<T> items = new ArrayList<T>();
+    private final ItemValues itemValues = new ItemValues();
+    private final List<K> discounts = new ArrayList<K>();
+    private S serviceCharge;
+    /**
+     * The distribution of the cart wide discounts over the current items, null if not yet made since the last change.
+     */
+    private CartCalculation calculation;
+
+    /**
+     * Creates a builder holding the items, discounts and service charge of the cart, to continue editing it.
+     * @param cart the cart to start from
+     * @return a new builder
+     */
+    public static <T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>>
+    CartBuilder<T, D, K, S> from(final Cart<T, D, K, S> cart) {
+        final CartBuilder<T, D, K, S> builder = new CartBuilder<T, D, K, S>();
+        for (T item : cart.getItems()) {
+            builder.addItem(item);
+        }
+        for (K discount : cart.getDiscounts()) {
+            builder.addDiscount(discount);
+        }
+        if (cart.getServiceChargeLine() != null) {
+            builder.setServiceCharge(cart.getServiceChargeLine().getServiceCharge());
+        }
+        return builder;
+    }
+
+    /**
+     * @param item the item to add last
+     * @return this builder
+     */
+    public CartBuilder<T, D, K, S> addItem(final T item) {
+        ItemUtils.validateItem(item);
+        itemValues.add(item);
+        items.add(item);
+        calculation = null;
+        return this;
+    }
+
+    /**
+     * @param index the index of the item to replace
+     * @param item the item to replace it with, typically the same item with another quantity or discount
+     * @return the replaced item
+     */
+    public T setItem(final int index, final T item) {
+        ItemUtils.validateItem(item);
+        itemValues.set(index, item);
+        calculation = null;
+        return items.set(index, item);
+    }
+
+    /**
+     * @param index the index of the item to remove
+     * @return the removed item
+     */
+    public T removeItem(final int index) {
+        itemValues.remove(index);
+        calculation = null;
+        return items.remove(index);
+    }
+
+    /**
+     * @return the items, in the order they were added
+     */
+    public List<T> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * @param discount the cart wide discount to add last
+     * @return this builder
+     */
+    public CartBuilder<T, D, K, S> addDiscount(final K discount) {
+        DiscountUtils.validateDiscount(discount);
+        discounts.add(discount);
+        calculation = null;
+        return this;
+    }
+
+    /**
+     * @param index the index of the cart wide discount to remove
+     * @return the removed discount
+     */
+    public K removeDiscount(final int index) {
+        final K discount = discounts.remove(index);
+        calculation = null;
+        return discount;
+    }
+
+    /**
+     * @return the cart wide discounts, in the order they were added
+     */
+    public List<K> getDiscounts() {
+        return Collections.unmodifiableList(discounts);
+    }
+
+    /**
+     * @param serviceCharge the service charge to apply, or null for none
+     * @return this builder
+     */
+    public CartBuilder<T, D, K, S> setServiceCharge(final S serviceCharge) {
+        this.serviceCharge = serviceCharge;
+        return this;
+    }
+
+    public S getServiceCharge() {
+        return serviceCharge;
+    }
+
+    /**
+     * Removes all items, discounts and the service charge.
+     * @return this builder
+     */
+    public CartBuilder<T, D, K, S> clear() {
+        items.clear();
+        itemValues.clear();
+        discounts.clear();
+        serviceCharge = null;
+        calculation = null;
+        return this;
+    }
+
+    /**
+     * @return the gross value of the cart as it would be built now, kept as a running total
+     * @see Cart#getGrossValue()
+     */
+    public long getGrossValue() {
+        return itemValues.getValue();
+    }
+
+    /**
+     * @return the value of the cart wide discounts of the cart as it would be built now, or null if there are none
+     * @see Cart#getCartWideDiscountValue()
+     */
+    public Long getCartWideDiscountValue() {
+        return CartUtils.getTotalCartWideDiscountValue(discounts, getGrossValue());
+    }
+
+    /**
+     * @return the value of the service charge of the cart as it would be built now, or null if there is none
+     * @see Cart#getServiceChargeValue()
+     */
+    public Long getServiceChargeValue() {
+        return CartUtils.getServiceChargeValue(getGrossValue(), getCartWideDiscountValue(), serviceCharge);
+    }
+
+    /**
+     * Only depends on the running gross value and the discounts and service charge, so never distributes the cart
+     * wide discounts.
+     * @return the value of the cart as it would be built now
+     * @see Cart#getValue()
+     */
+    public long getValue() {
+        final long grossValue = getGrossValue();
+        final Long cartWideDiscountValue = CartUtils.getTotalCartWideDiscountValue(discounts, grossValue);
+        final Long serviceChargeValue =
+            CartUtils.getServiceChargeValue(grossValue, cartWideDiscountValue, serviceCharge);
+        return grossValue - coalesce(cartWideDiscountValue, 0L) + coalesce(serviceChargeValue, 0L);
+    }
+
+    /**
+     * @return the actual VAT of the cart as it would be built now, or null if VAT is not applicable
+     * @see Cart#getActualVat()
+     */
+    public Long getActualVat() {
+        final CartCalculation current = calculate();
+        return current.getActualVat(
+            CartUtils.buildServiceChargeLine(
+                current.getGrossValue(),
+                current.getCartWideDiscountValue(),
+                serviceCharge
+            )
+        );
+    }
+
+    /**
+     * Produces the cart of the current items, discounts and service charge. The builder remains usable, and later
+     * changes to it don't affect the built cart.
+     * @return a new immutable cart
+     */
+    public Cart<T, D, K, S> build() {
+        //the cart calculates lazily, so it gets copies of everything that later changes to the builder would affect
+        final List<K> discountList = new ArrayList<K>(discounts);
+        return new Cart<T, D, K, S>(
+            new ArrayList<T>(items),
+            discountList,
+            serviceCharge,
+            new CartCalculation(itemValues.copy(), discountList)
+        );
+    }
+
+    private CartCalculation calculate() {
+        if (calculation == null) {
+            calculation = new CartCalculation(itemValues, discounts);
+        }
+        return calculation;
+    }
+}
@@ -0,0 +1,128 @@
+package com.izettle.cart;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates carts like the {@link Cart#Cart(List, List, ServiceCharge) constructor}, reusing the calculation of earlier
+ * carts with the same items and cart wide discounts, such as a receipt rendered again or a basket priced again between
+ * calls. A calculation is a function of the values in the {@link CartFingerprint fingerprint} of the items and
+ * discounts only, and is never changed once made, so a cart created from a cached one has the very same values as a
+ * new one. The lines of the cart hold the items and discounts it was created from, not those of the cached cart. The
+ * service charge is calculated for each cart, from the cached gross value.
+ * <p>
+ * The cache holds at most a given number of calculations, evicting the least recently used one. It may be shared by
+ * several threads: lookups are synchronized, while calculations are made outside of the lock, so threads missing the
+ * same cart at once may each make it.
+ */
+public final class CartCache {
+
+    private final int maximumSize;
+    private final Map<CartFingerprint, CartCalculation> calculations;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maximumSize the largest number of calculations held, at least one
+     */
+    public CartCache(final int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.calculations = new LinkedHashMap<CartFingerprint, CartCalculation>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<CartFingerprint, CartCalculation> eldest) {
+                if (size() > CartCache.this.maximumSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Same as {@link Cart#Cart(List, List, ServiceCharge)}, with the calculation taken from the cache if present.
+     * @param items the list of items, must not be empty (as a cart without items makes no sense)
+     * @param discounts the list of cart wide discounts, possibly null or empty
+     * @param serviceCharge The applied service charge, possibly null
+     * @return a new cart
+     */
+    public <T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>, S extends ServiceCharge<S>>
+    Cart<T, D, K, S> cart(final List<T> items, final List<K> discounts, final S serviceCharge) {
+        final List<T> itemList = Cart.validItems(items);
+        final List<K> discountList = Cart.validDiscounts(discounts);
+        final CartFingerprint fingerprint = CartFingerprint.of(itemList, discountList);
+        CartCalculation calculation = get(fingerprint);
+        if (calculation == null) {
+            calculation = new CartCalculation(itemList, discountList);
+            put(fingerprint, calculation);
+        }
+        return new Cart<T, D, K, S>(itemList, discountList, serviceCharge, calculation);
+    }
+
+    private synchronized CartCalculation get(final CartFingerprint fingerprint) {
+        final CartCalculation calculation = calculations.get(fingerprint);
+        if (calculation == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return calculation;
+    }
+
+    private synchronized void put(final CartFingerprint fingerprint, final CartCalculation calculation) {
+        calculations.put(fingerprint, calculation);
+    }
+
+    /**
+     * @return the number of carts created from a cached calculation
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of carts calculated anew
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of calculations evicted to keep within the maximum size
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of calculations held
+     */
+    public synchronized int size() {
+        return calculations.size();
+    }
+
+    /**
+     * Removes all calculations, keeping the counts.
+     */
+    public synchronized void clear() {
+        calculations.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CartCache {"
+            + " size = " + calculations.size()
+            + ", maximumSize = " + maximumSize
+            + ", hitCount = " + hitCount
+            + ", missCount = " + missCount
+            + ", evictionCount = " + evictionCount
+            + '}';
+    }
+}
@@ -0,0 +1,207 @@
+package com.izettle.cart;
+
+import static com.izettle.cart.CartUtils.coalesce;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * The per item calculations of a cart, held in primitive arrays indexed like the list of items. Every value is
+ * calculated once (where {@link ItemUtils} recalculates the gross value of an item for every derived value), and
+ * without boxing, maps or queues. The results are identical to those of {@link CartUtils#buildItemLines}, which is kept
+ * as the reference implementation.
+ */
+final class CartCalculation {
+
+    /**
+     * Largest magnitude for which a double is rounded without {@link BigDecimal}. Above it the shortest decimal
+     * representation of a double may differ from its exact value, so larger values are left to
+     * {@link CartUtils#round(BigDecimal)}, to produce the very same result.
+     */
+    private static final double MAX_PRIMITIVE_ROUNDING = 0x1p50;
+
+    private final int size;
+    private final ItemValues itemValues;
+    /**
+     * Value with the item's share of the cart wide discounts applied, null until first needed. Calculations are shared
+     * by the threads reading a cart, and filling the array before publishing it through the volatile field makes its
+     * contents visible to them. Threads racing to fill it make the same array.
+     */
+    private volatile long[] actualValues;
+    private final long grossValue;
+    private final Long cartWideDiscountValue;
+
+    CartCalculation(final List<? extends Item> items, final List<? extends Discount> discounts) {
+        this(ItemValues.of(items), discounts);
+    }
+
+    /**
+     * @param itemValues the values of the items, which must not change while this calculation is in use
+     * @param discounts the cart wide discounts
+     */
+    CartCalculation(final ItemValues itemValues, final List<? extends Discount> discounts) {
+        this.itemValues = itemValues;
+        size = itemValues.size();
+        grossValue = itemValues.getValue();
+        cartWideDiscountValue = CartUtils.getTotalCartWideDiscountValue(discounts, grossValue);
+    }
+
+    private long[] getActualValues() {
+        long[] values = actualValues;
+        if (values == null) {
+            values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = itemValues.getValue(i);
+            }
+            if (cartWideDiscountValue != null && grossValue != 0L) {
+                distributeCartWideDiscount(values, cartWideDiscountValue);
+            }
+            actualValues = values;
+        }
+        return values;
+    }
+
+    /**
+     * Same distribution as {@link CartUtils#distributeDiscountedAmountOverItems}: every item gets its rounded share,
+     * and the remainder is settled by {@link LargestRemainder}.
+     */
+    private void distributeCartWideDiscount(final long[] values, final long cartWideDiscount) {
+        final double discountFraction = ((double) cartWideDiscount) / grossValue;
+        final long[] discountAmounts = new long[size];
+        final double[] roundingLosses = new double[size];
+        long remaining = cartWideDiscount;
+        for (int i = 0; i < size; i++) {
+            final double nonRoundedDiscount = itemValues.getValue(i) * discountFraction;
+            final long roundedDiscount = roundHalfUp(nonRoundedDiscount);
+            roundingLosses[i] = nonRoundedDiscount - roundedDiscount;
+            discountAmounts[i] = roundedDiscount;
+            remaining -= roundedDiscount;
+        }
+        LargestRemainder.distribute(discountAmounts, roundingLosses, remaining);
+        for (int i = 0; i < size; i++) {
+            values[i] -= discountAmounts[i];
+        }
+    }
+
+    /**
+     * Rounds like {@link CartUtils#round(Double)}, without creating a {@link BigDecimal}. The decimal representation
+     * used there is the shortest one that identifies the double, which can only end in exactly .5 if the double itself
+     * does, so rounding the double's exact value half up gives the same result.
+     */
+    static long roundHalfUp(final double decimal) {
+        final double magnitude = Math.abs(decimal);
+        if (!(magnitude < MAX_PRIMITIVE_ROUNDING)) {
+            // also NaN and infinity, for which the reference throws
+            return CartUtils.round(BigDecimal.valueOf(decimal));
+        }
+        final double floor = Math.floor(magnitude);
+        final long rounded = (long) floor + (magnitude - floor >= 0.5d ? 1L : 0L);
+        return decimal < 0.0d ? -rounded : rounded;
+    }
+
+    /**
+     * Same as {@link CartUtils#calculateVatFromGrossAmount} for a present amount and VAT percentage.
+     */
+    static long vatFromGrossAmount(final long amountIncVat, final float vatPercent) {
+        return amountIncVat - roundHalfUp((amountIncVat * 100) / (100 + (double) vatPercent));
+    }
+
+    long getGrossValue() {
+        return grossValue;
+    }
+
+    Long getCartWideDiscountValue() {
+        return cartWideDiscountValue;
+    }
+
+    /**
+     * @return the total of the cart wide discounts and the item local discounts, or null if there are none of either
+     */
+    Long getDiscountValue() {
+        Long lineItemDiscount = null;
+        for (int i = 0; i < size; i++) {
+            if (itemValues.hasLineDiscount(i)) {
+                lineItemDiscount = coalesce(lineItemDiscount, 0L) + itemValues.getLineDiscount(i);
+            }
+        }
+        if (lineItemDiscount != null || cartWideDiscountValue != null) {
+            return coalesce(cartWideDiscountValue, 0L) + coalesce(lineItemDiscount, 0L);
+        }
+        return null;
+    }
+
+    /**
+     * @return the VAT of the items before cart wide discounts, or null if no item has a VAT percentage
+     */
+    Long getGrossVat() {
+        boolean applicable = false;
+        long grossVat = 0L;
+        for (int i = 0; i < size; i++) {
+            if (itemValues.hasVat(i)) {
+                grossVat += vatFromGrossAmount(itemValues.getGrossValue(i), itemValues.getVatPercentage(i));
+                applicable = true;
+            }
+        }
+        return applicable ? grossVat : null;
+    }
+
+    /**
+     * @param serviceChargeLine the service charge of the cart, possibly null
+     * @return the VAT of the items and service charge, or null if neither has a VAT percentage
+     */
+    Long getActualVat(final ServiceChargeLine serviceChargeLine) {
+        final long[] values = getActualValues();
+        boolean applicable = false;
+        long actualVat = 0L;
+        for (int i = 0; i < size; i++) {
+            if (itemValues.hasVat(i)) {
+                actualVat += vatFromGrossAmount(values[i], itemValues.getVatPercentage(i));
+                applicable = true;
+            }
+        }
+        if (serviceChargeLine != null && serviceChargeLine.getVat() != null) {
+            actualVat += serviceChargeLine.getVat();
+            applicable = true;
+        }
+        return applicable ? actualVat : null;
+    }
+
+    /**
+     * Same as {@link CartUtils#groupValuesByVatPercentage}, without needing the item lines, in one pass by
+     * {@link VatGroupAccumulator}.
+     * @param serviceChargeLine the service charge of the cart, possibly null
+     * @return the actual VAT and value per VAT percentage
+     */
+    SortedMap<Float, VatGroupValues> groupValuesByVatPercentage(final ServiceChargeLine serviceChargeLine) {
+        final long[] values = getActualValues();
+        final VatGroupAccumulator accumulator = new VatGroupAccumulator();
+        for (int i = 0; i < size; i++) {
+            if (itemValues.hasVat(i)) {
+                final float vatPercentage = itemValues.getVatPercentage(i);
+                accumulator.add(vatPercentage, vatFromGrossAmount(values[i], vatPercentage), values[i]);
+            }
+        }
+        accumulator.add(serviceChargeLine);
+        return accumulator.toSortedMap();
+    }
+
+    <T extends Item<T, K>, K extends Discount<K>> List<ItemLine<T, K>> buildItemLines(final List<T> items) {
+        final long[] values = getActualValues();
+        final List<ItemLine<T, K>> itemLines = new ArrayList<ItemLine<T, K>>(size);
+        for (int i = 0; i < size; i++) {
+            final boolean hasVat = itemValues.hasVat(i);
+            final float vatPercentage = itemValues.getVatPercentage(i);
+            itemLines.add(new ItemLine<T, K>(
+                items.get(i),
+                itemValues.getGrossValue(i),
+                hasVat ? vatFromGrossAmount(itemValues.getGrossValue(i), vatPercentage) : null,
+                values[i],
+                hasVat ? vatFromGrossAmount(values[i], vatPercentage) : null,
+                itemValues.hasLineDiscount(i) ? itemValues.getLineDiscount(i) : null
+            ));
+        }
+        return itemLines;
+    }
+}
@@ -0,0 +1,272 @@
+package com.izettle.cart;
+
+import com.izettle.cart.exception.CartException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for computed carts, for caching them and storing them with receipts. The computed values of
+ * the cart and of every line are stored along with the items, discounts and service charge, so a decoded cart is
+ * identical to the encoded one without being calculated again.
+ * <p>
+ * Amounts are written as variable length integers (most take two or three bytes), the VAT percentages of the cart are
+ * written once in a dictionary which the lines refer to by index, and absent values only take a bit in a presence mask.
+ * The items, discounts and service charge are written by {@link PayloadCodec payload codecs} provided by the user of
+ * the library. Decoding reads directly from a {@link ByteBuffer}. The data starts with its schema version: a codec
+ * reads all versions up to its own, and rejects later ones.
+ * <p>
+ * Codecs are immutable and thread safe if their payload codecs are.
+ * @param <T> the type of the items
+ * @param <D> the type of the line item discounts
+ * @param <K> the type of the cart-wide discounts
+ * @param <S> the type of the service charge
+ */
+public final class CartCodec<T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>,
+    S extends ServiceCharge<S>> {
+
+    /**
+     * The version of the format written.
+     */
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final int DISCOUNT_VALUE = 1;
+    private static final int SERVICE_CHARGE_VALUE = 1 << 1;
+    private static final int CART_WIDE_DISCOUNT_VALUE = 1 << 2;
+    private static final int ACTUAL_VAT = 1 << 3;
+    private static final int GROSS_VAT = 1 << 4;
+    private static final int ACTUAL_DISCOUNT_PERCENTAGE = 1 << 5;
+    private static final int SERVICE_CHARGE_LINE = 1 << 6;
+
+    private static final int LINE_GROSS_VAT = 1;
+    private static final int LINE_ACTUAL_VAT = 1 << 1;
+    private static final int LINE_DISCOUNT_VALUE = 1 << 2;
+
+    private static final int DISCOUNT_LINE_PERCENTAGE = 1;
+    private static final int DISCOUNT_LINE_VALUE = 1 << 1;
+
+    private final PayloadCodec<T> itemCodec;
+    private final PayloadCodec<K> discountCodec;
+    private final PayloadCodec<S> serviceChargeCodec;
+
+    /**
+     * @param itemCodec the codec of the items, including their line item discounts
+     * @param discountCodec the codec of the cart wide discounts
+     * @param serviceChargeCodec the codec of the service charge
+     */
+    public CartCodec(
+        final PayloadCodec<T> itemCodec,
+        final PayloadCodec<K> discountCodec,
+        final PayloadCodec<S> serviceChargeCodec
+    ) {
+        this.itemCodec = itemCodec;
+        this.discountCodec = discountCodec;
+        this.serviceChargeCodec = serviceChargeCodec;
+    }
+
+    /**
+     * @param cart the cart to encode
+     * @return the encoded cart
+     */
+    public byte[] encode(final Cart<T, D, K, S> cart) {
+        return write(cart).toByteArray();
+    }
+
+    /**
+     * @param cart the cart to encode
+     * @param target the buffer to write the encoded cart to, from its position
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException if the encoded cart doesn't fit in the remaining buffer, in which case
+     * nothing is written
+     */
+    public int encode(final Cart<T, D, K, S> cart, final ByteBuffer target) {
+        final CartOutput out = write(cart);
+        out.writeTo(target);
+        return out.size();
+    }
+
+    /**
+     * @param bytes the encoded cart
+     * @return the decoded cart
+     * @throws CartException if the data is malformed or of a later schema version
+     */
+    public Cart<T, D, K, S> decode(final byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes a cart directly from the buffer, from its position. The position is left after the encoded cart, so that
+     * several carts can be read from the same buffer.
+     * @param source the buffer holding the encoded cart
+     * @return the decoded cart
+     * @throws CartException if the data is malformed or of a later schema version
+     */
+    public Cart<T, D, K, S> decode(final ByteBuffer source) {
+        final CartInput in = new CartInput(source);
+        final int version = in.readUnsignedVarInt();
+        if (version < 1 || version > SCHEMA_VERSION) {
+            throw new CartException("Unsupported cart schema version " + version + ", expected at most "
+                + SCHEMA_VERSION);
+        }
+        final Float[] vatPercentages = new Float[in.readLength()];
+        for (int i = 0; i < vatPercentages.length; i++) {
+            vatPercentages[i] = in.readFloat();
+        }
+        in.setVatPercentages(vatPercentages);
+
+        final long grossValue = in.readVarLong();
+        final int mask = in.readUnsignedVarInt();
+        final Long discountValue = readIf(in, mask, DISCOUNT_VALUE);
+        final Long serviceChargeValue = readIf(in, mask, SERVICE_CHARGE_VALUE);
+        final Long cartWideDiscountValue = readIf(in, mask, CART_WIDE_DISCOUNT_VALUE);
+        final Long actualVat = readIf(in, mask, ACTUAL_VAT);
+        final Long grossVat = readIf(in, mask, GROSS_VAT);
+        final Double actualDiscountPercentage = (mask & ACTUAL_DISCOUNT_PERCENTAGE) != 0 ? in.readDouble() : null;
+
+        final int itemCount = in.readLength();
+        final List<ItemLine<T, D>> itemLines = new ArrayList<ItemLine<T, D>>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            final T item = itemCodec.read(in);
+            final long lineGrossValue = in.readVarLong();
+            final long lineActualValue = in.readVarLong();
+            final int lineMask = in.readUnsignedVarInt();
+            itemLines.add(new ItemLine<T, D>(
+                item,
+                lineGrossValue,
+                readIf(in, lineMask, LINE_GROSS_VAT),
+                lineActualValue,
+                readIf(in, lineMask, LINE_ACTUAL_VAT),
+                readIf(in, lineMask, LINE_DISCOUNT_VALUE)
+            ));
+        }
+
+        final int discountCount = in.readLength();
+        final List<DiscountLine<K>> discountLines = new ArrayList<DiscountLine<K>>(discountCount);
+        for (int i = 0; i < discountCount; i++) {
+            final K discount = discountCodec.read(in);
+            final int lineMask = in.readUnsignedVarInt();
+            final Double actualPercentage = (lineMask & DISCOUNT_LINE_PERCENTAGE) != 0 ? in.readDouble() : null;
+            final Long value = readIf(in, lineMask, DISCOUNT_LINE_VALUE);
+            discountLines.add(new DiscountLine<K>(discount, actualPercentage, value));
+        }
+
+        final ServiceChargeLine<S> serviceChargeLine;
+        if ((mask & SERVICE_CHARGE_LINE) != 0) {
+            final S serviceCharge = serviceChargeCodec.read(in);
+            serviceChargeLine = new ServiceChargeLine<S>(serviceCharge, in.readVarLong(), in.readNullableVarLong());
+        } else {
+            serviceChargeLine = null;
+        }
+        return new Cart<T, D, K, S>(
+            itemLines,
+            discountLines,
+            serviceChargeLine,
+            grossValue,
+            discountValue,
+            serviceChargeValue,
+            cartWideDiscountValue,
+            actualVat,
+            actualDiscountPercentage,
+            grossVat
+        );
+    }
+
+    private CartOutput write(final Cart<T, D, K, S> cart) {
+        final CartOutput out = new CartOutput();
+        out.writeUnsignedVarInt(SCHEMA_VERSION);
+
+        final Map<Float, Integer> vatPercentageIndexes = new LinkedHashMap<Float, Integer>();
+        for (ItemLine<T, D> itemLine : cart.getItemLines()) {
+            addVatPercentage(vatPercentageIndexes, itemLine.getItem().getVatPercentage());
+        }
+        final ServiceChargeLine<S> serviceChargeLine = cart.getServiceChargeLine();
+        if (serviceChargeLine != null) {
+            addVatPercentage(vatPercentageIndexes, serviceChargeLine.getServiceCharge().getVatPercentage());
+        }
+        out.writeUnsignedVarInt(vatPercentageIndexes.size());
+        for (Float vatPercentage : vatPercentageIndexes.keySet()) {
+            out.writeFloat(vatPercentage);
+        }
+        out.setVatPercentageIndexes(vatPercentageIndexes);
+
+        out.writeVarLong(cart.getGrossValue());
+        final Long discountValue = cart.getDiscountValue();
+        final Long serviceChargeValue = cart.getServiceChargeValue();
+        final Long cartWideDiscountValue = cart.getCartWideDiscountValue();
+        final Long actualVat = cart.getActualVat();
+        final Long grossVat = cart.getGrossVat();
+        final Double actualDiscountPercentage = cart.getActualDiscountPercentage();
+        out.writeUnsignedVarInt(
+            (discountValue != null ? DISCOUNT_VALUE : 0)
+            | (serviceChargeValue != null ? SERVICE_CHARGE_VALUE : 0)
+            | (cartWideDiscountValue != null ? CART_WIDE_DISCOUNT_VALUE : 0)
+            | (actualVat != null ? ACTUAL_VAT : 0)
+            | (grossVat != null ? GROSS_VAT : 0)
+            | (actualDiscountPercentage != null ? ACTUAL_DISCOUNT_PERCENTAGE : 0)
+            | (serviceChargeLine != null ? SERVICE_CHARGE_LINE : 0)
+        );
+        writeIfPresent(out, discountValue);
+        writeIfPresent(out, serviceChargeValue);
+        writeIfPresent(out, cartWideDiscountValue);
+        writeIfPresent(out, actualVat);
+        writeIfPresent(out, grossVat);
+        if (actualDiscountPercentage != null) {
+            out.writeDouble(actualDiscountPercentage);
+        }
+
+        final List<ItemLine<T, D>> itemLines = cart.getItemLines();
+        out.writeUnsignedVarInt(itemLines.size());
+        for (ItemLine<T, D> itemLine : itemLines) {
+            itemCodec.write(itemLine.getItem(), out);
+            out.writeVarLong(itemLine.getGrossValue());
+            out.writeVarLong(itemLine.getActualValue());
+            out.writeUnsignedVarInt(
+                (itemLine.getGrossVat() != null ? LINE_GROSS_VAT : 0)
+                | (itemLine.getActualVat() != null ? LINE_ACTUAL_VAT : 0)
+                | (itemLine.getDiscountValue() != null ? LINE_DISCOUNT_VALUE : 0)
+            );
+            writeIfPresent(out, itemLine.getGrossVat());
+            writeIfPresent(out, itemLine.getActualVat());
+            writeIfPresent(out, itemLine.getDiscountValue());
+        }
+
+        final List<DiscountLine<K>> discountLines = cart.getDiscountLines();
+        out.writeUnsignedVarInt(discountLines.size());
+        for (DiscountLine<K> discountLine : discountLines) {
+            discountCodec.write(discountLine.getDiscount(), out);
+            out.writeUnsignedVarInt(
+                (discountLine.getActualPercentage() != null ? DISCOUNT_LINE_PERCENTAGE : 0)
+                | (discountLine.getValue() != null ? DISCOUNT_LINE_VALUE : 0)
+            );
+            if (discountLine.getActualPercentage() != null) {
+                out.writeDouble(discountLine.getActualPercentage());
+            }
+            writeIfPresent(out, discountLine.getValue());
+        }
+
+        if (serviceChargeLine != null) {
+            serviceChargeCodec.write(serviceChargeLine.getServiceCharge(), out);
+            out.writeVarLong(serviceChargeLine.getValue());
+            out.writeNullableVarLong(serviceChargeLine.getVat());
+        }
+        return out;
+    }
+
+    private static void addVatPercentage(final Map<Float, Integer> vatPercentageIndexes, final Float vatPercentage) {
+        if (vatPercentage != null && !vatPercentageIndexes.containsKey(vatPercentage)) {
+            vatPercentageIndexes.put(vatPercentage, vatPercentageIndexes.size());
+        }
+    }
+
+    private static void writeIfPresent(final CartOutput out, final Long value) {
+        if (value != null) {
+            out.writeVarLong(value.longValue());
+        }
+    }
+
+    private static Long readIf(final CartInput in, final int mask, final int flag) {
+        return (mask & flag) != 0 ? in.readVarLong() : null;
+    }
+}
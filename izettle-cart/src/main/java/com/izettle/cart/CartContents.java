@@ -0,0 +1,25 @@
+package com.izettle.cart;
+
+import java.util.List;
+
+/**
+ * The input of a cart: what would be passed to {@link Cart#Cart(List, List, ServiceCharge)}. Used where carts are
+ * evaluated in bulk, see {@link CartBatch}.
+ */
+public interface CartContents {
+
+    /**
+     * @return the list of items, must not be empty
+     */
+    List<? extends Item<?, ?>> getItems();
+
+    /**
+     * @return the list of cart wide discounts, possibly null or empty
+     */
+    List<? extends Discount<?>> getDiscounts();
+
+    /**
+     * @return the applied service charge, possibly null
+     */
+    ServiceCharge<?> getServiceCharge();
+}
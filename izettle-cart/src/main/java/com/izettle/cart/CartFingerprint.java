@@ -0,0 +1,107 @@
+package com.izettle.cart;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The values of the items and cart wide discounts that a {@link CartCalculation} is calculated from, and nothing
+ * else: the quantity, unit price, VAT percentage and discount of each item, in order, and the amount, percentage and
+ * quantity of each cart wide discount. Two carts with equal fingerprints have equal calculations, whatever else their
+ * items hold.
+ * <p>
+ * The values are compared exactly: quantities by {@link BigDecimal#equals}, so that 1 and 1.0 are different
+ * fingerprints, and VAT percentages and discount percentages by their bits, so that a missing VAT percentage is not
+ * the same as a VAT percentage of zero.
+ */
+final class CartFingerprint {
+
+    private static final int HAS_VAT = 1;
+    private static final int HAS_DISCOUNT = 1 << 1;
+    private static final int HAS_AMOUNT = 1 << 2;
+    private static final int HAS_PERCENTAGE = 1 << 3;
+    private static final int ITEM_WIDTH = 5;
+    private static final int DISCOUNT_WIDTH = 3;
+
+    private final long[] values;
+    private final BigDecimal[] quantities;
+    private final int hashCode;
+
+    private CartFingerprint(final long[] values, final BigDecimal[] quantities) {
+        this.values = values;
+        this.quantities = quantities;
+        this.hashCode = 31 * Arrays.hashCode(values) + Arrays.hashCode(quantities);
+    }
+
+    /**
+     * @param items the validated items of a cart
+     * @param discounts the validated cart wide discounts of the cart
+     * @return the fingerprint of their values
+     */
+    static CartFingerprint of(final List<? extends Item> items, final List<? extends Discount> discounts) {
+        final long[] values = new long[1 + items.size() * ITEM_WIDTH + discounts.size() * DISCOUNT_WIDTH];
+        final BigDecimal[] quantities = new BigDecimal[items.size() * 2 + discounts.size()];
+        // the number of items separates them from the discounts, as both are written without delimiters
+        values[0] = items.size();
+        int value = 1;
+        int quantity = 0;
+        for (int i = 0; i < items.size(); i++) {
+            final Item item = items.get(i);
+            final Float vatPercentage = item.getVatPercentage();
+            final Discount discount = item.getDiscount();
+            values[value] = (vatPercentage == null ? 0 : HAS_VAT)
+                | (discount == null ? 0 : HAS_DISCOUNT | flags(discount));
+            values[value + 1] = item.getUnitPrice();
+            values[value + 2] = vatPercentage == null ? 0L : Float.floatToIntBits(vatPercentage);
+            quantities[quantity++] = item.getQuantity();
+            if (discount != null) {
+                putDiscount(values, value + 3, discount);
+                quantities[quantity] = discount.getQuantity();
+            }
+            quantity++;
+            value += ITEM_WIDTH;
+        }
+        for (int i = 0; i < discounts.size(); i++) {
+            final Discount discount = discounts.get(i);
+            values[value] = flags(discount);
+            putDiscount(values, value + 1, discount);
+            quantities[quantity++] = discount.getQuantity();
+            value += DISCOUNT_WIDTH;
+        }
+        return new CartFingerprint(values, quantities);
+    }
+
+    private static int flags(final Discount discount) {
+        return (discount.getAmount() == null ? 0 : HAS_AMOUNT)
+            | (discount.getPercentage() == null ? 0 : HAS_PERCENTAGE);
+    }
+
+    /**
+     * Writes the amount and the percentage of a discount, zero if missing as the flags tell which ones are.
+     */
+    private static void putDiscount(final long[] values, final int index, final Discount discount) {
+        final Long amount = discount.getAmount();
+        final Double percentage = discount.getPercentage();
+        values[index] = amount == null ? 0L : amount;
+        values[index + 1] = percentage == null ? 0L : Double.doubleToLongBits(percentage);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CartFingerprint)) {
+            return false;
+        }
+        final CartFingerprint other = (CartFingerprint) o;
+        return hashCode == other.hashCode
+            && Arrays.equals(values, other.values)
+            && Arrays.equals(quantities, other.quantities);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
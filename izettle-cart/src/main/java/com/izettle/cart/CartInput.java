@@ -0,0 +1,190 @@
+package com.izettle.cart;
+
+import com.izettle.cart.exception.CartException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The input of a {@link CartCodec}, reading what was written by a {@link CartOutput} directly from a buffer, without
+ * copying it first. Used by {@link PayloadCodec payload codecs} to read items, discounts and service charges.
+ */
+public final class CartInput {
+
+    private final ByteBuffer buffer;
+    private Float[] vatPercentages;
+
+    CartInput(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    void setVatPercentages(final Float[] vatPercentages) {
+        this.vatPercentages = vatPercentages;
+    }
+
+    public byte readByte() {
+        try {
+            return buffer.get();
+        } catch (BufferUnderflowException e) {
+            throw truncated(e);
+        }
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    /**
+     * @see CartOutput#writeUnsignedVarInt(int)
+     */
+    public int readUnsignedVarInt() {
+        final long value = readUnsignedVarLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new CartException("Malformed cart data: " + value + " does not fit an int");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @see CartOutput#writeVarLong(long)
+     */
+    public long readVarLong() {
+        final long value = readUnsignedVarLong();
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    /**
+     * @see CartOutput#writeNullableVarLong(Long)
+     */
+    public Long readNullableVarLong() {
+        return readBoolean() ? readVarLong() : null;
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readFixedInt());
+    }
+
+    /**
+     * @see CartOutput#writeLong(long)
+     */
+    public long readLong() {
+        final long high = readFixedInt();
+        final long low = readFixedInt() & 0xffffffffL;
+        return (high << 32) | low;
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * @see CartOutput#writeNullableDouble(Double)
+     */
+    public Double readNullableDouble() {
+        return readBoolean() ? readDouble() : null;
+    }
+
+    /**
+     * @see CartOutput#writeBigDecimal(BigDecimal)
+     */
+    public BigDecimal readBigDecimal() {
+        final byte kind = readByte();
+        switch (kind) {
+            case 0:
+                return null;
+            case 1:
+                final int scale = (int) readVarLong();
+                return BigDecimal.valueOf(readVarLong(), scale);
+            case 2:
+                final int bigScale = (int) readVarLong();
+                final byte[] unscaled = new byte[readLength()];
+                readBytes(unscaled);
+                return new BigDecimal(new BigInteger(unscaled), bigScale);
+            default:
+                throw new CartException("Malformed cart data: unknown decimal kind " + kind);
+        }
+    }
+
+    /**
+     * @see CartOutput#writeString(String)
+     */
+    public String readString() {
+        final int length = readUnsignedVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        checkRemaining(length);
+        final String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, CartOutput.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            final byte[] encoded = new byte[length];
+            buffer.get(encoded);
+            value = new String(encoded, CartOutput.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * @return the VAT percentage from the VAT dictionary of the cart, possibly null
+     * @see CartOutput#writeVatPercentage(Float)
+     */
+    public Float readVatPercentage() {
+        final int index = readUnsignedVarInt();
+        if (index == 0) {
+            return null;
+        }
+        if (vatPercentages == null || index > vatPercentages.length) {
+            throw new CartException("Malformed cart data: unknown VAT percentage " + index);
+        }
+        return vatPercentages[index - 1];
+    }
+
+    public void readBytes(final byte[] target) {
+        try {
+            buffer.get(target);
+        } catch (BufferUnderflowException e) {
+            throw truncated(e);
+        }
+    }
+
+    /**
+     * Reads a length, checking that as many bytes remain so that malformed data can't cause huge allocations.
+     */
+    int readLength() {
+        final int length = readUnsignedVarInt();
+        checkRemaining(length);
+        return length;
+    }
+
+    private void checkRemaining(final int length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw truncated(null);
+        }
+    }
+
+    private long readUnsignedVarLong() {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new CartException("Malformed cart data: variable length integer longer than 10 bytes");
+    }
+
+    /**
+     * Big endian, whatever the order of the buffer.
+     */
+    private int readFixedInt() {
+        return (readByte() & 0xff) << 24 | (readByte() & 0xff) << 16 | (readByte() & 0xff) << 8 | (readByte() & 0xff);
+    }
+
+    private static CartException truncated(final BufferUnderflowException cause) {
+        return new CartException("Malformed cart data: unexpected end of data", cause);
+    }
+}
@@ -0,0 +1,200 @@
+package com.izettle.cart;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The output of a {@link CartCodec}, a growable byte array written with variable length integers. Signed integers are
+ * zig-zag encoded, so that small negative amounts (as in returns) are as short as small positive ones. Used by
+ * {@link PayloadCodec payload codecs} to write items, discounts and service charges.
+ */
+public final class CartOutput {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private byte[] bytes;
+    private int position;
+    /**
+     * The index of each VAT percentage in the dictionary written before the lines, null while writing the dictionary.
+     */
+    private Map<Float, Integer> vatPercentageIndexes;
+
+    CartOutput() {
+        bytes = new byte[DEFAULT_CAPACITY];
+    }
+
+    void setVatPercentageIndexes(final Map<Float, Integer> vatPercentageIndexes) {
+        this.vatPercentageIndexes = vatPercentageIndexes;
+    }
+
+    public CartOutput writeByte(final int value) {
+        ensureCapacity(1);
+        bytes[position++] = (byte) value;
+        return this;
+    }
+
+    public CartOutput writeBoolean(final boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a non negative integer, such as a count or length, in 1 to 5 bytes, 7 bits per byte.
+     */
+    public CartOutput writeUnsignedVarInt(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        return writeUnsignedVarLong(value);
+    }
+
+    /**
+     * Writes a long in 1 to 10 bytes, zig-zag encoded so that small negative values are short too.
+     */
+    public CartOutput writeVarLong(final long value) {
+        return writeUnsignedVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a nullable long as a presence flag followed by the value.
+     */
+    public CartOutput writeNullableVarLong(final Long value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeVarLong(value.longValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes a long in 8 bytes, for values that don't tend to be small, such as random ids.
+     */
+    public CartOutput writeLong(final long value) {
+        writeFixedInt((int) (value >>> 32));
+        return writeFixedInt((int) value);
+    }
+
+    public CartOutput writeFloat(final float value) {
+        return writeFixedInt(Float.floatToIntBits(value));
+    }
+
+    public CartOutput writeDouble(final double value) {
+        return writeLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Writes a nullable double as a presence flag followed by the value.
+     */
+    public CartOutput writeNullableDouble(final Double value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeDouble(value.doubleValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes a decimal, such as a quantity, as its scale and unscaled value. The unscaled value of a quantity fits a
+     * long in all but exotic cases, which are written as the bytes of the big integer.
+     * @param value the decimal, possibly null
+     */
+    public CartOutput writeBigDecimal(final BigDecimal value) {
+        if (value == null) {
+            return writeByte(0);
+        }
+        final BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE) {
+            writeByte(1);
+            writeVarLong(value.scale());
+            return writeVarLong(unscaled.longValue());
+        }
+        writeByte(2);
+        writeVarLong(value.scale());
+        final byte[] unscaledBytes = unscaled.toByteArray();
+        writeUnsignedVarInt(unscaledBytes.length);
+        return writeBytes(unscaledBytes, 0, unscaledBytes.length);
+    }
+
+    /**
+     * Writes the UTF-8 encoding of a string, with its length.
+     * @param value the string, possibly null
+     */
+    public CartOutput writeString(final String value) {
+        if (value == null) {
+            return writeUnsignedVarInt(0);
+        }
+        final byte[] encoded = value.getBytes(UTF_8);
+        writeUnsignedVarInt(encoded.length + 1);
+        return writeBytes(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Writes a VAT percentage as its index in the VAT dictionary of the cart, typically in a single byte. Only the VAT
+     * percentages of the cart's items and service charge are in the dictionary.
+     * @param vatPercentage the VAT percentage, possibly null
+     * @throws IllegalArgumentException if the VAT percentage is not one of the cart's
+     */
+    public CartOutput writeVatPercentage(final Float vatPercentage) {
+        if (vatPercentage == null) {
+            return writeUnsignedVarInt(0);
+        }
+        final Integer index = vatPercentageIndexes == null ? null : vatPercentageIndexes.get(vatPercentage);
+        if (index == null) {
+            throw new IllegalArgumentException("VAT percentage " + vatPercentage + " is not used by the cart");
+        }
+        return writeUnsignedVarInt(index + 1);
+    }
+
+    public CartOutput writeBytes(final byte[] source, final int offset, final int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, position, length);
+        position += length;
+        return this;
+    }
+
+    int size() {
+        return position;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, position);
+    }
+
+    /**
+     * @param target the buffer to copy the written bytes to, at its position
+     * @throws java.nio.BufferOverflowException if the written bytes don't fit in the buffer
+     */
+    void writeTo(final ByteBuffer target) {
+        target.put(bytes, 0, position);
+    }
+
+    private CartOutput writeUnsignedVarLong(final long value) {
+        ensureCapacity(10);
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0L) {
+            bytes[position++] = (byte) ((remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        bytes[position++] = (byte) remaining;
+        return this;
+    }
+
+    private CartOutput writeFixedInt(final int value) {
+        ensureCapacity(4);
+        bytes[position++] = (byte) (value >>> 24);
+        bytes[position++] = (byte) (value >>> 16);
+        bytes[position++] = (byte) (value >>> 8);
+        bytes[position++] = (byte) value;
+        return this;
+    }
+
+    private void ensureCapacity(final int length) {
+        if (position + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(position + length, bytes.length << 1));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.izettle.cart;
+
+import static com.izettle.cart.CartUtils.coalesce;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The sums of many carts, such as the purchases and returns of a day in a Z-report: values, discounts, service charges,
+ * VAT, and the values per VAT percentage and per discount. Returns are summed with their sign, so an
+ * {@link Cart#inverse() inversed cart} cancels the original, and an {@link AlterationCart} adds the difference it
+ * represents.
+ * <p>
+ * Summaries are mutable and not thread safe, but merging is associative and commutative: each thread or shard sums its
+ * own carts, and the summaries are merged into one. {@link #add(Cart)} and {@link #merge(CartSummary)} return the
+ * summary, so that they can serve as the accumulator and combiner of a collector or reduction.
+ */
+public final class CartSummary implements Serializable {
+
+    private static final long serialVersionUID = -1766360569337016549L;
+    private long numberOfCarts;
+    private long grossValue;
+    private long discountValue;
+    private long cartWideDiscountValue;
+    private long serviceChargeValue;
+    private long actualVat;
+    private long grossVat;
+    private long numberOfDiscounts;
+    private final VatGroupAccumulator vatGroups = new VatGroupAccumulator();
+    private final Map<Object, Long> discountValues = new LinkedHashMap<Object, Long>();
+
+    /**
+     * @param cart the cart to add, possibly an inversed one
+     * @return this summary
+     */
+    public CartSummary add(final Cart<?, ?, ?, ?> cart) {
+        numberOfCarts++;
+        add(cart, 1);
+        numberOfDiscounts += cart.getNumberOfDiscounts();
+        return this;
+    }
+
+    /**
+     * Totals don't hold the discounts, so they are not part of the {@link #getDiscountValuesByDiscount() values per
+     * discount}.
+     * @param totals the totals of a cart to add
+     * @return this summary
+     */
+    public CartSummary add(final CartTotals totals) {
+        numberOfCarts++;
+        grossValue += totals.getGrossValue();
+        discountValue += coalesce(totals.getDiscountValue(), 0L);
+        cartWideDiscountValue += coalesce(totals.getCartWideDiscountValue(), 0L);
+        serviceChargeValue += coalesce(totals.getServiceChargeValue(), 0L);
+        actualVat += coalesce(totals.getActualVat(), 0L);
+        grossVat += coalesce(totals.getGrossVat(), 0L);
+        numberOfDiscounts += totals.getNumberOfDiscounts();
+        vatGroups.add(totals.groupValuesByVatPercentage(), 1);
+        return this;
+    }
+
+    /**
+     * Adds the difference between the carts before and after the alteration, counted as one cart. The VAT groups are
+     * taken from both carts, so that a VAT percentage no longer in the cart after the alteration is subtracted in full.
+     * @param alteration the alteration to add, such as a partial return
+     * @return this summary
+     */
+    public CartSummary add(final AlterationCart<?, ?, ?, ?> alteration) {
+        numberOfCarts++;
+        add(alteration.getResultingCart(), 1);
+        add(alteration.getOriginalCart(), -1);
+        return this;
+    }
+
+    /**
+     * @param other the summary to add to this one, unchanged
+     * @return this summary
+     */
+    public CartSummary merge(final CartSummary other) {
+        numberOfCarts += other.numberOfCarts;
+        grossValue += other.grossValue;
+        discountValue += other.discountValue;
+        cartWideDiscountValue += other.cartWideDiscountValue;
+        serviceChargeValue += other.serviceChargeValue;
+        actualVat += other.actualVat;
+        grossVat += other.grossVat;
+        numberOfDiscounts += other.numberOfDiscounts;
+        vatGroups.add(other.vatGroups);
+        for (Map.Entry<Object, Long> discount : other.discountValues.entrySet()) {
+            addDiscountValue(discount.getKey(), discount.getValue());
+        }
+        return this;
+    }
+
+    private void add(final Cart<?, ?, ?, ?> cart, final int sign) {
+        grossValue += sign * cart.getGrossValue();
+        discountValue += sign * coalesce(cart.getDiscountValue(), 0L);
+        cartWideDiscountValue += sign * coalesce(cart.getCartWideDiscountValue(), 0L);
+        serviceChargeValue += sign * coalesce(cart.getServiceChargeValue(), 0L);
+        actualVat += sign * coalesce(cart.getActualVat(), 0L);
+        grossVat += sign * coalesce(cart.getGrossVat(), 0L);
+        vatGroups.add(cart.groupValuesByVatPercentage(), sign);
+        for (ItemLine<?, ?> itemLine : cart.getItemLines()) {
+            final Object discount = itemLine.getItem().getDiscount();
+            if (discount != null) {
+                addDiscountValue(discount, sign * coalesce(itemLine.getDiscountValue(), 0L));
+            }
+        }
+        for (DiscountLine<?> discountLine : cart.getDiscountLines()) {
+            addDiscountValue(discountLine.getDiscount(), sign * coalesce(discountLine.getValue(), 0L));
+        }
+    }
+
+    private void addDiscountValue(final Object discount, final long value) {
+        discountValues.put(discount, coalesce(discountValues.get(discount), 0L) + value);
+    }
+
+    /**
+     * @return the number of carts, totals and alterations added
+     */
+    public long getNumberOfCarts() {
+        return numberOfCarts;
+    }
+
+    /**
+     * @return the sum of the actual values of the carts
+     * @see Cart#getValue()
+     */
+    public long getValue() {
+        return grossValue - cartWideDiscountValue + serviceChargeValue;
+    }
+
+    /**
+     * @return the sum of the gross values of the carts
+     * @see Cart#getGrossValue()
+     */
+    public long getGrossValue() {
+        return grossValue;
+    }
+
+    /**
+     * @return the sum of the cart wide and item line discounts of the carts
+     * @see Cart#getDiscountValue()
+     */
+    public long getDiscountValue() {
+        return discountValue;
+    }
+
+    /**
+     * @return the sum of the cart wide discounts of the carts
+     * @see Cart#getCartWideDiscountValue()
+     */
+    public long getCartWideDiscountValue() {
+        return cartWideDiscountValue;
+    }
+
+    /**
+     * @return the sum of the service charges of the carts
+     * @see Cart#getServiceChargeValue()
+     */
+    public long getServiceChargeValue() {
+        return serviceChargeValue;
+    }
+
+    /**
+     * @return the sum of the actual VAT of the carts
+     * @see Cart#getActualVat()
+     */
+    public long getActualVat() {
+        return actualVat;
+    }
+
+    /**
+     * @return the sum of the gross VAT of the carts
+     * @see Cart#getGrossVat()
+     */
+    public long getGrossVat() {
+        return grossVat;
+    }
+
+    /**
+     * @return the number of discounts of the carts and totals, alterations not included
+     * @see Cart#getNumberOfDiscounts()
+     */
+    public long getNumberOfDiscounts() {
+        return numberOfDiscounts;
+    }
+
+    /**
+     * @return the sums of the actual VAT and value per VAT percentage of any of the carts, in a map of its own; a VAT
+     * percentage whose sales were all returned is kept, with zero values
+     * @see Cart#groupValuesByVatPercentage()
+     */
+    public SortedMap<Float, VatGroupValues> groupValuesByVatPercentage() {
+        return vatGroups.toSortedMap();
+    }
+
+    /**
+     * The sums of the values of the item line and cart wide discounts, by discount. Discounts are told apart by their
+     * equals and hashCode, so a discount applied to many carts is summed as one if it is equal in all of them. As the
+     * discounts of inversed and altered carts have other quantities, the equality should not depend on the quantity
+     * for returns to be subtracted from the discounts they return.
+     * @return the sum of the values per discount, in the order the discounts were first added, in a map of its own
+     */
+    public Map<Object, Long> getDiscountValuesByDiscount() {
+        return new LinkedHashMap<Object, Long>(discountValues);
+    }
+
+    @Override
+    public String toString() {
+        return "CartSummary {"
+            + " numberOfCarts = " + numberOfCarts
+            + ", value = " + getValue()
+            + ", grossValue = " + grossValue
+            + ", discountValue = " + discountValue
+            + ", serviceChargeValue = " + serviceChargeValue
+            + ", actualVat = " + actualVat
+            + ", vatGroups = " + groupValuesByVatPercentage().values()
+            + '}';
+    }
+}
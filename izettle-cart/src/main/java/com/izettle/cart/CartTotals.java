@@ -0,0 +1,197 @@
+package com.izettle.cart;
+
+import static com.izettle.cart.CartUtils.coalesce;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * The totals of a cart, without its item and discount lines. Holds the same values as the corresponding methods of
+ * {@link Cart}, and is meant for jobs that only need the totals of many carts, such as reports and reconciliations,
+ * where building every line of every cart would be wasted.
+ * @see CartBatch
+ */
+public final class CartTotals implements Serializable {
+
+    private static final long serialVersionUID = -3915086238101624215L;
+    private final long grossValue;
+    private final Long discountValue;
+    private final Long cartWideDiscountValue;
+    private final Long serviceChargeValue;
+    private final Long actualVat;
+    private final Long grossVat;
+    private final Double actualDiscountPercentage;
+    private final int numberOfDiscounts;
+    private final SortedMap<Float, VatGroupValues> vatGroupValues;
+
+    private CartTotals(
+        final long grossValue,
+        final Long discountValue,
+        final Long cartWideDiscountValue,
+        final Long serviceChargeValue,
+        final Long actualVat,
+        final Long grossVat,
+        final Double actualDiscountPercentage,
+        final int numberOfDiscounts,
+        final SortedMap<Float, VatGroupValues> vatGroupValues
+    ) {
+        this.grossValue = grossValue;
+        this.discountValue = discountValue;
+        this.cartWideDiscountValue = cartWideDiscountValue;
+        this.serviceChargeValue = serviceChargeValue;
+        this.actualVat = actualVat;
+        this.grossVat = grossVat;
+        this.actualDiscountPercentage = actualDiscountPercentage;
+        this.numberOfDiscounts = numberOfDiscounts;
+        this.vatGroupValues = Collections.unmodifiableSortedMap(vatGroupValues);
+    }
+
+    /**
+     * Calculates the totals of the cart that would be built from the same arguments.
+     * @param items the list of items
+     * @param discounts the list of cart wide discounts, possibly null or empty
+     * @param serviceCharge The applied service charge, possibly null
+     * @return the totals of the cart
+     * @see Cart#Cart(List, List, ServiceCharge)
+     */
+    public static CartTotals of(
+        final List<? extends Item<?, ?>> items,
+        final List<? extends Discount<?>> discounts,
+        final ServiceCharge<?> serviceCharge
+    ) {
+        ItemUtils.validateItems(items);
+        final List<? extends Item<?, ?>> itemList = items == null ? Collections.<Item<?, ?>>emptyList() : items;
+        DiscountUtils.validateDiscounts(discounts);
+        final List<? extends Discount<?>> discountList =
+            discounts == null ? Collections.<Discount<?>>emptyList() : discounts;
+        final CartCalculation calculation = new CartCalculation(itemList, discountList);
+        final long grossValue = calculation.getGrossValue();
+        final Long discountValue = calculation.getDiscountValue();
+        final Long cartWideDiscountValue = calculation.getCartWideDiscountValue();
+        final ServiceChargeLine<?> serviceChargeLine =
+            CartUtils.buildServiceChargeLineCopy(grossValue, cartWideDiscountValue, serviceCharge);
+        int numberOfDiscounts = discountList.size();
+        for (Item<?, ?> item : itemList) {
+            if (item.getDiscount() != null) {
+                numberOfDiscounts++;
+            }
+        }
+        return new CartTotals(
+            grossValue,
+            discountValue,
+            cartWideDiscountValue,
+            serviceChargeLine == null ? null : serviceChargeLine.getValue(),
+            calculation.getActualVat(serviceChargeLine),
+            calculation.getGrossVat(),
+            CartUtils.getDiscountPercentage(grossValue, discountValue),
+            numberOfDiscounts,
+            calculation.groupValuesByVatPercentage(serviceChargeLine)
+        );
+    }
+
+    /**
+     * @return the actual value of the cart
+     * @see Cart#getValue()
+     */
+    public long getValue() {
+        return grossValue - coalesce(cartWideDiscountValue, 0L) + coalesce(serviceChargeValue, 0L);
+    }
+
+    /**
+     * @return the gross value of the cart
+     * @see Cart#getGrossValue()
+     */
+    public long getGrossValue() {
+        return grossValue;
+    }
+
+    /**
+     * @return the amount of all discounts, or null if there are none
+     * @see Cart#getDiscountValue()
+     */
+    public Long getDiscountValue() {
+        return discountValue;
+    }
+
+    /**
+     * @return the discount value, or null if there are no discounts
+     * @see Cart#getCartWideDiscountValue()
+     */
+    public Long getCartWideDiscountValue() {
+        return cartWideDiscountValue;
+    }
+
+    /**
+     * @return the value of the service charge, or null if there is none
+     * @see Cart#getServiceChargeValue()
+     */
+    public Long getServiceChargeValue() {
+        return serviceChargeValue;
+    }
+
+    /**
+     * @return The actual VAT amount for this cart, or null of VAT is not applicable
+     * @see Cart#getActualVat()
+     */
+    public Long getActualVat() {
+        return actualVat;
+    }
+
+    /**
+     * @return The VAT amount for this cart before cart wide discounts, or null if VAT is not applicable
+     * @see Cart#getGrossVat()
+     */
+    public Long getGrossVat() {
+        return grossVat;
+    }
+
+    /**
+     * @return the discount VAT, or null if VAT is not applicable
+     * @see Cart#getDiscountVat()
+     */
+    public Long getDiscountVat() {
+        if (grossVat == null || actualVat == null || discountValue == null) {
+            return null;
+        }
+        return grossVat - actualVat;
+    }
+
+    /**
+     * @return the actual percentage the cart-wide discounts represents of the cart's gross value, or null if there
+     * are no discounts
+     * @see Cart#getActualDiscountPercentage()
+     */
+    public Double getActualDiscountPercentage() {
+        return actualDiscountPercentage;
+    }
+
+    /**
+     * @return Total number of discounts.
+     * @see Cart#getNumberOfDiscounts()
+     */
+    public int getNumberOfDiscounts() {
+        return numberOfDiscounts;
+    }
+
+    /**
+     * @return the map of values by percentage, or empty maps if VAT is not applicable
+     * @see Cart#groupValuesByVatPercentage()
+     */
+    public SortedMap<Float, VatGroupValues> groupValuesByVatPercentage() {
+        return vatGroupValues;
+    }
+
+    @Override
+    public String toString() {
+        return "CartTotals {"
+            + " value = " + getValue()
+            + ", grossValue = " + grossValue
+            + ", discountValue = " + discountValue
+            + ", serviceChargeValue = " + serviceChargeValue
+            + ", actualVat = " + actualVat
+            + ", vatGroups = " + vatGroupValues.values()
+            + '}';
+    }
+}
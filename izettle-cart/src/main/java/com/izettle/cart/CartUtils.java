@@ -1,5 +1,6 @@
 package com.izettle.cart;
 
+import com.izettle.cart.exception.CartException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
@@ -142,44 +143,18 @@ class CartUtils {
         }
         final double discountFraction = ((double) cartWideDiscountAmount) / grossAmount;
         long remainingDiscountAmountToDistribute = cartWideDiscountAmount;
-        final Map<Integer, Long> discountAmountByItemIdx = new HashMap<Integer, Long>();
-        final NavigableMap<Double, Queue<Integer>> itemIdxByRoundingLoss = new TreeMap<Double, Queue<Integer>>();
+        final long[] discountAmounts = new long[items.size()];
+        final double[] roundingLosses = new double[items.size()];
         for (int itemIdx = 0; itemIdx < items.size(); itemIdx++) {
             final Item item = items.get(itemIdx);
             final double nonRoundedDiscount = ItemUtils.getValue(item) * discountFraction;
             final long roundedDiscount = round(nonRoundedDiscount);
-            final double roundingLoss = nonRoundedDiscount - roundedDiscount;
-            if (!itemIdxByRoundingLoss.containsKey(roundingLoss)) {
-                itemIdxByRoundingLoss.put(roundingLoss, new LinkedList<Integer>());
-            }
-            itemIdxByRoundingLoss.get(roundingLoss).add(itemIdx);
-            discountAmountByItemIdx.put(itemIdx, roundedDiscount);
+            roundingLosses[itemIdx] = nonRoundedDiscount - roundedDiscount;
+            discountAmounts[itemIdx] = roundedDiscount;
             remainingDiscountAmountToDistribute -= roundedDiscount;
         }
-        while (remainingDiscountAmountToDistribute != 0) {
-            final boolean reclaiming = remainingDiscountAmountToDistribute < 0;
-            //We've distributed too much. reclaiming one at a time from the items with lowest roundingLoss
-            final Double oldRoundingLoss = reclaiming ? itemIdxByRoundingLoss.firstKey() : itemIdxByRoundingLoss.lastKey();
-            final Queue<Integer> itemIdxs = itemIdxByRoundingLoss.remove(oldRoundingLoss);
-            final Integer itemIdxToChange = itemIdxs.poll();
-            //Reinsert remains to queue until next time:
-            if (!itemIdxs.isEmpty()) {
-                itemIdxByRoundingLoss.put(oldRoundingLoss, itemIdxs);
-            }
-            final Item item = items.get(itemIdxToChange);
-            final Double nonRoundedDiscount = ItemUtils.getValue(item) * discountFraction;
-            //reclaim one unit of money:
-            final Long roundedDiscount = discountAmountByItemIdx.get(itemIdxToChange) + (reclaiming ? -1L : 1L);
-            remainingDiscountAmountToDistribute += reclaiming ? 1L : -1L;
-            //reinsert into collections for next round
-            final double newRoundingLoss = nonRoundedDiscount - roundedDiscount;
-            if (!itemIdxByRoundingLoss.containsKey(newRoundingLoss)) {
-                itemIdxByRoundingLoss.put(newRoundingLoss, new LinkedList<Integer>());
-            }
-            itemIdxByRoundingLoss.get(newRoundingLoss).add(itemIdxToChange);
-            discountAmountByItemIdx.put(itemIdxToChange, roundedDiscount);
-        }
-        return discountAmountByItemIdx;
+        LargestRemainder.distribute(discountAmounts, roundingLosses, remainingDiscountAmountToDistribute);
+        return byIndex(discountAmounts);
     }
 
     static <T extends Discount> Map<Integer, Long> distributeDiscountedAmountOverDiscounts(
@@ -191,49 +166,28 @@ class CartUtils {
             return null;
         }
         long remainingDiscountAmountToDistribute = discountAmount;
-        final Map<Integer, Long> roundedDiscountAmountByDiscountIdx = new HashMap<Integer, Long>();
-        final Map<Integer, BigDecimal> nonRoundedDiscountAmountByDiscountIdx = new HashMap<Integer, BigDecimal>();
-        final NavigableMap<BigDecimal, Queue<Integer>> discountIdxByRoundingLoss = new TreeMap<BigDecimal, Queue<Integer>>();
+        final long[] roundedDiscountAmounts = new long[discounts.size()];
+        final BigDecimal[] roundingLosses = new BigDecimal[discounts.size()];
         BigDecimal tmpTotAmount = BigDecimal.valueOf(totalGrossAmount);
         for (int discountIdx = 0; discountIdx < discounts.size(); discountIdx++) {
             final Discount discount = discounts.get(discountIdx);
             final BigDecimal nonRoundedDiscount = getNonRoundedDiscountValue(discount, tmpTotAmount);
             final long roundedDiscount = round(nonRoundedDiscount);
-            final BigDecimal roundingLoss = nonRoundedDiscount.subtract(BigDecimal.valueOf(roundedDiscount));
-            if (!discountIdxByRoundingLoss.containsKey(roundingLoss)) {
-                discountIdxByRoundingLoss.put(roundingLoss, new LinkedList<Integer>());
-            }
-            discountIdxByRoundingLoss.get(roundingLoss).add(discountIdx);
-            roundedDiscountAmountByDiscountIdx.put(discountIdx, roundedDiscount);
-            nonRoundedDiscountAmountByDiscountIdx.put(discountIdx, nonRoundedDiscount);
+            roundingLosses[discountIdx] = nonRoundedDiscount.subtract(BigDecimal.valueOf(roundedDiscount));
+            roundedDiscountAmounts[discountIdx] = roundedDiscount;
             remainingDiscountAmountToDistribute -= roundedDiscount;
             tmpTotAmount = tmpTotAmount.subtract(nonRoundedDiscount);
         }
-        while (remainingDiscountAmountToDistribute != 0) {
-            final boolean reclaiming = remainingDiscountAmountToDistribute < 0;
-            //We've distributed too much. reclaiming one at a time from the discounts with lowest roundingLoss
-            final BigDecimal oldRoundingLoss
-                = reclaiming ? discountIdxByRoundingLoss.firstKey() : discountIdxByRoundingLoss.lastKey();
-            final Queue<Integer> discountIdxs = discountIdxByRoundingLoss.remove(oldRoundingLoss);
-            final Integer discountIdxToChange = discountIdxs.poll();
-            //Reinsert remains to queue until next time:
-            if (!discountIdxs.isEmpty()) {
-                discountIdxByRoundingLoss.put(oldRoundingLoss, discountIdxs);
-            }
-            //reclaim one unit of money:
-            final Long roundedDiscount = roundedDiscountAmountByDiscountIdx.get(discountIdxToChange) + (reclaiming ? -1L : 1L);
-            remainingDiscountAmountToDistribute += reclaiming ? 1L : -1L;
-            final BigDecimal nonRoundedDiscount = nonRoundedDiscountAmountByDiscountIdx.get(discountIdxToChange);
-            //reinsert into collections for next round
-            final BigDecimal newRoundingLoss = nonRoundedDiscount.subtract(BigDecimal.valueOf(roundedDiscount));
-            if (!discountIdxByRoundingLoss.containsKey(newRoundingLoss)) {
-                discountIdxByRoundingLoss.put(newRoundingLoss, new LinkedList<Integer>());
-            }
-            discountIdxByRoundingLoss.get(newRoundingLoss).add(discountIdxToChange);
-            roundedDiscountAmountByDiscountIdx.put(discountIdxToChange, roundedDiscount);
+        LargestRemainder.distribute(roundedDiscountAmounts, roundingLosses, remainingDiscountAmountToDistribute);
+        return byIndex(roundedDiscountAmounts);
+    }
 
+    private static Map<Integer, Long> byIndex(final long[] amounts) {
+        final Map<Integer, Long> amountByIdx = new HashMap<Integer, Long>();
+        for (int idx = 0; idx < amounts.length; idx++) {
+            amountByIdx.put(idx, amounts[idx]);
         }
-        return roundedDiscountAmountByDiscountIdx;
+        return amountByIdx;
     }
 
     static <K extends Discount<K>> List<DiscountLine<K>> buildDiscountLines(
@@ -389,17 +343,53 @@ class CartUtils {
             return null;
         }
 
+        final long serviceChargeValue = getServiceChargeLineValue(grossValue, cartWideDiscountValue, serviceCharge);
+        return new ServiceChargeLine<S>(
+            serviceCharge,
+            serviceChargeValue,
+            getServiceChargeVat(serviceChargeValue, serviceCharge)
+        );
+    }
+
+    /**
+     * Same as {@link #buildServiceChargeLine(long, Long, ServiceCharge)}, for a service charge whose type is not known,
+     * such as the one of a {@link CartContents}. The line holds an {@link AlteredCartServiceCharge} copy of it.
+     */
+    static ServiceChargeLine<AlteredCartServiceCharge> buildServiceChargeLineCopy(
+        final long grossValue,
+        final Long cartWideDiscountValue,
+        final ServiceCharge<?> serviceCharge
+    ) {
+        if (null == serviceCharge) {
+            return null;
+        }
+
+        final long serviceChargeValue = getServiceChargeLineValue(grossValue, cartWideDiscountValue, serviceCharge);
+        return new ServiceChargeLine<AlteredCartServiceCharge>(
+            AlteredCartServiceCharge.from(serviceCharge),
+            serviceChargeValue,
+            getServiceChargeVat(serviceChargeValue, serviceCharge)
+        );
+    }
+
+    private static long getServiceChargeLineValue(
+        final long grossValue,
+        final Long cartWideDiscountValue,
+        final ServiceCharge<?> serviceCharge
+    ) {
         final Long serviceChargeValue = getServiceChargeValue(grossValue, cartWideDiscountValue, serviceCharge);
-        final Long serviceChargeVat;
-        if (serviceCharge.getVatPercentage() == null) {
-            serviceChargeVat = null;
-        } else {
-            serviceChargeVat
-                = coalesce(serviceChargeValue, 0L)
-                - round((serviceChargeValue * 100) / (100 + (double) serviceCharge.getVatPercentage()));
+        if (serviceChargeValue == null) {
+            throw new CartException("Service charge has neither amount nor percentage: " + serviceCharge);
         }
+        return serviceChargeValue;
+    }
 
-        return new ServiceChargeLine<S>(serviceCharge, serviceChargeValue, serviceChargeVat);
+    private static Long getServiceChargeVat(final long serviceChargeValue, final ServiceCharge<?> serviceCharge) {
+        if (serviceCharge.getVatPercentage() == null) {
+            return null;
+        }
+        return serviceChargeValue
+            - round((serviceChargeValue * 100) / (100 + (double) serviceCharge.getVatPercentage()));
     }
 
     static Long getServiceChargeValue(
@@ -411,6 +401,9 @@ class CartUtils {
             return null;
         }
 
+        if (serviceCharge.getAmount() != null && serviceCharge.getPercentage() == null) {
+            return FixedPoint.multiplyRounded(serviceCharge.getQuantity(), serviceCharge.getAmount());
+        }
         final long actualValue = grossValue - coalesce(cartWideDiscountValue, 0L);
         BigDecimal retVal = null;
         if (serviceCharge.getAmount() != null) {
@@ -17,7 +17,7 @@ class DiscountUtils {
         }
     }
 
-    private static <D extends Discount> void validateDiscount(final D discount) {
+    static <D extends Discount> void validateDiscount(final D discount) {
         if (discount.getQuantity() == null) {
             throw new IllegalArgumentException("Discount cannot have null quantity: " + discount);
         }
@@ -0,0 +1,79 @@
+package com.izettle.cart;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact long arithmetic on decimals that fit a scaled long, eg an unscaled long value and a scale of at most 18, such
+ * as integer quantities and weights with a few decimals. Other decimals, and products that would overflow a long, are
+ * left to {@link BigDecimal}, so that the results are always identical to those of {@link CartUtils#round(BigDecimal)}.
+ */
+final class FixedPoint {
+
+    private static final long[] POWERS_OF_TEN = {
+        1L,
+        10L,
+        100L,
+        1000L,
+        10000L,
+        100000L,
+        1000000L,
+        10000000L,
+        100000000L,
+        1000000000L,
+        10000000000L,
+        100000000000L,
+        1000000000000L,
+        10000000000000L,
+        100000000000000L,
+        1000000000000000L,
+        10000000000000000L,
+        100000000000000000L,
+        1000000000000000000L
+    };
+    private static final int MAX_PRECISION = 18;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * @param decimal a decimal, such as a quantity
+     * @param factor an amount, such as a unit price
+     * @return the product rounded {@link CartUtils#ROUNDING_MODE half up}, same as
+     * {@code CartUtils.round(decimal.multiply(BigDecimal.valueOf(factor)))}
+     */
+    static long multiplyRounded(final BigDecimal decimal, final long factor) {
+        final int scale = decimal.scale();
+        if (scale >= 0 && scale < POWERS_OF_TEN.length && decimal.precision() <= MAX_PRECISION) {
+            // the unscaled value of a decimal of scale 0 is its long value, without creating a big integer
+            final long unscaled = scale == 0 ? decimal.longValue() : decimal.unscaledValue().longValue();
+            final long product = unscaled * factor;
+            if (!overflows(unscaled, factor, product)) {
+                return roundHalfUp(product, POWERS_OF_TEN[scale]);
+            }
+        }
+        return CartUtils.round(decimal.multiply(BigDecimal.valueOf(factor)));
+    }
+
+    /**
+     * @return the quotient rounded half up, away from zero on ties like {@link java.math.RoundingMode#HALF_UP}
+     */
+    private static long roundHalfUp(final long dividend, final long divisor) {
+        final long quotient = dividend / divisor;
+        final long remainder = dividend % divisor;
+        // the remainder is less than the divisor, at most 10^18, so doubling it doesn't overflow
+        if (Math.abs(remainder) * 2 >= divisor) {
+            return dividend < 0 ? quotient - 1 : quotient + 1;
+        }
+        return quotient;
+    }
+
+    /**
+     * Same check as {@code Math.multiplyExact}, which isn't available on all the platforms the library runs on.
+     */
+    private static boolean overflows(final long x, final long y, final long product) {
+        if (((Math.abs(x) | Math.abs(y)) >>> 31) == 0) {
+            return false;
+        }
+        return (y != 0 && product / y != x) || (x == Long.MIN_VALUE && y == -1);
+    }
+}
@@ -0,0 +1,72 @@
+package com.izettle.cart;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The items of a cart by id: the total quantity of each id, and whether any id is shared by several items. Made once
+ * per cart when first needed by an alteration, so that validating an alteration, or answering the remaining quantities
+ * after some, looks up the altered ids only instead of going through all items of the cart every time.
+ */
+final class ItemIndex {
+
+    private final Map<Object, BigDecimal> quantityById;
+    private final boolean duplicateIds;
+
+    private ItemIndex(final Map<Object, BigDecimal> quantityById, final boolean duplicateIds) {
+        this.quantityById = quantityById;
+        this.duplicateIds = duplicateIds;
+    }
+
+    /**
+     * @param items the items of a cart
+     * @return the index of the items, which doesn't change after this call
+     */
+    static ItemIndex of(final List<? extends Item<?, ?>> items) {
+        final Map<Object, BigDecimal> quantityById = new HashMap<Object, BigDecimal>(items.size() * 4 / 3 + 1);
+        boolean duplicateIds = false;
+        for (int i = 0; i < items.size(); i++) {
+            final Item<?, ?> item = items.get(i);
+            final BigDecimal quantity = quantityById.put(item.getId(), item.getQuantity());
+            if (quantity != null) {
+                quantityById.put(item.getId(), quantity.add(item.getQuantity()));
+                duplicateIds = true;
+            }
+        }
+        return new ItemIndex(quantityById, duplicateIds);
+    }
+
+    /**
+     * @param id the id of an item
+     * @return the total quantity of the items of the id, or null if there are none
+     */
+    BigDecimal getQuantity(final Object id) {
+        return quantityById.get(id);
+    }
+
+    /**
+     * @return whether several items have the same id
+     */
+    boolean hasDuplicateIds() {
+        return duplicateIds;
+    }
+
+    /**
+     * The quantity of each item after the alterations, the same as {@link Cart#getRemainingItems(Cart)} gives for the
+     * cart after them when no id is shared by several items: the original quantity plus the altered quantity, with
+     * every quantity of zero as {@link BigDecimal#ZERO}, as the items of zero quantity are left out of that cart.
+     * @param mergedAlterations the valid alterations made to the cart, merged
+     * @return the remaining quantity per id, in a map of its own
+     */
+    Map<Object, BigDecimal> getRemainingQuantities(final Map<Object, BigDecimal> mergedAlterations) {
+        final Map<Object, BigDecimal> remaining = new HashMap<Object, BigDecimal>(quantityById.size() * 4 / 3 + 1);
+        for (Map.Entry<Object, BigDecimal> entry : quantityById.entrySet()) {
+            final BigDecimal change = mergedAlterations.get(entry.getKey());
+            final BigDecimal quantity = change == null ? entry.getValue() : entry.getValue().add(change);
+            remaining.put(entry.getKey(), quantity.signum() == 0 ? BigDecimal.ZERO : quantity);
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,188 @@
+package com.izettle.cart;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The values of each item of a cart that don't depend on the other items or on the cart wide discounts, in primitive
+ * arrays indexed like the list of items. The arrays grow as items are added, so that a cart being edited only has the
+ * values of the added or changed item calculated, see {@link CartBuilder}. Gross values and amount discounts are
+ * calculated with {@link FixedPoint} for the quantities that fit a scaled long, as nearly all do.
+ */
+final class ItemValues {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+    /**
+     * Quantity multiplied with unit price, rounded.
+     */
+    private long[] grossValues;
+    /**
+     * Value of the item local discount, only meaningful where {@link #hasLineDiscount} is set.
+     */
+    private long[] lineDiscounts;
+    private boolean[] hasLineDiscount;
+    /**
+     * VAT percentage, only meaningful where {@link #hasVat} is set.
+     */
+    private float[] vatPercentages;
+    private boolean[] hasVat;
+    /**
+     * The sum of the gross values with local discounts applied, eg the gross value of the cart.
+     */
+    private long value;
+
+    ItemValues() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ItemValues(final int capacity) {
+        grossValues = new long[capacity];
+        lineDiscounts = new long[capacity];
+        hasLineDiscount = new boolean[capacity];
+        vatPercentages = new float[capacity];
+        hasVat = new boolean[capacity];
+    }
+
+    static ItemValues of(final List<? extends Item> items) {
+        final ItemValues itemValues = new ItemValues(items.size());
+        for (Item item : items) {
+            itemValues.add(item);
+        }
+        return itemValues;
+    }
+
+    /**
+     * @return a copy of these values, trimmed to the current items, that is unaffected by later changes to these
+     */
+    ItemValues copy() {
+        final ItemValues copy = new ItemValues(size);
+        System.arraycopy(grossValues, 0, copy.grossValues, 0, size);
+        System.arraycopy(lineDiscounts, 0, copy.lineDiscounts, 0, size);
+        System.arraycopy(hasLineDiscount, 0, copy.hasLineDiscount, 0, size);
+        System.arraycopy(vatPercentages, 0, copy.vatPercentages, 0, size);
+        System.arraycopy(hasVat, 0, copy.hasVat, 0, size);
+        copy.size = size;
+        copy.value = value;
+        return copy;
+    }
+
+    void add(final Item item) {
+        if (size == grossValues.length) {
+            grow();
+        }
+        put(size, item);
+        size++;
+    }
+
+    void set(final int index, final Item item) {
+        checkIndex(index);
+        put(index, item);
+    }
+
+    /**
+     * Calculates the values of the item before storing any of them, so that a failing item leaves the values as they
+     * were.
+     */
+    private void put(final int index, final Item item) {
+        final long gross = FixedPoint.multiplyRounded(item.getQuantity(), item.getUnitPrice());
+        final Discount discount = item.getDiscount();
+        final Long lineDiscount;
+        if (discount == null) {
+            lineDiscount = null;
+        } else if (discount.getAmount() != null && discount.getPercentage() == null) {
+            lineDiscount = FixedPoint.multiplyRounded(discount.getQuantity(), discount.getAmount());
+        } else {
+            lineDiscount = CartUtils.getRoundedDiscountValue(discount, gross);
+        }
+        final Float vatPercentage = item.getVatPercentage();
+        value -= getValue(index);
+        grossValues[index] = gross;
+        lineDiscounts[index] = lineDiscount == null ? 0L : lineDiscount;
+        hasLineDiscount[index] = lineDiscount != null;
+        vatPercentages[index] = vatPercentage == null ? 0f : vatPercentage;
+        hasVat[index] = vatPercentage != null;
+        value += getValue(index);
+    }
+
+    void remove(final int index) {
+        checkIndex(index);
+        value -= getValue(index);
+        final int moved = size - index - 1;
+        System.arraycopy(grossValues, index + 1, grossValues, index, moved);
+        System.arraycopy(lineDiscounts, index + 1, lineDiscounts, index, moved);
+        System.arraycopy(hasLineDiscount, index + 1, hasLineDiscount, index, moved);
+        System.arraycopy(vatPercentages, index + 1, vatPercentages, index, moved);
+        System.arraycopy(hasVat, index + 1, hasVat, index, moved);
+        size--;
+        grossValues[size] = 0L;
+        lineDiscounts[size] = 0L;
+        hasLineDiscount[size] = false;
+        vatPercentages[size] = 0f;
+        hasVat[size] = false;
+    }
+
+    void clear() {
+        Arrays.fill(grossValues, 0, size, 0L);
+        Arrays.fill(lineDiscounts, 0, size, 0L);
+        Arrays.fill(hasLineDiscount, 0, size, false);
+        Arrays.fill(vatPercentages, 0, size, 0f);
+        Arrays.fill(hasVat, 0, size, false);
+        size = 0;
+        value = 0L;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the sum of the values of the items, eg the gross value of the cart
+     */
+    long getValue() {
+        return value;
+    }
+
+    /**
+     * @return the gross value with local discount applied, eg the value the item contributes to the cart gross value
+     */
+    long getValue(final int index) {
+        return grossValues[index] - lineDiscounts[index];
+    }
+
+    long getGrossValue(final int index) {
+        return grossValues[index];
+    }
+
+    boolean hasLineDiscount(final int index) {
+        return hasLineDiscount[index];
+    }
+
+    long getLineDiscount(final int index) {
+        return lineDiscounts[index];
+    }
+
+    boolean hasVat(final int index) {
+        return hasVat[index];
+    }
+
+    float getVatPercentage(final int index) {
+        return vatPercentages[index];
+    }
+
+    private void grow() {
+        final int capacity = Math.max(DEFAULT_CAPACITY, grossValues.length + (grossValues.length >> 1));
+        grossValues = Arrays.copyOf(grossValues, capacity);
+        lineDiscounts = Arrays.copyOf(lineDiscounts, capacity);
+        hasLineDiscount = Arrays.copyOf(hasLineDiscount, capacity);
+        vatPercentages = Arrays.copyOf(vatPercentages, capacity);
+        hasVat = Arrays.copyOf(hasVat, capacity);
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
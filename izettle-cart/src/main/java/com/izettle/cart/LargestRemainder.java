@@ -0,0 +1,133 @@
+package com.izettle.cart;
+
+import java.math.BigDecimal;
+
+/**
+ * Settles the remainder left after rounding the shares of an amount, so that the shares add up to the amount again.
+ * Units are given to the shares that lost the most on rounding (or reclaimed from those that gained the most), in
+ * share order on equal losses.
+ * <p>
+ * This replaces handing out one unit at a time, each time moving the adjusted share to its new rounding loss in a tree
+ * map. As rounding losses lie within one unit of each other, a share that has been adjusted once never comes before a
+ * share that hasn't: the unit by unit procedure goes round the shares in loss order, one unit per share per round, and
+ * its outcome can be had from a single sort.
+ */
+final class LargestRemainder {
+
+    private LargestRemainder() {
+    }
+
+    /**
+     * Compares two shares, by their index.
+     */
+    private interface ShareComparator {
+        int compare(int left, int right);
+    }
+
+    /**
+     * @param amounts the rounded shares, adjusted in place
+     * @param losses the rounding loss of each share, that is the exact share minus the rounded share
+     * @param remainder the amount minus the sum of the rounded shares
+     */
+    static void distribute(final long[] amounts, final double[] losses, final long remainder) {
+        if (remainder == 0L) {
+            return;
+        }
+        distribute(amounts, byRoundingLoss(losses, remainder > 0L), remainder);
+    }
+
+    /**
+     * @param amounts the rounded shares, adjusted in place
+     * @param losses the rounding loss of each share, that is the exact share minus the rounded share
+     * @param remainder the amount minus the sum of the rounded shares
+     */
+    static void distribute(final long[] amounts, final BigDecimal[] losses, final long remainder) {
+        if (remainder == 0L) {
+            return;
+        }
+        distribute(amounts, byRoundingLoss(losses, remainder > 0L), remainder);
+    }
+
+    private static void distribute(final long[] amounts, final int[] order, final long remainder) {
+        if (amounts.length == 0) {
+            throw new IllegalArgumentException("No shares to distribute " + remainder + " over");
+        }
+        final long unit = remainder > 0L ? 1L : -1L;
+        final long units = Math.abs(remainder);
+        final long rounds = units / amounts.length;
+        final int extra = (int) (units % amounts.length);
+        if (rounds != 0L) {
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] += rounds * unit;
+            }
+        }
+        for (int i = 0; i < extra; i++) {
+            amounts[order[i]] += unit;
+        }
+    }
+
+    /**
+     * The share indexes in the order units are given (largest loss first) or reclaimed (smallest loss first). Losses
+     * are compared like {@link Double#compareTo}, so -0.0 comes before 0.0.
+     */
+    static int[] byRoundingLoss(final double[] losses, final boolean giving) {
+        return sort(losses.length, new ShareComparator() {
+            @Override
+            public int compare(final int left, final int right) {
+                final int comparison = Double.compare(losses[left], losses[right]);
+                return giving ? -comparison : comparison;
+            }
+        });
+    }
+
+    /**
+     * The share indexes in the order units are given (largest loss first) or reclaimed (smallest loss first). Losses
+     * are compared like {@link BigDecimal#compareTo}, so 0.50 and 0.5 are equal.
+     */
+    static int[] byRoundingLoss(final BigDecimal[] losses, final boolean giving) {
+        return sort(losses.length, new ShareComparator() {
+            @Override
+            public int compare(final int left, final int right) {
+                final int comparison = losses[left].compareTo(losses[right]);
+                return giving ? -comparison : comparison;
+            }
+        });
+    }
+
+    /**
+     * Stable bottom up merge sort of the indexes, keeping equal shares in index order.
+     */
+    private static int[] sort(final int length, final ShareComparator comparator) {
+        int[] order = new int[length];
+        int[] buffer = new int[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < length; width <<= 1) {
+            for (int from = 0; from < length; from += width << 1) {
+                final int middle = Math.min(from + width, length);
+                final int to = Math.min(from + (width << 1), length);
+                int left = from;
+                int right = middle;
+                int out = from;
+                while (left < middle && right < to) {
+                    if (comparator.compare(order[left], order[right]) <= 0) {
+                        buffer[out++] = order[left++];
+                    } else {
+                        buffer[out++] = order[right++];
+                    }
+                }
+                while (left < middle) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < to) {
+                    buffer[out++] = order[right++];
+                }
+            }
+            final int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+}
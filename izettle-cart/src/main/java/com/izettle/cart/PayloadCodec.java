@@ -0,0 +1,23 @@
+package com.izettle.cart;
+
+/**
+ * Writes and reads the items, discounts or service charge of a cart for a {@link CartCodec}. As only the user of the
+ * library knows what its items consist of (ids, names, references to products etc), it provides one codec per type.
+ * A codec must read exactly what it wrote, and will typically use the VAT dictionary of
+ * {@link CartOutput#writeVatPercentage(Float)} and the compact quantities of {@link CartOutput#writeBigDecimal}.
+ * @param <P> the type of the payload
+ */
+public interface PayloadCodec<P> {
+
+    /**
+     * @param payload the item, discount or service charge to write, never null
+     * @param out the output to write to
+     */
+    void write(P payload, CartOutput out);
+
+    /**
+     * @param in the input to read from, positioned where {@link #write} started writing
+     * @return the read item, discount or service charge
+     */
+    P read(CartInput in);
+}
@@ -0,0 +1,130 @@
+package com.izettle.cart;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Sums the actual VAT and value of the lines of a cart per VAT percentage, in a single pass over the item lines and the
+ * service charge. The VAT percentages are kept as the bits of the float, in a small array that is searched linearly (a
+ * cart rarely has more than a handful of VAT percentages), so that adding a line neither boxes nor allocates. Groups
+ * the same values as {@link CartUtils#groupValuesByVatPercentage}, which is kept as the reference implementation: the
+ * bits of floats are equal exactly when the floats are by {@link Float#compareTo}.
+ */
+final class VatGroupAccumulator implements Serializable {
+
+    private static final long serialVersionUID = 2870529409335932916L;
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int size;
+    private int[] vatPercentageBits = new int[DEFAULT_CAPACITY];
+    private long[] vats = new long[DEFAULT_CAPACITY];
+    private long[] values = new long[DEFAULT_CAPACITY];
+    /**
+     * The group of the last added line, checked first as lines of the same VAT percentage tend to follow each other.
+     */
+    private int last;
+
+    /**
+     * @param itemLines the item lines of a cart
+     * @param serviceChargeLine the service charge line of the cart, possibly null
+     * @return the actual VAT and value per VAT percentage
+     */
+    static SortedMap<Float, VatGroupValues> group(
+        final List<? extends ItemLine<?, ?>> itemLines,
+        final ServiceChargeLine<?> serviceChargeLine
+    ) {
+        final VatGroupAccumulator accumulator = new VatGroupAccumulator();
+        for (int i = 0; i < itemLines.size(); i++) {
+            final ItemLine<?, ?> itemLine = itemLines.get(i);
+            if (itemLine.getActualVat() != null) {
+                accumulator.add(
+                    itemLine.getItem().getVatPercentage(),
+                    itemLine.getActualVat(),
+                    itemLine.getActualValue()
+                );
+            }
+        }
+        accumulator.add(serviceChargeLine);
+        return accumulator.toSortedMap();
+    }
+
+    void add(final float vatPercentage, final long vat, final long value) {
+        final int bits = Float.floatToIntBits(vatPercentage);
+        int group = last;
+        if (group >= size || vatPercentageBits[group] != bits) {
+            group = indexOf(bits);
+            if (group < 0) {
+                group = newGroup(bits);
+            }
+            last = group;
+        }
+        vats[group] += vat;
+        values[group] += value;
+    }
+
+    /**
+     * @param serviceChargeLine the service charge line of the cart, added if it has VAT
+     */
+    void add(final ServiceChargeLine<?> serviceChargeLine) {
+        if (serviceChargeLine != null && serviceChargeLine.getVat() != null) {
+            add(
+                serviceChargeLine.getServiceCharge().getVatPercentage(),
+                serviceChargeLine.getVat(),
+                serviceChargeLine.getValue()
+            );
+        }
+    }
+
+    /**
+     * @param groups the VAT groups of a cart
+     * @param sign 1 to add the groups, -1 to subtract them
+     */
+    void add(final SortedMap<Float, VatGroupValues> groups, final int sign) {
+        for (VatGroupValues group : groups.values()) {
+            add(group.getVatPercentage(), sign * group.getActualVatValue(), sign * group.getActualValue());
+        }
+    }
+
+    /**
+     * @param other the groups to add to these, unchanged
+     */
+    void add(final VatGroupAccumulator other) {
+        for (int i = 0; i < other.size; i++) {
+            add(Float.intBitsToFloat(other.vatPercentageBits[i]), other.vats[i], other.values[i]);
+        }
+    }
+
+    /**
+     * @return the actual VAT and value per VAT percentage, in a map of its own
+     */
+    SortedMap<Float, VatGroupValues> toSortedMap() {
+        final SortedMap<Float, VatGroupValues> vatGroupValues = new TreeMap<Float, VatGroupValues>();
+        for (int i = 0; i < size; i++) {
+            final float vatPercentage = Float.intBitsToFloat(vatPercentageBits[i]);
+            vatGroupValues.put(vatPercentage, new VatGroupValues(vatPercentage, vats[i], values[i]));
+        }
+        return vatGroupValues;
+    }
+
+    private int indexOf(final int bits) {
+        for (int i = 0; i < size; i++) {
+            if (vatPercentageBits[i] == bits) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int newGroup(final int bits) {
+        if (size == vatPercentageBits.length) {
+            vatPercentageBits = Arrays.copyOf(vatPercentageBits, size << 1);
+            vats = Arrays.copyOf(vats, size << 1);
+            values = Arrays.copyOf(values, size << 1);
+        }
+        vatPercentageBits[size] = bits;
+        return size++;
+    }
+}
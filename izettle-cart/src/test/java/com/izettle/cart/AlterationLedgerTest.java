@@ -0,0 +1,201 @@
+package com.izettle.cart;
+
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import com.izettle.cart.exception.InsufficientQuantityException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+public class AlterationLedgerTest {
+
+    @Test
+    public void itShouldCalculateTheSameAlterationsAsTheCart() {
+        final Random random = new Random(99L);
+        for (int run = 0; run < 300; run++) {
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = randomCart(random);
+            final AlterationLedger<TestItem, TestDiscount, TestDiscount, TestServiceCharge> ledger =
+                AlterationLedger.of(cart);
+            final List<Map<Object, BigDecimal>> previousAlterations = new ArrayList<Map<Object, BigDecimal>>();
+            for (int refund = 0; refund < 10; refund++) {
+                final Map<Object, BigDecimal> remaining = cart.getRemainingItems(previousAlterations);
+                assertEquals(remaining, ledger.getRemainingItems());
+                final Map<Object, BigDecimal> alteration = randomAlteration(random, remaining);
+                if (alteration.isEmpty()) {
+                    break;
+                }
+                assertSameAlteration(
+                    cart.createAlterationCart(previousAlterations, alteration),
+                    ledger.apply(alteration)
+                );
+                previousAlterations.add(alteration);
+            }
+            assertEquals(
+                AlterationUtils.mergeAlterations(previousAlterations),
+                ledger.getMergedAlterations()
+            );
+        }
+    }
+
+    @Test
+    public void itShouldCalculateAlterationsInParallel() {
+        final Random random = new Random(100L);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int run = 0; run < 100; run++) {
+                final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = randomCart(random);
+                final List<Map<Object, BigDecimal>> previousAlterations = new ArrayList<Map<Object, BigDecimal>>();
+                final Map<Object, BigDecimal> previous =
+                    randomAlteration(random, cart.getRemainingItems(previousAlterations));
+                if (!previous.isEmpty()) {
+                    previousAlterations.add(previous);
+                }
+                final Map<Object, BigDecimal> remaining = cart.getRemainingItems(previousAlterations);
+                final List<Map<Object, BigDecimal>> candidates = new ArrayList<Map<Object, BigDecimal>>();
+                // each remaining line on its own, and some combinations
+                for (Map.Entry<Object, BigDecimal> line : remaining.entrySet()) {
+                    if (line.getValue().signum() > 0) {
+                        candidates.add(singletonMap(line.getKey(), line.getValue().negate()));
+                    }
+                }
+                for (int i = 0; i < 50; i++) {
+                    final Map<Object, BigDecimal> candidate = randomAlteration(random, remaining);
+                    if (!candidate.isEmpty()) {
+                        candidates.add(candidate);
+                    }
+                }
+                final List<AlterationCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>> alterations =
+                    cart.createAlterationCarts(previousAlterations, candidates, executor);
+                assertEquals(candidates.size(), alterations.size());
+                for (int i = 0; i < candidates.size(); i++) {
+                    assertSameAlteration(
+                        cart.createAlterationCart(previousAlterations, candidates.get(i)),
+                        alterations.get(i)
+                    );
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = InsufficientQuantityException.class)
+    public void itShouldRejectInvalidAlterationsInParallel() {
+        final Object id = UUID.randomUUID();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final List<Map<Object, BigDecimal>> candidates = new ArrayList<Map<Object, BigDecimal>>();
+            candidates.add(singletonMap(id, BigDecimal.valueOf(-1L)));
+            candidates.add(singletonMap(id, BigDecimal.valueOf(-4L)));
+            AlterationLedger.of(cart(id)).createAlterationCarts(executor, candidates);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void itShouldNotApplyInvalidAlterations() {
+        final Object id = UUID.randomUUID();
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = cart(id);
+        final AlterationLedger<TestItem, TestDiscount, TestDiscount, TestServiceCharge> ledger =
+            AlterationLedger.of(cart);
+        ledger.apply(singletonMap(id, BigDecimal.valueOf(-2L)));
+        try {
+            ledger.apply(singletonMap(id, BigDecimal.valueOf(-2L)));
+        } catch (InsufficientQuantityException e) {
+            assertThat(ledger.getMergedAlterations()).isEqualTo(singletonMap(id, BigDecimal.valueOf(-2L)));
+            assertThat(ledger.getRemainingItems()).isEqualTo(singletonMap(id, BigDecimal.ONE));
+            return;
+        }
+        throw new AssertionError("Expected InsufficientQuantityException");
+    }
+
+    @Test
+    public void itShouldRestoreAPersistedLedger() {
+        final Object id = UUID.randomUUID();
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = cart(id);
+        final AlterationLedger<TestItem, TestDiscount, TestDiscount, TestServiceCharge> ledger =
+            AlterationLedger.of(cart);
+        ledger.apply(singletonMap(id, BigDecimal.valueOf(-1L)));
+
+        final AlterationLedger<TestItem, TestDiscount, TestDiscount, TestServiceCharge> restored =
+            AlterationLedger.restore(cart, ledger.getMergedAlterations());
+        final Map<Object, BigDecimal> alteration = singletonMap(id, BigDecimal.valueOf(-1L));
+        final long expected = ledger.createAlterationCart(alteration).getValue();
+        assertThat(restored.createAlterationCart(alteration).getValue()).isEqualTo(expected);
+    }
+
+    private static Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart(final Object id) {
+        final List<TestItem> items = new ArrayList<TestItem>();
+        items.add(new TestItem(id, null, 1000L, 25f, BigDecimal.valueOf(3L), null));
+        final List<TestDiscount> discounts = new ArrayList<TestDiscount>();
+        discounts.add(new TestDiscount(100L, null, BigDecimal.ONE));
+        return new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, null);
+    }
+
+    private static Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> randomCart(final Random random) {
+        final List<TestItem> items = new ArrayList<TestItem>();
+        final int size = 1 + random.nextInt(8);
+        final boolean itemDiscounts = random.nextBoolean();
+        for (int i = 0; i < size; i++) {
+            final TestDiscount discount;
+            if (itemDiscounts && random.nextBoolean()) {
+                discount = random.nextBoolean()
+                    ? new TestDiscount(10L + random.nextInt(50), null, BigDecimal.ONE)
+                    : new TestDiscount(null, 15d, BigDecimal.ONE);
+            } else {
+                discount = null;
+            }
+            items.add(new TestItem(
+                UUID.randomUUID(),
+                null,
+                100L + random.nextInt(10000),
+                random.nextBoolean() ? 25f : 12f,
+                random.nextInt(4) == 0 ? new BigDecimal("2.5") : BigDecimal.valueOf(1 + random.nextInt(5)),
+                discount
+            ));
+        }
+        final List<TestDiscount> discounts = new ArrayList<TestDiscount>();
+        if (random.nextInt(3) == 0) {
+            discounts.add(new TestDiscount(null, 12.5d, BigDecimal.ONE));
+        }
+        final TestServiceCharge serviceCharge =
+            random.nextInt(4) == 0 ? new TestServiceCharge(6f, null, 10d, BigDecimal.ONE) : null;
+        return new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge);
+    }
+
+    static Map<Object, BigDecimal> randomAlteration(
+        final Random random,
+        final Map<Object, BigDecimal> remaining
+    ) {
+        final Map<Object, BigDecimal> alteration = new HashMap<Object, BigDecimal>();
+        for (Map.Entry<Object, BigDecimal> entry : remaining.entrySet()) {
+            if (entry.getValue().signum() > 0 && random.nextInt(3) == 0) {
+                final BigDecimal returned =
+                    random.nextBoolean() ? entry.getValue() : entry.getValue().min(BigDecimal.ONE);
+                alteration.put(entry.getKey(), returned.negate());
+            }
+        }
+        return alteration;
+    }
+
+    private static void assertSameAlteration(final AlterationCart expected, final AlterationCart actual) {
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getGrossValue(), actual.getGrossValue());
+        assertEquals(expected.getActualVat(), actual.getActualVat());
+        assertEquals(expected.getGrossVat(), actual.getGrossVat());
+        assertEquals(expected.getDiscountValue(), actual.getDiscountValue());
+        assertEquals(expected.getCartWideDiscountValue(), actual.getCartWideDiscountValue());
+        assertEquals(expected.getServiceChargeValue(), actual.getServiceChargeValue());
+        assertEquals(expected.groupValuesByVatPercentage().toString(), actual.groupValuesByVatPercentage().toString());
+    }
+}
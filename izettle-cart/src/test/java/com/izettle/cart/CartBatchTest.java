@@ -0,0 +1,149 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+public class CartBatchTest {
+
+    private static class Contents implements CartContents {
+        private final List<TestItem> items;
+        private final List<TestDiscount> discounts;
+        private final TestServiceCharge serviceCharge;
+
+        Contents(
+            final List<TestItem> items,
+            final List<TestDiscount> discounts,
+            final TestServiceCharge serviceCharge
+        ) {
+            this.items = items;
+            this.discounts = discounts;
+            this.serviceCharge = serviceCharge;
+        }
+
+        @Override
+        public List<TestItem> getItems() {
+            return items;
+        }
+
+        @Override
+        public List<TestDiscount> getDiscounts() {
+            return discounts;
+        }
+
+        @Override
+        public TestServiceCharge getServiceCharge() {
+            return serviceCharge;
+        }
+
+        Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> toCart() {
+            return new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge);
+        }
+    }
+
+    @Test
+    public void itShouldCalculateTheSameTotalsAsTheCart() {
+        final List<Contents> carts = randomCarts(new Random(17L), 1000);
+        final List<CartTotals> totals = CartBatch.evaluate(carts);
+        assertEquals(carts.size(), totals.size());
+        for (int i = 0; i < carts.size(); i++) {
+            assertSameTotals(carts.get(i).toCart(), totals.get(i));
+        }
+    }
+
+    @Test
+    public void itShouldCalculateTheSameTotalsInParallel() {
+        final List<Contents> carts = randomCarts(new Random(18L), 2000);
+        final List<CartTotals> expected = CartBatch.evaluate(carts);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<CartTotals> actual = CartBatch.evaluate(executor, carts);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).toString(), actual.get(i).toString());
+            }
+            final Iterator<CartTotals> streamed = CartBatch.evaluate(executor, carts.iterator(), 300);
+            for (CartTotals cartTotals : expected) {
+                assertEquals(cartTotals.toString(), streamed.next().toString());
+            }
+            assertThat(streamed.hasNext()).isFalse();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void itShouldSummarizeInParallel() {
+        final List<Contents> carts = randomCarts(new Random(19L), 2000);
+        final CartSummary expected = new CartSummary();
+        for (Contents cart : carts) {
+            expected.add(cart.toCart());
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(expected.toString(), CartBatch.summarize(executor, carts).toString());
+            final CartSummary small = CartBatch.summarize(executor, carts.subList(0, 10));
+            assertThat(small.getNumberOfCarts()).isEqualTo(10);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void itShouldChunkLargeBatches() {
+        assertThat(CartBatch.chunkSize(10, 8)).isEqualTo(CartBatch.MIN_CHUNK_SIZE);
+        assertThat(CartBatch.chunkSize(100000, 8)).isEqualTo(3125);
+    }
+
+    private static void assertSameTotals(
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart,
+        final CartTotals totals
+    ) {
+        assertEquals(cart.getValue(), totals.getValue());
+        assertEquals(cart.getGrossValue(), totals.getGrossValue());
+        assertEquals(cart.getDiscountValue(), totals.getDiscountValue());
+        assertEquals(cart.getCartWideDiscountValue(), totals.getCartWideDiscountValue());
+        assertEquals(cart.getServiceChargeValue(), totals.getServiceChargeValue());
+        assertEquals(cart.getActualVat(), totals.getActualVat());
+        assertEquals(cart.getGrossVat(), totals.getGrossVat());
+        assertEquals(cart.getDiscountVat(), totals.getDiscountVat());
+        assertEquals(cart.getActualDiscountPercentage(), totals.getActualDiscountPercentage());
+        assertEquals(cart.getNumberOfDiscounts(), totals.getNumberOfDiscounts());
+        assertEquals(
+            cart.groupValuesByVatPercentage().toString(),
+            totals.groupValuesByVatPercentage().toString()
+        );
+    }
+
+    private static List<Contents> randomCarts(final Random random, final int size) {
+        final List<Contents> carts = new ArrayList<Contents>(size);
+        for (int i = 0; i < size; i++) {
+            final TestServiceCharge serviceCharge;
+            switch (random.nextInt(3)) {
+                case 0:
+                    serviceCharge = null;
+                    break;
+                case 1:
+                    serviceCharge = new TestServiceCharge(12f, null, 10d, BigDecimal.ONE);
+                    break;
+                default:
+                    serviceCharge = new TestServiceCharge(null, 500L, null, BigDecimal.ONE);
+                    break;
+            }
+            carts.add(new Contents(
+                CartCalculationTest.randomItems(random),
+                CartCalculationTest.randomDiscounts(random),
+                serviceCharge
+            ));
+        }
+        return carts;
+    }
+}
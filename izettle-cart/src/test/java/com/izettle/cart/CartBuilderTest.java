@@ -0,0 +1,105 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+
+public class CartBuilderTest {
+
+    @Test
+    public void itShouldBuildTheSameCartAsTheConstructor() {
+        final Random random = new Random(23L);
+        final CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge> builder =
+            new CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge>();
+        final List<TestItem> items = new ArrayList<TestItem>();
+        final List<TestDiscount> discounts = new ArrayList<TestDiscount>();
+        TestServiceCharge serviceCharge = null;
+        for (int edit = 0; edit < 3000; edit++) {
+            final int action = random.nextInt(10);
+            if (action < 5 || items.isEmpty()) {
+                final TestItem item = CartCalculationTest.randomItems(random).get(0);
+                builder.addItem(item);
+                items.add(item);
+            } else if (action < 7) {
+                final int index = random.nextInt(items.size());
+                final TestItem item = CartCalculationTest.randomItems(random).get(0);
+                assertThat(builder.setItem(index, item)).isSameAs(items.set(index, item));
+            } else if (action < 8) {
+                final int index = random.nextInt(items.size());
+                assertThat(builder.removeItem(index)).isSameAs(items.remove(index));
+            } else if (action < 9) {
+                if (discounts.size() < 3) {
+                    final TestDiscount discount = random.nextBoolean()
+                        ? new TestDiscount(100L, null, BigDecimal.ONE)
+                        : new TestDiscount(null, 10d, BigDecimal.ONE);
+                    builder.addDiscount(discount);
+                    discounts.add(discount);
+                } else {
+                    assertThat(builder.removeDiscount(0)).isSameAs(discounts.remove(0));
+                }
+            } else {
+                serviceCharge = random.nextBoolean() ? null : new TestServiceCharge(12f, 100L, 5d, BigDecimal.ONE);
+                builder.setServiceCharge(serviceCharge);
+            }
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> expected =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge);
+            assertEquals(expected.getGrossValue(), builder.getGrossValue());
+            assertEquals(expected.getValue(), builder.getValue());
+            assertEquals(expected.getCartWideDiscountValue(), builder.getCartWideDiscountValue());
+            assertEquals(expected.getServiceChargeValue(), builder.getServiceChargeValue());
+            if (edit % 10 == 0) {
+                assertEquals(expected.getActualVat(), builder.getActualVat());
+                assertEquals(expected.toString(), builder.build().toString());
+            }
+        }
+    }
+
+    @Test
+    public void itShouldContinueFromACart() {
+        final List<TestItem> items = new ArrayList<TestItem>();
+        items.add(new TestItem(UUID.randomUUID(), 1000L, 25f, BigDecimal.ONE));
+        items.add(new TestItem(UUID.randomUUID(), 500L, 12f, new BigDecimal("2")));
+        final List<TestDiscount> discounts = new ArrayList<TestDiscount>();
+        discounts.add(new TestDiscount(null, 10d, BigDecimal.ONE));
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+            new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, null);
+
+        final CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge> builder = CartBuilder.from(cart);
+        assertEquals(cart.toString(), builder.build().toString());
+
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> built = builder.build();
+        builder.removeItem(0);
+        assertThat(builder.getGrossValue()).isEqualTo(1000L);
+        assertThat(built.getGrossValue()).isEqualTo(2000L);
+        assertThat(builder.clear().getGrossValue()).isEqualTo(0L);
+    }
+
+    @Test
+    public void itShouldNotChangeBuiltCartsWhenEditedFurther() {
+        final CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge> builder =
+            new CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge>()
+                .addItem(new TestItem(UUID.randomUUID(), 1000L, 25f, BigDecimal.ONE))
+                .addDiscount(new TestDiscount(null, 10d, BigDecimal.ONE));
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = builder.build();
+        builder.setItem(0, new TestItem(UUID.randomUUID(), 2000L, 12f, BigDecimal.ONE));
+        builder.addItem(new TestItem(UUID.randomUUID(), 500L, 6f, BigDecimal.ONE));
+        builder.removeDiscount(0);
+        assertEquals(900L, cart.getValue());
+        assertEquals(Long.valueOf(180L), cart.getActualVat());
+        assertThat(cart.getItemLines()).hasSize(1);
+        assertThat(cart.getItemLines().get(0).getActualValue()).isEqualTo(900L);
+        assertThat(cart.getDiscountLines()).hasSize(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itShouldNotAcceptItemsWithZeroQuantity() {
+        new CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge>()
+            .addItem(new TestItem(UUID.randomUUID(), 1000L, 25f, BigDecimal.ZERO));
+    }
+}
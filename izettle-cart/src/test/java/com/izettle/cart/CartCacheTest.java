@@ -0,0 +1,129 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+
+public class CartCacheTest {
+
+    private static final int RUNS = 1000;
+
+    @Test
+    public void itShouldCreateTheSameCartsAsTheConstructor() {
+        final Random random = new Random(48L);
+        final CartCache cache = new CartCache(RUNS);
+        for (int i = 0; i < RUNS; i++) {
+            final List<TestItem> items = CartCalculationTest.randomItems(random);
+            final List<TestDiscount> discounts = CartCalculationTest.randomDiscounts(random);
+            final TestServiceCharge serviceCharge =
+                random.nextBoolean() ? null : new TestServiceCharge(12f, null, 10d, BigDecimal.ONE);
+            final ReferenceCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> reference =
+                new ReferenceCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(
+                    items,
+                    discounts,
+                    serviceCharge
+                );
+            reference.assertSameValues(cache.cart(items, discounts, serviceCharge));
+            reference.assertSameValues(cache.cart(items, discounts, serviceCharge));
+            // the service charge isn't part of the fingerprint, but calculated for each cart
+            final TestServiceCharge otherServiceCharge = new TestServiceCharge(null, 500L, null, BigDecimal.ONE);
+            new ReferenceCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(
+                items,
+                discounts,
+                otherServiceCharge
+            ).assertSameValues(cache.cart(items, discounts, otherServiceCharge));
+        }
+        assertThat(cache.getMissCount()).isEqualTo(RUNS);
+        assertThat(cache.getHitCount()).isEqualTo(2 * RUNS);
+        assertThat(cache.getEvictionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void itShouldPutTheItemsOfEachCartOnItsLines() {
+        final CartCache cache = new CartCache(10);
+        final List<TestItem> items = Arrays.asList(
+            new TestItem(UUID.randomUUID(), "Coffee", 3000L, 12f, BigDecimal.ONE, null)
+        );
+        final List<TestItem> sameValues = Arrays.asList(
+            new TestItem(UUID.randomUUID(), "Tea", 3000L, 12f, BigDecimal.ONE, null)
+        );
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+            cache.cart(items, Collections.<TestDiscount>emptyList(), null);
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> hit =
+            cache.cart(sameValues, Collections.<TestDiscount>emptyList(), null);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertNotSame(cart, hit);
+        assertSame(items.get(0), cart.getItemLines().get(0).getItem());
+        assertSame(sameValues.get(0), hit.getItemLines().get(0).getItem());
+        assertEquals(cart.getValue(), hit.getValue());
+    }
+
+    @Test
+    public void itShouldTellApartCartsOfDifferentValues() {
+        final CartCache cache = new CartCache(100);
+        final TestDiscount tenPercent = new TestDiscount(null, 10d, BigDecimal.ONE);
+        final List<List<TestItem>> carts = new ArrayList<List<TestItem>>();
+        carts.add(items(new TestItem(UUID.randomUUID(), null, 1000L, 25f, BigDecimal.ONE, null)));
+        carts.add(items(new TestItem(UUID.randomUUID(), null, 1000L, 25f, new BigDecimal("1.0"), null)));
+        carts.add(items(new TestItem(UUID.randomUUID(), null, 1000L, 0f, BigDecimal.ONE, null)));
+        carts.add(items(new TestItem(UUID.randomUUID(), null, 1000L, null, BigDecimal.ONE, null)));
+        carts.add(items(new TestItem(UUID.randomUUID(), null, 1001L, 25f, BigDecimal.ONE, null)));
+        carts.add(items(new TestItem(UUID.randomUUID(), null, 1000L, 25f, BigDecimal.ONE, tenPercent)));
+        carts.add(items(new TestItem(
+            UUID.randomUUID(),
+            null,
+            1000L,
+            25f,
+            BigDecimal.ONE,
+            new TestDiscount(10L, null, BigDecimal.ONE)
+        )));
+        carts.add(items(
+            new TestItem(UUID.randomUUID(), null, 1000L, 25f, BigDecimal.ONE, null),
+            new TestItem(UUID.randomUUID(), null, 1000L, 25f, BigDecimal.ONE, null)
+        ));
+        for (List<TestItem> items : carts) {
+            cache.cart(items, null, null);
+        }
+        assertThat(cache.getMissCount()).isEqualTo(carts.size());
+        cache.cart(carts.get(0), Collections.singletonList(tenPercent), null);
+        cache.cart(carts.get(5), Collections.singletonList(tenPercent), null);
+        assertThat(cache.getMissCount()).isEqualTo(carts.size() + 2);
+        assertThat(cache.getHitCount()).isEqualTo(0);
+        for (List<TestItem> items : carts) {
+            cache.cart(items, null, null);
+        }
+        assertThat(cache.getHitCount()).isEqualTo(carts.size());
+    }
+
+    @Test
+    public void itShouldEvictTheLeastRecentlyUsedCart() {
+        final CartCache cache = new CartCache(2);
+        final List<TestItem> first = items(new TestItem(UUID.randomUUID(), null, 100L, 25f, BigDecimal.ONE, null));
+        final List<TestItem> second = items(new TestItem(UUID.randomUUID(), null, 200L, 25f, BigDecimal.ONE, null));
+        final List<TestItem> third = items(new TestItem(UUID.randomUUID(), null, 300L, 25f, BigDecimal.ONE, null));
+        cache.cart(first, null, null);
+        cache.cart(second, null, null);
+        cache.cart(first, null, null);
+        cache.cart(third, null, null);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        cache.cart(first, null, null);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        cache.cart(second, null, null);
+        assertThat(cache.getMissCount()).isEqualTo(4);
+    }
+
+    private static List<TestItem> items(final TestItem... items) {
+        return Arrays.asList(items);
+    }
+}
@@ -0,0 +1,118 @@
+package com.izettle.cart;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+
+public class CartCalculationTest {
+
+    private static final Float[] VAT_PERCENTAGES = {null, 0f, 6f, 7.7f, 12f, 19.6f, 25f};
+
+    @Test
+    public void itShouldRoundLikeBigDecimal() {
+        final Random random = new Random(4711L);
+        for (int i = 0; i < 100000; i++) {
+            final double value;
+            if (i % 3 == 0) {
+                //exact halves, the interesting case for HALF_UP
+                value = (random.nextInt(2000001) - 1000000) / 2.0d;
+            } else if (i % 3 == 1) {
+                value = (random.nextDouble() - 0.5d) * 1e7;
+            } else {
+                value = Double.longBitsToDouble(random.nextLong());
+            }
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            assertEquals("Rounding " + value, CartUtils.round(value), CartCalculation.roundHalfUp(value));
+        }
+    }
+
+    @Test
+    public void itShouldCalculateTheSameItemLinesAsTheReferenceImplementation() {
+        final Random random = new Random(42L);
+        for (int run = 0; run < 2000; run++) {
+            final List<TestItem> items = randomItems(random);
+            final List<TestDiscount> discounts = randomDiscounts(random);
+            final CartCalculation calculation = new CartCalculation(items, discounts);
+
+            final long grossValue = CartUtils.getGrossValue(items);
+            final Long cartWideDiscountValue = CartUtils.getTotalCartWideDiscountValue(discounts, grossValue);
+            final List<ItemLine<TestItem, TestDiscount>> expected =
+                CartUtils.buildItemLines(items, grossValue, cartWideDiscountValue);
+            final List<ItemLine<TestItem, TestDiscount>> actual = calculation.buildItemLines(items);
+
+            assertEquals(grossValue, calculation.getGrossValue());
+            assertEquals(cartWideDiscountValue, calculation.getCartWideDiscountValue());
+            assertEquals(
+                CartUtils.getTotalDiscountValue(discounts, grossValue, items),
+                calculation.getDiscountValue()
+            );
+            assertEquals(CartUtils.summarizeGrossVat(expected), calculation.getGrossVat());
+            assertEquals(CartUtils.summarizeEffectiveVat(expected, null), calculation.getActualVat(null));
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).toString(), actual.get(i).toString());
+                assertEquals(expected.get(i).getDiscountValue(), actual.get(i).getDiscountValue());
+            }
+        }
+    }
+
+    static List<TestItem> randomItems(final Random random) {
+        final int size = 1 + random.nextInt(random.nextBoolean() ? 5 : 100);
+        final List<TestItem> items = new ArrayList<TestItem>(size);
+        for (int i = 0; i < size; i++) {
+            //cheap items make equal rounding losses, and thereby ties, likely
+            final long unitPrice = random.nextInt(3) == 0 ? random.nextInt(10) : random.nextInt(100000);
+            final BigDecimal quantity;
+            switch (random.nextInt(4)) {
+                case 0:
+                    quantity = BigDecimal.valueOf(1 + random.nextInt(5));
+                    break;
+                case 1:
+                    quantity = BigDecimal.valueOf(1 + random.nextInt(100000), 3);
+                    break;
+                case 2:
+                    quantity = BigDecimal.valueOf(-1 - random.nextInt(3));
+                    break;
+                default:
+                    quantity = new BigDecimal("0.5");
+                    break;
+            }
+            items.add(new TestItem(
+                UUID.randomUUID(),
+                null,
+                unitPrice,
+                VAT_PERCENTAGES[random.nextInt(VAT_PERCENTAGES.length)],
+                quantity,
+                random.nextInt(4) == 0 ? randomDiscount(random) : null
+            ));
+        }
+        return items;
+    }
+
+    static List<TestDiscount> randomDiscounts(final Random random) {
+        final int size = random.nextInt(4);
+        final List<TestDiscount> discounts = new ArrayList<TestDiscount>(size);
+        for (int i = 0; i < size; i++) {
+            discounts.add(randomDiscount(random));
+        }
+        return discounts;
+    }
+
+    private static TestDiscount randomDiscount(final Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return new TestDiscount((long) random.nextInt(500), null, BigDecimal.ONE);
+            case 1:
+                return new TestDiscount(null, random.nextInt(10000) / 100.0d, BigDecimal.ONE);
+            default:
+                return new TestDiscount(null, 50.0d, new BigDecimal("0.5"));
+        }
+    }
+}
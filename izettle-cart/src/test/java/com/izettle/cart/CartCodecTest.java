@@ -0,0 +1,167 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import com.izettle.cart.exception.CartException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+
+public class CartCodecTest {
+
+    private static final PayloadCodec<TestDiscount> DISCOUNT_CODEC = new PayloadCodec<TestDiscount>() {
+        @Override
+        public void write(final TestDiscount discount, final CartOutput out) {
+            out.writeNullableVarLong(discount.getAmount());
+            out.writeNullableDouble(discount.getPercentage());
+            out.writeBigDecimal(discount.getQuantity());
+        }
+
+        @Override
+        public TestDiscount read(final CartInput in) {
+            return new TestDiscount(in.readNullableVarLong(), in.readNullableDouble(), in.readBigDecimal());
+        }
+    };
+
+    private static final PayloadCodec<TestItem> ITEM_CODEC = new PayloadCodec<TestItem>() {
+        @Override
+        public void write(final TestItem item, final CartOutput out) {
+            final UUID id = (UUID) item.getId();
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+            out.writeString(item.getName());
+            out.writeVarLong(item.getUnitPrice());
+            out.writeVatPercentage(item.getVatPercentage());
+            out.writeBigDecimal(item.getQuantity());
+            out.writeBoolean(item.getDiscount() != null);
+            if (item.getDiscount() != null) {
+                DISCOUNT_CODEC.write(item.getDiscount(), out);
+            }
+        }
+
+        @Override
+        public TestItem read(final CartInput in) {
+            return new TestItem(
+                new UUID(in.readLong(), in.readLong()),
+                in.readString(),
+                in.readVarLong(),
+                in.readVatPercentage(),
+                in.readBigDecimal(),
+                in.readBoolean() ? DISCOUNT_CODEC.read(in) : null
+            );
+        }
+    };
+
+    private static final PayloadCodec<TestServiceCharge> SERVICE_CHARGE_CODEC = new PayloadCodec<TestServiceCharge>() {
+        @Override
+        public void write(final TestServiceCharge serviceCharge, final CartOutput out) {
+            out.writeVatPercentage(serviceCharge.getVatPercentage());
+            out.writeNullableVarLong(serviceCharge.getAmount());
+            out.writeNullableDouble(serviceCharge.getPercentage());
+            out.writeBigDecimal(serviceCharge.getQuantity());
+        }
+
+        @Override
+        public TestServiceCharge read(final CartInput in) {
+            return new TestServiceCharge(
+                in.readVatPercentage(),
+                in.readNullableVarLong(),
+                in.readNullableDouble(),
+                in.readBigDecimal()
+            );
+        }
+    };
+
+    private final CartCodec<TestItem, TestDiscount, TestDiscount, TestServiceCharge> codec =
+        new CartCodec<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(
+            ITEM_CODEC,
+            DISCOUNT_CODEC,
+            SERVICE_CHARGE_CODEC
+        );
+
+    @Test
+    public void itShouldDecodeTheEncodedCart() {
+        final Random random = new Random(38L);
+        for (int run = 0; run < 500; run++) {
+            final TestServiceCharge serviceCharge =
+                random.nextBoolean() ? new TestServiceCharge(6f, 100L, 10d, BigDecimal.ONE) : null;
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(
+                    CartCalculationTest.randomItems(random),
+                    CartCalculationTest.randomDiscounts(random),
+                    serviceCharge
+                );
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> decoded =
+                codec.decode(codec.encode(cart));
+            assertEquals(cart.toString(), decoded.toString());
+            assertEquals(cart.getServiceChargeValue(), decoded.getServiceChargeValue());
+            assertEquals(cart.getCartWideDiscountValue(), decoded.getCartWideDiscountValue());
+            assertEquals(cart.groupValuesByVatPercentage().toString(), decoded.groupValuesByVatPercentage().toString());
+            assertEquals(cart.inverse().toString(), decoded.inverse().toString());
+        }
+    }
+
+    @Test
+    public void itShouldReadSeveralCartsFromOneBuffer() {
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> first = cart(-2L);
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> second = cart(3L);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        codec.encode(first, buffer);
+        codec.encode(second, buffer);
+        buffer.flip();
+        assertEquals(first.toString(), codec.decode(buffer).toString());
+        assertEquals(second.toString(), codec.decode(buffer).toString());
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void itShouldEncodeCompactly() {
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = cart(2L);
+        final byte[] encoded = codec.encode(cart);
+        //the id of the item and the double percentages of the discount take half of it
+        assertThat(encoded.length).isLessThan(90);
+    }
+
+    @Test(expected = CartException.class)
+    public void itShouldRejectLaterSchemaVersions() {
+        final byte[] encoded = codec.encode(cart(1L));
+        encoded[0] = CartCodec.SCHEMA_VERSION + 1;
+        codec.decode(encoded);
+    }
+
+    @Test(expected = CartException.class)
+    public void itShouldRejectTruncatedData() {
+        final byte[] encoded = codec.encode(cart(1L));
+        codec.decode(Arrays.copyOf(encoded, encoded.length - 3));
+    }
+
+    @Test
+    public void itShouldWriteVariableLengthIntegers() {
+        final CartOutput out = new CartOutput();
+        final long[] values = {0L, 1L, -1L, 63L, -64L, 64L, 1000000L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            out.writeVarLong(value);
+        }
+        out.writeBigDecimal(new BigDecimal("123456789012345678901234567890.123"));
+        final CartInput in = new CartInput(ByteBuffer.wrap(out.toByteArray()));
+        for (long value : values) {
+            assertThat(in.readVarLong()).isEqualTo(value);
+        }
+        assertThat(in.readBigDecimal()).isEqualTo(new BigDecimal("123456789012345678901234567890.123"));
+        assertThat(new CartOutput().writeVarLong(-64L).size()).isEqualTo(1);
+    }
+
+    private static Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart(final long quantity) {
+        final List<TestItem> items = new ArrayList<TestItem>();
+        items.add(new TestItem(UUID.randomUUID(), 1000L, 25f, BigDecimal.valueOf(quantity)));
+        final List<TestDiscount> discounts = new ArrayList<TestDiscount>();
+        discounts.add(new TestDiscount(null, 10d, BigDecimal.ONE));
+        return new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, null);
+    }
+}
@@ -0,0 +1,109 @@
+package com.izettle.cart;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks the optimized calculations of carts against {@link ReferenceCart} on randomized carts: mixed VAT percentages,
+ * fractional and negative quantities, percentage and amount discounts on items and carts, service charges and several
+ * alterations in a row. New calculation paths should be added here.
+ */
+public class CartEquivalenceTest {
+
+    private static final int RUNS = 1000;
+
+    @Test
+    public void itShouldCalculateTheSameValuesAsTheReference() {
+        final Random random = new Random(40L);
+        for (int run = 0; run < RUNS; run++) {
+            final List<TestItem> items = CartCalculationTest.randomItems(random);
+            final List<TestDiscount> discounts = CartCalculationTest.randomDiscounts(random);
+            final TestServiceCharge serviceCharge = randomServiceCharge(random);
+            final ReferenceCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> reference =
+                new ReferenceCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(
+                    items,
+                    discounts,
+                    serviceCharge
+                );
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge);
+            reference.assertSameValues(cart);
+            reference.inverse().assertSameValues(cart.inverse());
+
+            // the lines asked for before the totals
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> linesFirst =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge);
+            linesFirst.getItemLines();
+            linesFirst.getDiscountLines();
+            reference.assertSameValues(linesFirst);
+
+            final CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge> builder =
+                new CartBuilder<TestItem, TestDiscount, TestDiscount, TestServiceCharge>();
+            for (TestItem item : items) {
+                builder.addItem(item);
+            }
+            for (TestDiscount discount : discounts) {
+                builder.addDiscount(discount);
+            }
+            builder.setServiceCharge(serviceCharge);
+            reference.assertSameValues(builder.build());
+        }
+    }
+
+    @Test
+    public void itShouldAlterCartsLikeTheReference() {
+        final Random random = new Random(4040L);
+        for (int run = 0; run < RUNS; run++) {
+            final List<TestItem> items = CartCalculationTest.randomItems(random);
+            final List<TestDiscount> discounts = CartCalculationTest.randomDiscounts(random);
+            final TestServiceCharge serviceCharge = randomServiceCharge(random);
+            final ReferenceCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> reference =
+                new ReferenceCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(
+                    items,
+                    discounts,
+                    serviceCharge
+                );
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge);
+            final AlterationLedger<TestItem, TestDiscount, TestDiscount, TestServiceCharge> ledger =
+                AlterationLedger.of(cart);
+            final List<Map<Object, BigDecimal>> previousAlterations = new ArrayList<Map<Object, BigDecimal>>();
+            for (int step = 0; step < 5; step++) {
+                final Map<Object, BigDecimal> alteration =
+                    AlterationLedgerTest.randomAlteration(random, cart.getRemainingItems(previousAlterations));
+                if (alteration.isEmpty()) {
+                    break;
+                }
+                final ReferenceCart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount,
+                    AlteredCartServiceCharge> before =
+                    reference.alter(AlterationUtils.mergeAlterations(previousAlterations));
+                final ReferenceCart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount,
+                    AlteredCartServiceCharge> after = before.alter(alteration);
+                ReferenceCart.assertSameAlteration(
+                    before,
+                    after,
+                    cart.createAlterationCart(previousAlterations, alteration)
+                );
+                ReferenceCart.assertSameAlteration(before, after, ledger.apply(alteration));
+                previousAlterations.add(alteration);
+            }
+        }
+    }
+
+    private static TestServiceCharge randomServiceCharge(final Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return new TestServiceCharge(12f, 100L + random.nextInt(1000), null, BigDecimal.ONE);
+            case 1:
+                return new TestServiceCharge(6f, null, random.nextInt(2000) / 100.0d, BigDecimal.ONE);
+            case 2:
+                return new TestServiceCharge(null, 50L, 5d, BigDecimal.ONE);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.UUID;
+import org.junit.Test;
+
+public class CartSummaryTest {
+
+    private static final int CARTS = 500;
+
+    @Test
+    public void itShouldSumTheCarts() {
+        final Random random = new Random(43L);
+        final CartSummary summary = new CartSummary();
+        long value = 0;
+        long grossValue = 0;
+        long actualVat = 0;
+        long serviceChargeValue = 0;
+        int numberOfDiscounts = 0;
+        final Map<Float, Long> vatPerGroup = new HashMap<Float, Long>();
+        for (int i = 0; i < CARTS; i++) {
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = randomCart(random);
+            summary.add(cart);
+            value += cart.getValue();
+            grossValue += cart.getGrossValue();
+            actualVat += CartUtils.coalesce(cart.getActualVat(), 0L);
+            serviceChargeValue += CartUtils.coalesce(cart.getServiceChargeValue(), 0L);
+            numberOfDiscounts += cart.getNumberOfDiscounts();
+            for (VatGroupValues group : cart.groupValuesByVatPercentage().values()) {
+                final Long sum = vatPerGroup.get(group.getVatPercentage());
+                vatPerGroup.put(group.getVatPercentage(), CartUtils.coalesce(sum, 0L) + group.getActualVatValue());
+            }
+        }
+        assertThat(summary.getNumberOfCarts()).isEqualTo(CARTS);
+        assertThat(summary.getValue()).isEqualTo(value);
+        assertThat(summary.getGrossValue()).isEqualTo(grossValue);
+        assertThat(summary.getActualVat()).isEqualTo(actualVat);
+        assertThat(summary.getServiceChargeValue()).isEqualTo(serviceChargeValue);
+        assertThat(summary.getNumberOfDiscounts()).isEqualTo(numberOfDiscounts);
+        assertThat(summary.groupValuesByVatPercentage().keySet()).isEqualTo(vatPerGroup.keySet());
+        for (VatGroupValues group : summary.groupValuesByVatPercentage().values()) {
+            assertEquals(vatPerGroup.get(group.getVatPercentage()).longValue(), group.getActualVatValue());
+        }
+    }
+
+    @Test
+    public void itShouldSumTotalsLikeCarts() {
+        final Random random = new Random(44L);
+        final CartSummary fromCarts = new CartSummary();
+        final CartSummary fromTotals = new CartSummary();
+        for (int i = 0; i < CARTS; i++) {
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = randomCart(random);
+            fromCarts.add(cart);
+            fromTotals.add(CartTotals.of(cart.getItems(), cart.getDiscounts(), cart.getServiceChargeLine() == null
+                ? null
+                : cart.getServiceChargeLine().getServiceCharge()));
+        }
+        assertEquals(fromCarts.toString(), fromTotals.toString());
+        assertEquals(fromCarts.getCartWideDiscountValue(), fromTotals.getCartWideDiscountValue());
+        assertEquals(fromCarts.getGrossVat(), fromTotals.getGrossVat());
+    }
+
+    @Test
+    public void itShouldMergeShardsInAnyOrder() {
+        final Random random = new Random(45L);
+        final List<Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>> carts =
+            new ArrayList<Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>>();
+        final CartSummary whole = new CartSummary();
+        for (int i = 0; i < CARTS; i++) {
+            carts.add(randomCart(random));
+            whole.add(carts.get(i));
+        }
+        final List<CartSummary> shards = new ArrayList<CartSummary>();
+        for (int i = 0; i < 7; i++) {
+            shards.add(new CartSummary());
+        }
+        for (int i = 0; i < carts.size(); i++) {
+            shards.get(random.nextInt(shards.size())).add(carts.get(i));
+        }
+        Collections.shuffle(shards, random);
+        final CartSummary merged = new CartSummary();
+        // (a + b) + (c + ...) in a different grouping than the whole
+        merged.merge(shards.get(0).merge(shards.get(1)));
+        final CartSummary rest = new CartSummary();
+        for (int i = 2; i < shards.size(); i++) {
+            rest.merge(shards.get(i));
+        }
+        merged.merge(rest);
+        assertEquals(whole.toString(), merged.toString());
+        assertEquals(whole.getNumberOfDiscounts(), merged.getNumberOfDiscounts());
+    }
+
+    @Test
+    public void itShouldCancelInversedCarts() {
+        final Random random = new Random(46L);
+        final CartSummary summary = new CartSummary();
+        for (int i = 0; i < CARTS; i++) {
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = randomCart(random);
+            summary.add(cart).add(cart.inverse());
+        }
+        assertThat(summary.getNumberOfCarts()).isEqualTo(2 * CARTS);
+        assertThat(summary.getValue()).isEqualTo(0);
+        assertThat(summary.getGrossValue()).isEqualTo(0);
+        assertThat(summary.getDiscountValue()).isEqualTo(0);
+        assertThat(summary.getServiceChargeValue()).isEqualTo(0);
+        assertThat(summary.getActualVat()).isEqualTo(0);
+        assertThat(summary.getGrossVat()).isEqualTo(0);
+        for (VatGroupValues group : summary.groupValuesByVatPercentage().values()) {
+            assertThat(group.getActualVatValue()).isEqualTo(0);
+            assertThat(group.getActualValue()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void itShouldSumTheDifferenceOfAlterations() {
+        final Random random = new Random(47L);
+        final List<Map<Object, BigDecimal>> noAlterations = Collections.emptyList();
+        for (int i = 0; i < CARTS; i++) {
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = randomCart(random);
+            final Map<Object, BigDecimal> partialReturn = new HashMap<Object, BigDecimal>();
+            final Map<Object, BigDecimal> fullReturn = new HashMap<Object, BigDecimal>();
+            for (Map.Entry<Object, BigDecimal> remaining : cart.getRemainingItems(noAlterations).entrySet()) {
+                if (random.nextBoolean()) {
+                    partialReturn.put(remaining.getKey(), remaining.getValue().negate());
+                }
+                fullReturn.put(remaining.getKey(), remaining.getValue().negate());
+            }
+            final AlterationCart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> alteration =
+                cart.createAlterationCart(noAlterations, partialReturn);
+            final CartSummary summary = new CartSummary().add(alteration);
+            assertThat(summary.getNumberOfCarts()).isEqualTo(1);
+            assertThat(summary.getValue()).isEqualTo(alteration.getValue());
+            assertThat(summary.getActualVat()).isEqualTo(CartUtils.coalesce(alteration.getActualVat(), 0L));
+            // the sale and its alteration sum up to the cart after the alteration
+            assertSameValues(
+                new CartSummary().add(alteration.getResultingCart()),
+                summary.merge(new CartSummary().add(cart))
+            );
+
+            final CartSummary sale = new CartSummary()
+                .add(cart)
+                .add(cart.createAlterationCart(noAlterations, fullReturn));
+            assertThat(sale.getValue()).isEqualTo(0);
+            assertThat(sale.getActualVat()).isEqualTo(0);
+            for (VatGroupValues group : sale.groupValuesByVatPercentage().values()) {
+                assertThat(group.getActualVatValue()).isEqualTo(0);
+                assertThat(group.getActualValue()).isEqualTo(0);
+            }
+        }
+    }
+
+    @Test
+    public void itShouldSumTheValuesPerDiscount() {
+        final Random random = new Random(48L);
+        final TestDiscount itemDiscount = new TestDiscount(null, 20d, BigDecimal.ONE);
+        final TestDiscount tenPercent = new TestDiscount(null, 10d, BigDecimal.ONE);
+        final TestDiscount fiftyOff = new TestDiscount(50L, null, BigDecimal.ONE);
+        final CartSummary summary = new CartSummary();
+        final CartSummary firstHalf = new CartSummary();
+        final CartSummary secondHalf = new CartSummary();
+        final Map<Object, Long> expected = new HashMap<Object, Long>();
+        for (int i = 0; i < CARTS; i++) {
+            final int size = 1 + random.nextInt(5);
+            final List<TestItem> items = new ArrayList<TestItem>(size);
+            for (int j = 0; j < size; j++) {
+                items.add(new TestItem(
+                    UUID.randomUUID(),
+                    "item",
+                    1 + random.nextInt(10000),
+                    25f,
+                    BigDecimal.valueOf(1 + random.nextInt(3)),
+                    random.nextBoolean() ? itemDiscount : null
+                ));
+            }
+            final List<TestDiscount> discounts = new ArrayList<TestDiscount>();
+            if (random.nextBoolean()) {
+                discounts.add(tenPercent);
+            }
+            if (random.nextBoolean()) {
+                discounts.add(fiftyOff);
+            }
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, null);
+            summary.add(cart);
+            (i % 2 == 0 ? firstHalf : secondHalf).add(cart);
+            for (ItemLine<TestItem, TestDiscount> itemLine : cart.getItemLines()) {
+                if (itemLine.getItem().getDiscount() != null) {
+                    addTo(expected, itemDiscount, itemLine.getDiscountValue());
+                }
+            }
+            for (DiscountLine<TestDiscount> discountLine : cart.getDiscountLines()) {
+                addTo(expected, discountLine.getDiscount(), discountLine.getValue());
+            }
+        }
+        assertEquals(expected, summary.getDiscountValuesByDiscount());
+        assertEquals(expected, secondHalf.merge(firstHalf).getDiscountValuesByDiscount());
+        long sum = 0;
+        for (Long value : summary.getDiscountValuesByDiscount().values()) {
+            sum += value;
+        }
+        assertEquals(summary.getDiscountValue(), sum);
+    }
+
+    private static void addTo(final Map<Object, Long> sums, final Object discount, final Long value) {
+        sums.put(discount, CartUtils.coalesce(sums.get(discount), 0L) + CartUtils.coalesce(value, 0L));
+    }
+
+    /**
+     * Compares the values of two summaries, with a VAT group that is missing in one of them as one of zero values.
+     */
+    private static void assertSameValues(final CartSummary expected, final CartSummary actual) {
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getGrossValue(), actual.getGrossValue());
+        assertEquals(expected.getDiscountValue(), actual.getDiscountValue());
+        assertEquals(expected.getServiceChargeValue(), actual.getServiceChargeValue());
+        assertEquals(expected.getActualVat(), actual.getActualVat());
+        assertEquals(expected.getGrossVat(), actual.getGrossVat());
+        final SortedMap<Float, VatGroupValues> expectedGroups = expected.groupValuesByVatPercentage();
+        final SortedMap<Float, VatGroupValues> actualGroups = actual.groupValuesByVatPercentage();
+        final Set<Float> vatPercentages = new HashSet<Float>(expectedGroups.keySet());
+        vatPercentages.addAll(actualGroups.keySet());
+        for (Float vatPercentage : vatPercentages) {
+            final VatGroupValues expectedGroup = expectedGroups.get(vatPercentage);
+            final VatGroupValues actualGroup = actualGroups.get(vatPercentage);
+            assertEquals(
+                expectedGroup == null ? 0L : expectedGroup.getActualVatValue(),
+                actualGroup == null ? 0L : actualGroup.getActualVatValue()
+            );
+            assertEquals(
+                expectedGroup == null ? 0L : expectedGroup.getActualValue(),
+                actualGroup == null ? 0L : actualGroup.getActualValue()
+            );
+        }
+    }
+
+    private static Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> randomCart(final Random random) {
+        final TestServiceCharge serviceCharge = random.nextBoolean()
+            ? null
+            : new TestServiceCharge(12f, null, 10d, BigDecimal.ONE);
+        return new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(
+            CartCalculationTest.randomItems(random),
+            CartCalculationTest.randomDiscounts(random),
+            serviceCharge
+        );
+    }
+}
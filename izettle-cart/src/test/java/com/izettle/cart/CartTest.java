@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import com.izettle.cart.exception.CartException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -116,6 +117,15 @@ public class CartTest {
         assertNull(cart.getActualVat());
     }
 
+    @Test(expected = CartException.class)
+    public void itShouldRefuseAServiceChargeWithoutValue() {
+        List<TestItem> items = new LinkedList<TestItem>();
+        items.add(createItem(1299L, 25f, new BigDecimal("1.0")));
+        // neither amount nor percentage, so the service charge has no value
+        TestServiceCharge serviceCharge = new TestServiceCharge(25f, null, null, BigDecimal.ONE);
+        new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, null, serviceCharge);
+    }
+
     @Test
     public void itShouldHandleFixedDiscounts() {
         List<TestItem> items = new LinkedList<TestItem>();
@@ -641,6 +651,70 @@ public class CartTest {
         new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, null, null);
     }
 
+    @Test
+    public void itShouldNotBeAffectedByLaterChangesToTheGivenLists() {
+        final List<TestItem> items = new ArrayList<TestItem>();
+        items.add(createItem(1000L, 25f, BigDecimal.ONE));
+        final List<TestDiscount> discounts = new ArrayList<TestDiscount>();
+        discounts.add(new TestDiscount(null, 10d, BigDecimal.ONE));
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+            new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, null);
+        items.add(createItem(500L, 12f, BigDecimal.ONE));
+        discounts.clear();
+        assertThat(cart.getItemLines()).hasSize(1);
+        assertThat(cart.getDiscountLines()).hasSize(1);
+        assertThat(cart.getValue()).isEqualTo(900L);
+        assertThat(cart.getActualVat()).isEqualTo(180L);
+    }
+
+    @Test
+    public void itShouldCalculateTheSameValuesWhenReadFromSeveralThreads() throws Exception {
+        final Random random = new Random(39L);
+        for (int run = 0; run < 50; run++) {
+            final List<TestItem> items = CartCalculationTest.randomItems(random);
+            final List<TestDiscount> discounts = CartCalculationTest.randomDiscounts(random);
+            final TestServiceCharge serviceCharge = new TestServiceCharge(6f, null, 10d, BigDecimal.ONE);
+            final String expected =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge)
+                    .toString();
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+                new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, discounts, serviceCharge);
+            final String[] results = new String[4];
+            final Thread[] threads = new Thread[results.length];
+            for (int i = 0; i < threads.length; i++) {
+                final int thread = i;
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        cart.groupValuesByVatPercentage();
+                        results[thread] = cart.toString();
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (String result : results) {
+                assertEquals(expected, result);
+            }
+        }
+    }
+
+    @Test
+    public void itShouldKeepTheValuesGroupedByVatPercentage() {
+        final List<TestItem> items = new ArrayList<TestItem>();
+        items.add(createItem(1000L, 25f, BigDecimal.ONE));
+        items.add(createItem(500L, 12f, BigDecimal.ONE));
+        final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart =
+            new Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge>(items, null, null);
+        final SortedMap<Float, VatGroupValues> groups = cart.groupValuesByVatPercentage();
+        assertThat(groups.keySet()).containsExactly(12f, 25f);
+        assertThat(cart.groupValuesByVatPercentage()).isSameAs(groups);
+        thrown.expect(UnsupportedOperationException.class);
+        groups.clear();
+    }
+
     private TestItem createItem(long unitPrice, Float vatPercentage, BigDecimal quantity, TestDiscount discount) {
         return new TestItem(UUID.randomUUID(), "", unitPrice, vatPercentage, quantity, discount);
     }
@@ -0,0 +1,50 @@
+package com.izettle.cart;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+
+public class FixedPointTest {
+
+    @Test
+    public void itShouldMultiplyLikeBigDecimal() {
+        final Random random = new Random(42L);
+        for (int i = 0; i < 200000; i++) {
+            final BigDecimal decimal;
+            switch (i % 4) {
+                case 0:
+                    decimal = BigDecimal.valueOf(random.nextInt(2001) - 1000);
+                    break;
+                case 1:
+                    //weights, with exact halves after multiplying by even prices
+                    decimal = BigDecimal.valueOf(random.nextInt(200001) - 100000, 3);
+                    break;
+                case 2:
+                    decimal = BigDecimal.valueOf(random.nextLong() >> random.nextInt(64), random.nextInt(25) - 3);
+                    break;
+                default:
+                    decimal = new BigDecimal(new BigInteger(80, random), random.nextInt(22));
+                    break;
+            }
+            final long factor = i % 3 == 0 ? random.nextLong() >> random.nextInt(64) : random.nextInt(200000) - 100000;
+            assertEquals(
+                decimal + " * " + factor,
+                CartUtils.round(decimal.multiply(BigDecimal.valueOf(factor))),
+                FixedPoint.multiplyRounded(decimal, factor)
+            );
+        }
+    }
+
+    @Test
+    public void itShouldRoundHalvesAwayFromZero() {
+        assertEquals(3L, FixedPoint.multiplyRounded(new BigDecimal("0.5"), 5L));
+        assertEquals(-3L, FixedPoint.multiplyRounded(new BigDecimal("0.5"), -5L));
+        assertEquals(-3L, FixedPoint.multiplyRounded(new BigDecimal("-0.500"), 5L));
+        assertEquals(2L, FixedPoint.multiplyRounded(new BigDecimal("0.499"), 5L));
+        assertEquals(Long.MIN_VALUE, FixedPoint.multiplyRounded(BigDecimal.ONE, Long.MIN_VALUE));
+        assertEquals(0L, FixedPoint.multiplyRounded(new BigDecimal("0.000"), Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,58 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+
+public class ItemIndexTest {
+
+    @Test
+    public void itShouldGiveTheSameRemainingQuantitiesAsTheAlteredCart() {
+        final Random random = new Random(49L);
+        for (int run = 0; run < 1000; run++) {
+            final Cart<TestItem, TestDiscount, TestDiscount, TestServiceCharge> cart = new Cart<TestItem,
+                TestDiscount, TestDiscount, TestServiceCharge>(CartCalculationTest.randomItems(random), null, null);
+            final Map<Object, BigDecimal> mergedAlterations = new HashMap<Object, BigDecimal>();
+            for (TestItem item : cart.getItems()) {
+                if (item.getQuantity().signum() > 0 && random.nextBoolean()) {
+                    // all of it, or part of it, in quantities of other scales than the item's
+                    final BigDecimal returned = random.nextBoolean()
+                        ? item.getQuantity().setScale(item.getQuantity().scale() + 2)
+                        : item.getQuantity().divide(BigDecimal.valueOf(4L));
+                    mergedAlterations.put(item.getId(), returned.negate());
+                }
+            }
+            if (mergedAlterations.isEmpty()) {
+                continue;
+            }
+            assertEquals(
+                cart.getRemainingItems(cart.applyAlteration(mergedAlterations)),
+                cart.getItemIndex().getRemainingQuantities(mergedAlterations)
+            );
+        }
+    }
+
+    @Test
+    public void itShouldSumTheQuantitiesOfItemsWithTheSameId() {
+        final Object id = UUID.randomUUID();
+        final Object otherId = UUID.randomUUID();
+        final List<TestItem> items = new ArrayList<TestItem>();
+        items.add(new TestItem(id, null, 100L, 25f, BigDecimal.ONE, null));
+        items.add(new TestItem(otherId, null, 100L, 25f, new BigDecimal("0.5"), null));
+        assertThat(ItemIndex.of(items).hasDuplicateIds()).isFalse();
+        items.add(new TestItem(id, null, 200L, 25f, new BigDecimal("2.5"), null));
+        final ItemIndex index = ItemIndex.of(items);
+        assertThat(index.hasDuplicateIds()).isTrue();
+        assertThat(index.getQuantity(id)).isEqualTo(new BigDecimal("3.5"));
+        assertThat(index.getQuantity(otherId)).isEqualTo(new BigDecimal("0.5"));
+        assertThat(index.getQuantity(UUID.randomUUID())).isNull();
+    }
+}
@@ -0,0 +1,98 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class LargestRemainderTest {
+
+    @Test
+    public void itShouldOrderLossesStablyInBothDirections() {
+        final double[] losses = {0.5d, -0.5d, 0.0d, 0.5d, -0.0d, 0.25d, -0.5d};
+        assertThat(LargestRemainder.byRoundingLoss(losses, true)).containsExactly(0, 3, 5, 2, 4, 1, 6);
+        assertThat(LargestRemainder.byRoundingLoss(losses, false)).containsExactly(1, 6, 4, 2, 5, 0, 3);
+    }
+
+    @Test
+    public void itShouldTreatEqualDecimalsAsTies() {
+        final BigDecimal[] losses = {new BigDecimal("0.2"), new BigDecimal("0.50"), new BigDecimal("0.5")};
+        final long[] amounts = {1L, 1L, 1L};
+        LargestRemainder.distribute(amounts, losses, 1L);
+        assertThat(amounts).containsExactly(1L, 2L, 1L);
+    }
+
+    @Test
+    public void itShouldDistributeLikeOneUnitAtATime() {
+        final Random random = new Random(17L);
+        for (int run = 0; run < 20000; run++) {
+            final int size = 1 + random.nextInt(12);
+            final BigDecimal[] losses = new BigDecimal[size];
+            final long[] amounts = new long[size];
+            for (int i = 0; i < size; i++) {
+                //few distinct losses, including both ends of the range, to get plenty of ties
+                losses[i] = BigDecimal.valueOf(random.nextInt(11) - 5, 1);
+                amounts[i] = random.nextInt(100);
+            }
+            //remainders larger than the number of shares go round the shares more than once
+            final long remainder = random.nextInt(6 * size + 1) - 3 * size;
+            final long[] expected = distributeOneUnitAtATime(amounts, losses, remainder);
+            final long[] actual = Arrays.copyOf(amounts, size);
+            LargestRemainder.distribute(actual, losses, remainder);
+            assertEquals(
+                "Losses " + Arrays.toString(losses) + ", remainder " + remainder,
+                Arrays.toString(expected),
+                Arrays.toString(actual)
+            );
+        }
+    }
+
+    /**
+     * The procedure the cart used before, kept here to verify against.
+     */
+    private static long[] distributeOneUnitAtATime(
+        final long[] roundedAmounts,
+        final BigDecimal[] roundingLosses,
+        final long remainder
+    ) {
+        final long[] amounts = Arrays.copyOf(roundedAmounts, roundedAmounts.length);
+        final BigDecimal[] losses = Arrays.copyOf(roundingLosses, roundingLosses.length);
+        final NavigableMap<BigDecimal, Queue<Integer>> idxByRoundingLoss = new TreeMap<BigDecimal, Queue<Integer>>();
+        for (int idx = 0; idx < losses.length; idx++) {
+            enqueue(idxByRoundingLoss, losses[idx], idx);
+        }
+        long remaining = remainder;
+        while (remaining != 0) {
+            final boolean reclaiming = remaining < 0;
+            final BigDecimal oldRoundingLoss = reclaiming ? idxByRoundingLoss.firstKey() : idxByRoundingLoss.lastKey();
+            final Queue<Integer> idxs = idxByRoundingLoss.remove(oldRoundingLoss);
+            final int idx = idxs.poll();
+            if (!idxs.isEmpty()) {
+                idxByRoundingLoss.put(oldRoundingLoss, idxs);
+            }
+            amounts[idx] += reclaiming ? -1L : 1L;
+            remaining += reclaiming ? 1L : -1L;
+            losses[idx] = losses[idx].add(BigDecimal.valueOf(reclaiming ? 1L : -1L));
+            enqueue(idxByRoundingLoss, losses[idx], idx);
+        }
+        return amounts;
+    }
+
+    private static void enqueue(
+        final NavigableMap<BigDecimal, Queue<Integer>> idxByRoundingLoss,
+        final BigDecimal roundingLoss,
+        final int idx
+    ) {
+        if (!idxByRoundingLoss.containsKey(roundingLoss)) {
+            idxByRoundingLoss.put(roundingLoss, new LinkedList<Integer>());
+        }
+        idxByRoundingLoss.get(roundingLoss).add(idx);
+    }
+}
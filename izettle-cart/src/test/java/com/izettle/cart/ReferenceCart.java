@@ -0,0 +1,227 @@
+package com.izettle.cart;
+
+import static com.izettle.cart.CartUtils.coalesce;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * A cart calculated the way {@link Cart} originally was, eagerly and only with the reference implementation in
+ * {@link CartUtils}, and altered the same way. Used as the oracle of the randomized equivalence tests: whatever path a
+ * cart takes to its values, {@link #assertSameValues} checks that they are exactly the ones calculated here.
+ */
+final class ReferenceCart<T extends Item<T, D>, D extends Discount<D>, K extends Discount<K>,
+    S extends ServiceCharge<S>> {
+
+    private final List<T> items;
+    private final List<K> discounts;
+    private final S serviceCharge;
+    private final long grossValue;
+    private final Long discountValue;
+    private final Double actualDiscountPercentage;
+    private final Long cartWideDiscountValue;
+    private final List<DiscountLine<K>> discountLines;
+    private final List<ItemLine<T, D>> itemLines;
+    private final ServiceChargeLine<S> serviceChargeLine;
+    private final Long serviceChargeValue;
+    private final Long grossVat;
+    private final Long actualVat;
+
+    ReferenceCart(final List<T> items, final List<K> discounts, final S serviceCharge) {
+        this.items = coalesce(items, Collections.<T>emptyList());
+        this.discounts = coalesce(discounts, Collections.<K>emptyList());
+        this.serviceCharge = serviceCharge;
+        grossValue = CartUtils.getGrossValue(this.items);
+        discountValue = CartUtils.getTotalDiscountValue(this.discounts, grossValue, this.items);
+        actualDiscountPercentage = CartUtils.getDiscountPercentage(grossValue, discountValue);
+        cartWideDiscountValue = CartUtils.getTotalCartWideDiscountValue(this.discounts, grossValue);
+        discountLines = CartUtils.buildDiscountLines(this.discounts, grossValue, cartWideDiscountValue);
+        itemLines = CartUtils.buildItemLines(this.items, grossValue, cartWideDiscountValue);
+        serviceChargeLine = CartUtils.buildServiceChargeLine(grossValue, cartWideDiscountValue, serviceCharge);
+        serviceChargeValue = CartUtils.getServiceChargeValue(grossValue, cartWideDiscountValue, serviceCharge);
+        grossVat = CartUtils.summarizeGrossVat(itemLines);
+        actualVat = CartUtils.summarizeEffectiveVat(itemLines, serviceChargeLine);
+    }
+
+    long getValue() {
+        return grossValue - coalesce(cartWideDiscountValue, 0L) + coalesce(serviceChargeValue, 0L);
+    }
+
+    Long getActualVat() {
+        return actualVat;
+    }
+
+    SortedMap<Float, VatGroupValues> groupValuesByVatPercentage() {
+        return CartUtils.groupValuesByVatPercentage(itemLines, serviceChargeLine);
+    }
+
+    ReferenceCart<T, D, K, S> inverse() {
+        final List<T> inverseItems = new ArrayList<T>(items.size());
+        for (T item : items) {
+            inverseItems.add(item.inverse());
+        }
+        final List<K> inverseDiscounts = new ArrayList<K>(discounts.size());
+        for (K discount : discounts) {
+            inverseDiscounts.add(discount.inverse());
+        }
+        return new ReferenceCart<T, D, K, S>(
+            inverseItems,
+            inverseDiscounts,
+            serviceCharge == null ? null : serviceCharge.inverse()
+        );
+    }
+
+    /**
+     * The cart after altering the quantities of its items, scaling the quantities of amount based item discounts by the
+     * change of the item's quantity, and of the cart wide discounts and service charge by the change of the gross
+     * value.
+     * @param alteration the quantity change per item id, which must be valid for this cart
+     * @return the altered cart
+     */
+    ReferenceCart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge> alter(
+        final Map<Object, BigDecimal> alteration
+    ) {
+        final MathContext mathContext = new MathContext(20, CartUtils.ROUNDING_MODE);
+        final List<AlteredCartItem> remainingItems = new ArrayList<AlteredCartItem>();
+        for (T item : items) {
+            AlteredCartItem newItem = AlteredCartItem.from(item);
+            final BigDecimal quantityChange = alteration.get(item.getId());
+            if (quantityChange != null) {
+                final BigDecimal newQuantity = item.getQuantity().add(quantityChange);
+                newItem = newItem.withQuantity(newQuantity);
+                if (item.getDiscount() != null && item.getDiscount().getAmount() != null) {
+                    final BigDecimal ratio = newQuantity.divide(item.getQuantity(), mathContext);
+                    newItem = newItem.withDiscount(
+                        AlteredCartDiscount
+                            .from(item.getDiscount())
+                            .withQuantity(item.getDiscount().getQuantity().multiply(ratio))
+                    );
+                }
+            }
+            if (newItem.getQuantity().signum() != 0) {
+                remainingItems.add(newItem);
+            }
+        }
+        final List<AlteredCartDiscount> remainingDiscounts = new ArrayList<AlteredCartDiscount>();
+        final AlteredCartServiceCharge remainingServiceCharge;
+        if (grossValue != 0) {
+            final BigDecimal grossValueRatio = BigDecimal.valueOf(CartUtils.getGrossValue(remainingItems))
+                .divide(BigDecimal.valueOf(grossValue), mathContext);
+            for (K discount : discounts) {
+                final BigDecimal newQuantity = discount.getQuantity().multiply(grossValueRatio);
+                if (newQuantity.signum() != 0) {
+                    remainingDiscounts.add(AlteredCartDiscount.from(discount).withQuantity(newQuantity));
+                }
+            }
+            remainingServiceCharge = serviceCharge == null
+                ? null
+                : AlteredCartServiceCharge.from(serviceCharge)
+                    .withQuantity(serviceCharge.getQuantity().multiply(grossValueRatio));
+        } else {
+            for (K discount : discounts) {
+                remainingDiscounts.add(AlteredCartDiscount.from(discount));
+            }
+            remainingServiceCharge = serviceCharge == null ? null : AlteredCartServiceCharge.from(serviceCharge);
+        }
+        return new ReferenceCart<AlteredCartItem, AlteredCartDiscount, AlteredCartDiscount, AlteredCartServiceCharge>(
+            remainingItems,
+            remainingDiscounts,
+            remainingServiceCharge
+        );
+    }
+
+    /**
+     * @param cart a cart of the same items, discounts and service charge
+     */
+    void assertSameValues(final Cart<T, D, K, S> cart) {
+        // totals first, as a cart only asked for its totals may take another path than one asked for its lines
+        assertEquals(getValue(), cart.getValue());
+        assertEquals(grossValue, cart.getGrossValue());
+        assertEquals(cartWideDiscountValue, cart.getCartWideDiscountValue());
+        assertEquals(serviceChargeValue, cart.getServiceChargeValue());
+        assertEquals(discountValue, cart.getDiscountValue());
+        assertEquals(actualDiscountPercentage, cart.getActualDiscountPercentage());
+        assertEquals(grossVat, cart.getGrossVat());
+        assertEquals(actualVat, cart.getActualVat());
+        assertEquals(discounts.size() + itemDiscounts(), cart.getNumberOfDiscounts());
+        assertSameGroups(groupValuesByVatPercentage(), cart.groupValuesByVatPercentage());
+
+        assertEquals(itemLines.size(), cart.getItemLines().size());
+        for (int i = 0; i < itemLines.size(); i++) {
+            final ItemLine<T, D> expected = itemLines.get(i);
+            final ItemLine<T, D> actual = cart.getItemLines().get(i);
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(expected.getDiscountValue(), actual.getDiscountValue());
+        }
+        assertEquals(discountLines.size(), cart.getDiscountLines().size());
+        for (int i = 0; i < discountLines.size(); i++) {
+            assertEquals(discountLines.get(i).toString(), cart.getDiscountLines().get(i).toString());
+        }
+        if (serviceChargeLine == null) {
+            assertEquals(null, cart.getServiceChargeLine());
+        } else {
+            assertEquals(serviceChargeLine.getValue(), cart.getServiceChargeLine().getValue());
+            assertEquals(serviceChargeLine.getVat(), cart.getServiceChargeLine().getVat());
+        }
+    }
+
+    /**
+     * @param before the cart before the alteration
+     * @param after the cart after the alteration
+     * @param alteration an alteration calculated by the cart
+     */
+    static void assertSameAlteration(
+        final ReferenceCart<?, ?, ?, ?> before,
+        final ReferenceCart<?, ?, ?, ?> after,
+        final AlterationCart<?, ?, ?, ?> alteration
+    ) {
+        assertEquals(after.getValue() - before.getValue(), alteration.getValue());
+        assertEquals(after.grossValue - before.grossValue, alteration.getGrossValue());
+        assertEquals(difference(after.actualVat, before.actualVat), alteration.getActualVat());
+        assertEquals(difference(after.grossVat, before.grossVat), alteration.getGrossVat());
+        assertEquals(difference(after.discountValue, before.discountValue), alteration.getDiscountValue());
+        assertEquals(
+            difference(after.cartWideDiscountValue, before.cartWideDiscountValue),
+            alteration.getCartWideDiscountValue()
+        );
+        assertEquals(
+            difference(after.serviceChargeValue, before.serviceChargeValue),
+            alteration.getServiceChargeValue()
+        );
+    }
+
+    private static Long difference(final Long after, final Long before) {
+        if (after == null && before == null) {
+            return null;
+        }
+        return coalesce(after, 0L) - coalesce(before, 0L);
+    }
+
+    private int itemDiscounts() {
+        int itemDiscounts = 0;
+        for (T item : items) {
+            if (item.getDiscount() != null) {
+                itemDiscounts++;
+            }
+        }
+        return itemDiscounts;
+    }
+
+    private static void assertSameGroups(
+        final SortedMap<Float, VatGroupValues> expected,
+        final SortedMap<Float, VatGroupValues> actual
+    ) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Float, VatGroupValues> entry : expected.entrySet()) {
+            final VatGroupValues group = actual.get(entry.getKey());
+            assertEquals(entry.getValue().getActualVatValue(), group.getActualVatValue());
+            assertEquals(entry.getValue().getActualValue(), group.getActualValue());
+        }
+    }
+}
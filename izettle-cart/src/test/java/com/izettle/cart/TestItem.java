@@ -51,6 +51,10 @@ public class TestItem implements Item<TestItem, TestDiscount> {
         return this.quantity;
     }
 
+    String getName() {
+        return name;
+    }
+
     @Override
     public Object getId() {
         return this.id;
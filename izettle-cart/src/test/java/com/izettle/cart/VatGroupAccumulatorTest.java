@@ -0,0 +1,51 @@
+package com.izettle.cart;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import org.junit.Test;
+
+public class VatGroupAccumulatorTest {
+
+    @Test
+    public void itShouldGroupLikeTheReferenceImplementation() {
+        final Random random = new Random(41L);
+        for (int run = 0; run < 1000; run++) {
+            final List<TestItem> items = CartCalculationTest.randomItems(random);
+            final List<TestDiscount> discounts = CartCalculationTest.randomDiscounts(random);
+            final long grossValue = CartUtils.getGrossValue(items);
+            final Long cartWideDiscountValue = CartUtils.getTotalCartWideDiscountValue(discounts, grossValue);
+            final List<ItemLine<TestItem, TestDiscount>> itemLines =
+                CartUtils.buildItemLines(items, grossValue, cartWideDiscountValue);
+            final ServiceChargeLine<TestServiceCharge> serviceChargeLine = CartUtils.buildServiceChargeLine(
+                grossValue,
+                cartWideDiscountValue,
+                random.nextBoolean() ? new TestServiceCharge(25f, 100L, null, BigDecimal.ONE) : null
+            );
+            assertEquals(
+                CartUtils.groupValuesByVatPercentage(itemLines, serviceChargeLine).toString(),
+                VatGroupAccumulator.group(itemLines, serviceChargeLine).toString()
+            );
+        }
+    }
+
+    @Test
+    public void itShouldKeepPercentagesApartByTheirBits() {
+        final VatGroupAccumulator accumulator = new VatGroupAccumulator();
+        for (int i = 0; i < 10; i++) {
+            accumulator.add(i, i, 10L * i);
+            accumulator.add(i, 1L, 1L);
+        }
+        accumulator.add(-0.0f, 5L, 5L);
+        final SortedMap<Float, VatGroupValues> groups = accumulator.toSortedMap();
+        assertThat(groups).hasSize(11);
+        assertThat(groups.firstKey()).isEqualTo(-0.0f);
+        assertThat(groups.get(0f).getActualVatValue()).isEqualTo(1L);
+        assertThat(groups.get(9f).getActualVatValue()).isEqualTo(10L);
+        assertThat(groups.get(9f).getActualValue()).isEqualTo(91L);
+    }
+}
@@ -0,0 +1,33 @@
+package com.izettle.cryptography.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count, with the GC profiler enabled so that allocation rates are reported
+ * alongside throughput. Any arguments are passed on to JMH, for example a benchmark name pattern.
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (final int threads : THREAD_COUNTS) {
+            new Runner(
+                new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build()
+            ).run();
+        }
+    }
+}
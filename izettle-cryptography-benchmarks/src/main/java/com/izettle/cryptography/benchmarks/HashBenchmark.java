@@ -0,0 +1,78 @@
+package com.izettle.cryptography.benchmarks;
+
+import com.izettle.cryptography.HashMD5;
+import com.izettle.cryptography.Hasher;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing of a few strings, as done for cache keys and identifiers, from 100 bytes to 10 MB in total.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    private static final int PARTS = 4;
+
+    @Param({"100", "10000", "1000000", "10000000"})
+    public int payloadSize;
+
+    private String[] subjects;
+    private int bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        subjects = new String[PARTS];
+        final StringBuilder part = new StringBuilder(payloadSize / PARTS);
+        for (int i = 0; i < payloadSize / PARTS; i++) {
+            // mostly ascii with the occasional multi byte character, like real world identifiers and names
+            part.append(i % 64 == 0 ? 'å' : (char) ('a' + i % 26));
+        }
+        for (int i = 0; i < PARTS; i++) {
+            subjects[i] = i + part.toString();
+            bytes += subjects[i].getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    @Benchmark
+    public String md5(final Throughput throughput) {
+        throughput.bytes += bytes;
+        return HashMD5.digestStringsToB64Hash(subjects);
+    }
+
+    @Benchmark
+    public String sha256(final Throughput throughput) {
+        throughput.bytes += bytes;
+        final Hasher hasher = Hasher.get(Hasher.Algorithm.SHA_256);
+        for (final String subject : subjects) {
+            hasher.update(subject);
+        }
+        return hasher.digestToB64String();
+    }
+
+    @Benchmark
+    public long fnv1a64(final Throughput throughput) {
+        throughput.bytes += bytes;
+        final Hasher hasher = Hasher.get(Hasher.Algorithm.FNV_1A_64);
+        for (final String subject : subjects) {
+            hasher.update(subject);
+        }
+        return hasher.digestToLong();
+    }
+}
@@ -0,0 +1,59 @@
+package com.izettle.cryptography.benchmarks;
+
+import com.izettle.cryptography.CryptographyException;
+import com.izettle.cryptography.KeyRegistry;
+import com.izettle.cryptography.KeyUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting hold of the encryption key: parsing the armored keyring on every call, as
+ * {@link KeyUtil#findPublicKey} does, against looking it up in a {@link KeyRegistry}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyUtilBenchmark {
+
+    @Param({"2048", "4096"})
+    public int keySize;
+
+    private byte[] publicKeyRing;
+    private KeyRegistry registry;
+
+    @Setup(Level.Trial)
+    public void setUp() throws PGPException, IOException, CryptographyException {
+        final TestKeys keys = TestKeys.generate(keySize);
+        publicKeyRing = keys.getPublicKeyRing();
+        registry = KeyRegistry.of(publicKeyRing, null);
+    }
+
+    @Benchmark
+    public PGPPublicKey findPublicKey(final Throughput throughput) throws CryptographyException {
+        throughput.bytes += publicKeyRing.length;
+        return KeyUtil.findPublicKey(new ByteArrayInputStream(publicKeyRing));
+    }
+
+    @Benchmark
+    public PGPPublicKey registryEncryptionKey() {
+        return registry.getEncryptionKey();
+    }
+}
@@ -0,0 +1,94 @@
+package com.izettle.cryptography.benchmarks;
+
+import com.izettle.cryptography.CryptographyException;
+import com.izettle.cryptography.EncryptionProfile;
+import com.izettle.cryptography.KeyRegistry;
+import com.izettle.cryptography.PGP;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encryption and decryption of random (incompressible) payloads, from 100 bytes to 10 MB, with the legacy and the
+ * AES-256 profiles. Decryption is measured against messages encrypted with the profile under test.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PgpBenchmark {
+
+    @Param({"100", "10000", "1000000", "10000000"})
+    public int payloadSize;
+
+    @Param({"2048", "4096"})
+    public int keySize;
+
+    @Param({"LEGACY", "AES_256_BINARY"})
+    public String profileName;
+
+    private PGPPublicKey publicKey;
+    private KeyRegistry registry;
+    private EncryptionProfile profile;
+    private byte[] secretKeyRing;
+    private byte[] payload;
+    private byte[] encrypted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws PGPException, IOException, CryptographyException {
+        final TestKeys keys = TestKeys.generate(keySize);
+        secretKeyRing = keys.getSecretKeyRing();
+        registry = KeyRegistry.of(keys.getPublicKeyRing(), secretKeyRing);
+        publicKey = registry.getEncryptionKey();
+        profile = "LEGACY".equals(profileName) ? EncryptionProfile.LEGACY : EncryptionProfile.AES_256_BINARY;
+        payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        encrypted = PGP.encrypt(payload, profile, publicKey);
+    }
+
+    @Benchmark
+    public byte[] encrypt(final Throughput throughput) throws CryptographyException {
+        throughput.bytes += payload.length;
+        return PGP.encrypt(payload, profile, publicKey);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encryptStreaming(final Throughput throughput) throws CryptographyException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 1024);
+        PGP.encrypt(new ByteArrayInputStream(payload), out, profile, publicKey);
+        throughput.bytes += payload.length;
+        return out;
+    }
+
+    @Benchmark
+    public byte[] decrypt(final Throughput throughput) throws CryptographyException {
+        throughput.bytes += payload.length;
+        return PGP.decrypt(encrypted, new ByteArrayInputStream(secretKeyRing), TestKeys.PASSPHRASE);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream decryptWithRegistry(final Throughput throughput) throws CryptographyException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length);
+        PGP.decrypt(new ByteArrayInputStream(encrypted), out, registry, TestKeys.PASSPHRASE);
+        throughput.bytes += payload.length;
+        return out;
+    }
+}
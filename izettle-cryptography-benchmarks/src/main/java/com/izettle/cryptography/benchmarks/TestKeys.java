@@ -0,0 +1,91 @@
+package com.izettle.cryptography.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Date;
+import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
+import org.bouncycastle.crypto.params.RSAKeyGenerationParameters;
+import org.bouncycastle.openpgp.PGPEncryptedData;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyRingGenerator;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyEncryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.bouncycastle.openpgp.operator.bc.BcPGPKeyPair;
+
+/**
+ * RSA keyrings generated on the fly, so that benchmarks can vary the key size without checking key material in.
+ */
+final class TestKeys {
+
+    static final String PASSPHRASE = "benchmark";
+
+    private final byte[] publicKeyRing;
+    private final byte[] secretKeyRing;
+
+    private TestKeys(final byte[] publicKeyRing, final byte[] secretKeyRing) {
+        this.publicKeyRing = publicKeyRing;
+        this.secretKeyRing = secretKeyRing;
+    }
+
+    /**
+     * Generates a keyring holding an RSA signing master key and an RSA encryption subkey.
+     * @param keySize size of both keys in bits
+     * @return the armored keyrings
+     */
+    static TestKeys generate(final int keySize) throws PGPException, IOException {
+        final RSAKeyPairGenerator generator = new RSAKeyPairGenerator();
+        generator.init(new RSAKeyGenerationParameters(BigInteger.valueOf(0x10001), new SecureRandom(), keySize, 12));
+        final Date now = new Date();
+        final BcPGPKeyPair master = keyPair(generator, PublicKeyAlgorithmTags.RSA_SIGN, now);
+        final BcPGPKeyPair encryption = keyPair(generator, PublicKeyAlgorithmTags.RSA_ENCRYPT, now);
+        final PGPDigestCalculator sha1 = new BcPGPDigestCalculatorProvider().get(HashAlgorithmTags.SHA1);
+        final PGPKeyRingGenerator rings = new PGPKeyRingGenerator(
+            PGPSignature.POSITIVE_CERTIFICATION,
+            master,
+            "benchmark-" + keySize + "@izettle.com",
+            sha1,
+            null,
+            null,
+            new BcPGPContentSignerBuilder(master.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA256),
+            new BcPBESecretKeyEncryptorBuilder(PGPEncryptedData.AES_256, sha1).build(PASSPHRASE.toCharArray())
+        );
+        rings.addSubKey(encryption);
+
+        final ByteArrayOutputStream publicOut = new ByteArrayOutputStream();
+        try (OutputStream armored = new ArmoredOutputStream(publicOut)) {
+            rings.generatePublicKeyRing().encode(armored);
+        }
+        final ByteArrayOutputStream secretOut = new ByteArrayOutputStream();
+        try (OutputStream armored = new ArmoredOutputStream(secretOut)) {
+            rings.generateSecretKeyRing().encode(armored);
+        }
+        return new TestKeys(publicOut.toByteArray(), secretOut.toByteArray());
+    }
+
+    private static BcPGPKeyPair keyPair(
+        final RSAKeyPairGenerator generator,
+        final int algorithm,
+        final Date created
+    ) throws PGPException {
+        final AsymmetricCipherKeyPair pair = generator.generateKeyPair();
+        return new BcPGPKeyPair(algorithm, pair, created);
+    }
+
+    byte[] getPublicKeyRing() {
+        return publicKeyRing.clone();
+    }
+
+    byte[] getSecretKeyRing() {
+        return secretKeyRing.clone();
+    }
+}
@@ -0,0 +1,22 @@
+package com.izettle.cryptography.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary result counting the payload bytes processed, so that JMH reports bytes/s next to ops/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        bytes = 0;
+    }
+}
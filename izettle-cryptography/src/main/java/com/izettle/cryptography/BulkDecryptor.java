@@ -0,0 +1,81 @@
+package com.izettle.cryptography;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
+
+/**
+ * Decrypts large numbers of independent messages in parallel. Extracting a private key from its keyring (which
+ * involves hashing the passphrase) is done once per key id, after which the decryptor is shared by all threads.
+ * Instances are thread safe.
+ */
+public class BulkDecryptor {
+
+    private final ForkJoinPool pool;
+    private final PGPSecretKeyRingCollection keyring;
+    private final String passphrase;
+    private final ConcurrentMap<Long, PublicKeyDataDecryptorFactory> decryptors = new ConcurrentHashMap<>();
+
+    public BulkDecryptor(final PGPSecretKeyRingCollection keyring, final String passphrase) {
+        this(ForkJoinPool.commonPool(), keyring, passphrase);
+    }
+
+    public BulkDecryptor(final ForkJoinPool pool, final PGPSecretKeyRingCollection keyring, final String passphrase) {
+        this.pool = pool;
+        this.keyring = keyring;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Decrypts one message on the calling thread.
+     * @param data the (possibly armored) encrypted message
+     * @return the decrypted message
+     * @throws CryptographyException if decryption fails
+     */
+    public byte[] decrypt(final byte[] data) throws CryptographyException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        PGP.decrypt(new ByteArrayInputStream(data), out, this::findDecryptor);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param messages the encrypted messages
+     * @return the decrypted messages, in the same order as the input
+     * @throws CryptographyException if any of the messages fails to decrypt
+     */
+    public List<byte[]> decryptAll(final Collection<byte[]> messages) throws CryptographyException {
+        return BulkTransformation.transformAll(pool, messages, this::decrypt);
+    }
+
+    /**
+     * @param messages the encrypted messages, consumed before decryption starts
+     * @return the decrypted messages, in the same order as the input
+     * @throws CryptographyException if any of the messages fails to decrypt
+     */
+    public List<byte[]> decryptAll(final Stream<byte[]> messages) throws CryptographyException {
+        return decryptAll(messages.collect(Collectors.toList()));
+    }
+
+    private PublicKeyDataDecryptorFactory findDecryptor(final long keyId) {
+        final PublicKeyDataDecryptorFactory cached = decryptors.get(keyId);
+        if (cached != null) {
+            return cached;
+        }
+        final PGPPrivateKey key = PGP.findSecretKey(keyring, keyId, passphrase);
+        if (key == null) {
+            return null;
+        }
+        final PublicKeyDataDecryptorFactory decryptor = PGP.newDecryptorFactory(key);
+        final PublicKeyDataDecryptorFactory previous = decryptors.putIfAbsent(keyId, decryptor);
+        return previous != null ? previous : decryptor;
+    }
+}
@@ -0,0 +1,64 @@
+package com.izettle.cryptography;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+
+/**
+ * Encrypts large numbers of independent payloads in parallel, for the same recipients and profile. Each worker thread
+ * keeps its own set of PGP generators, which are reused between payloads instead of being rebuilt for every message.
+ * Instances are thread safe.
+ */
+public class BulkEncryptor {
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<PGP.Encryptor> encryptors;
+
+    public BulkEncryptor(final EncryptionProfile profile, final PGPPublicKey... keys) {
+        this(ForkJoinPool.commonPool(), profile, keys);
+    }
+
+    public BulkEncryptor(final ForkJoinPool pool, final EncryptionProfile profile, final PGPPublicKey... keys) {
+        this.pool = pool;
+        this.encryptors = ThreadLocal.withInitial(() -> new PGP.Encryptor(profile, keys));
+    }
+
+    /**
+     * Encrypts one payload on the calling thread, reusing that thread's generators.
+     * @param secret the data to encrypt
+     * @return the encrypted message
+     * @throws CryptographyException if encryption fails
+     */
+    public byte[] encrypt(final byte[] secret) throws CryptographyException {
+        try {
+            return encryptors.get().encrypt(secret);
+        } catch (IOException | PGPException | RuntimeException e) {
+            // the generators might have been left open, start over with a fresh set
+            encryptors.remove();
+            throw new CryptographyException("Failed to encrypt.", e);
+        }
+    }
+
+    /**
+     * @param secrets the payloads to encrypt
+     * @return the encrypted messages, in the same order as the payloads
+     * @throws CryptographyException if any of the payloads fails to encrypt
+     */
+    public List<byte[]> encryptAll(final Collection<byte[]> secrets) throws CryptographyException {
+        return BulkTransformation.transformAll(pool, secrets, this::encrypt);
+    }
+
+    /**
+     * @param secrets the payloads to encrypt, consumed before encryption starts
+     * @return the encrypted messages, in the same order as the payloads
+     * @throws CryptographyException if any of the payloads fails to encrypt
+     */
+    public List<byte[]> encryptAll(final Stream<byte[]> secrets) throws CryptographyException {
+        return encryptAll(secrets.collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,95 @@
+package com.izettle.cryptography;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies a transformation to many independent payloads on a fork-join pool, keeping the results in input order.
+ */
+final class BulkTransformation {
+
+    /**
+     * Number of payloads below which a task is processed sequentially instead of being split further.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 16;
+
+    interface Transformation {
+        byte[] apply(byte[] payload) throws CryptographyException;
+    }
+
+    private BulkTransformation() {
+    }
+
+    static List<byte[]> transformAll(
+        final ForkJoinPool pool,
+        final Collection<byte[]> payloads,
+        final Transformation transformation
+    ) throws CryptographyException {
+        final byte[][] in = payloads.toArray(new byte[payloads.size()][]);
+        final byte[][] out = new byte[in.length][];
+        try {
+            pool.invoke(new Task(transformation, in, out, 0, in.length));
+        } catch (TransformationFailure e) {
+            throw e.getCause();
+        }
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    private static final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = -2418932146183232545L;
+        private final transient Transformation transformation;
+        private final byte[][] in;
+        private final byte[][] out;
+        private final int from;
+        private final int to;
+
+        Task(final Transformation transformation, final byte[][] in, final byte[][] out, final int from, final int to) {
+            this.transformation = transformation;
+            this.in = in;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        out[i] = transformation.apply(in[i]);
+                    } catch (CryptographyException e) {
+                        throw new TransformationFailure(e);
+                    }
+                }
+            } else {
+                final int middle = (from + to) >>> 1;
+                invokeAll(
+                    new Task(transformation, in, out, from, middle),
+                    new Task(transformation, in, out, middle, to)
+                );
+            }
+        }
+    }
+
+    /**
+     * Carries the checked exception of a failed payload out of the fork-join pool.
+     */
+    private static final class TransformationFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 3325407458402113395L;
+
+        TransformationFailure(final CryptographyException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized CryptographyException getCause() {
+            return (CryptographyException) super.getCause();
+        }
+    }
+}
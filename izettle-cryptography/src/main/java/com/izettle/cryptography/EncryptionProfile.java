@@ -0,0 +1,114 @@
+package com.izettle.cryptography;
+
+import java.security.SecureRandom;
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+
+/**
+ * Immutable set of options used by {@link PGP} when encrypting: which symmetric cipher to use, whether the literal data
+ * should be compressed, and whether the output should be ASCII armored or raw binary. Decryption does not need a
+ * profile, as all of these options are recorded in the message itself.
+ */
+public final class EncryptionProfile {
+
+    private static final SecureRandom SHARED_RANDOM = new SecureRandom();
+
+    /**
+     * The profile used before profiles were introduced: CAST5, no compression, ASCII armored output.
+     */
+    public static final EncryptionProfile LEGACY = new EncryptionProfile(
+        SymmetricKeyAlgorithmTags.CAST5,
+        CompressionAlgorithmTags.UNCOMPRESSED,
+        true,
+        SHARED_RANDOM
+    );
+
+    /**
+     * AES-256 with raw binary output, about 25% smaller than its armored counterpart. The output needs a transport
+     * encoding (such as base 64) wherever only text is accepted.
+     */
+    public static final EncryptionProfile AES_256_BINARY = LEGACY
+        .withAlgorithm(SymmetricKeyAlgorithmTags.AES_256)
+        .withArmor(false);
+
+    private final int algorithm;
+    private final int compression;
+    private final boolean armor;
+    private final SecureRandom secureRandom;
+
+    private EncryptionProfile(
+        final int algorithm,
+        final int compression,
+        final boolean armor,
+        final SecureRandom secureRandom
+    ) {
+        this.algorithm = algorithm;
+        this.compression = compression;
+        this.armor = armor;
+        this.secureRandom = secureRandom;
+    }
+
+    /**
+     * @param algorithm one of the {@link SymmetricKeyAlgorithmTags}, for example AES_128 or AES_256
+     * @return a copy of this profile using the provided symmetric cipher
+     */
+    public EncryptionProfile withAlgorithm(final int algorithm) {
+        if (algorithm == SymmetricKeyAlgorithmTags.NULL) {
+            throw new IllegalArgumentException("Refusing to encrypt without a symmetric cipher");
+        }
+        return new EncryptionProfile(algorithm, compression, armor, secureRandom);
+    }
+
+    /**
+     * @param compression one of the {@link CompressionAlgorithmTags}, UNCOMPRESSED to disable compression
+     * @return a copy of this profile using the provided compression algorithm
+     */
+    public EncryptionProfile withCompression(final int compression) {
+        return new EncryptionProfile(algorithm, compression, armor, secureRandom);
+    }
+
+    /**
+     * @param armor true for ASCII armored output, false for raw binary output
+     * @return a copy of this profile with the requested output format
+     */
+    public EncryptionProfile withArmor(final boolean armor) {
+        return new EncryptionProfile(algorithm, compression, armor, secureRandom);
+    }
+
+    /**
+     * All profiles share one {@link SecureRandom} by default, as seeding a new one per message is expensive.
+     * @param secureRandom the random source used for session keys and IVs
+     * @return a copy of this profile using the provided random source
+     */
+    public EncryptionProfile withSecureRandom(final SecureRandom secureRandom) {
+        if (secureRandom == null) {
+            throw new IllegalArgumentException("SecureRandom cannot be null");
+        }
+        return new EncryptionProfile(algorithm, compression, armor, secureRandom);
+    }
+
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getCompression() {
+        return compression;
+    }
+
+    public boolean isArmored() {
+        return armor;
+    }
+
+    public SecureRandom getSecureRandom() {
+        return secureRandom;
+    }
+
+    @Override
+    public String toString() {
+        return "EncryptionProfile{"
+            + "algorithm=" + algorithm
+            + ", compression=" + compression
+            + ", armor=" + armor
+            + '}';
+    }
+}
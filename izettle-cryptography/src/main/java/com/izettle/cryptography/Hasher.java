@@ -0,0 +1,226 @@
+package com.izettle.cryptography;
+
+import static com.izettle.java.Base64.byteArrToB64String;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Incremental hashing of strings, byte arrays, buffers and streams. Strings are UTF-8 encoded into a reused buffer
+ * rather than into a new byte array per string, and hashers (including their {@link MessageDigest}) are reused per
+ * thread. A hasher obtained from {@link #get(Algorithm)} is reset and belongs to the calling thread until the next call
+ * to {@code get} on that thread, so it must not be shared or kept around.
+ * <pre>
+ * String key = Hasher.get(Hasher.Algorithm.SHA_256).update(userId).update(path).digestToB64String();
+ * </pre>
+ */
+public final class Hasher {
+
+    public enum Algorithm {
+        MD5("MD5"),
+        SHA_1("SHA-1"),
+        SHA_256("SHA-256"),
+        /**
+         * 64 bit FNV-1a. Not cryptographically secure, but cheap: only suitable for cache keys and similar.
+         */
+        FNV_1A_64(null);
+
+        private final String jcaName;
+
+        Algorithm(final String jcaName) {
+            this.jcaName = jcaName;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final ThreadLocal<Map<Algorithm, Hasher>> HASHERS =
+        ThreadLocal.withInitial(() -> new EnumMap<>(Algorithm.class));
+
+    private final MessageDigest messageDigest;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long fnvHash = FNV_OFFSET_BASIS;
+
+    private Hasher(final Algorithm algorithm) {
+        if (algorithm.jcaName == null) {
+            this.messageDigest = null;
+        } else {
+            try {
+                this.messageDigest = MessageDigest.getInstance(algorithm.jcaName);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Missing digest algorithm " + algorithm.jcaName, e);
+            }
+        }
+    }
+
+    /**
+     * @param algorithm the hash algorithm
+     * @return the calling thread's hasher for the algorithm, reset and ready for use
+     */
+    public static Hasher get(final Algorithm algorithm) {
+        final Map<Algorithm, Hasher> hashers = HASHERS.get();
+        Hasher hasher = hashers.get(algorithm);
+        if (hasher == null) {
+            hasher = new Hasher(algorithm);
+            hashers.put(algorithm, hasher);
+        }
+        return hasher.reset();
+    }
+
+    /**
+     * @param algorithm the hash algorithm
+     * @return a new hasher not tied to the calling thread, which may be kept and passed between threads (but not used
+     * by several threads at once)
+     */
+    public static Hasher create(final Algorithm algorithm) {
+        return new Hasher(algorithm);
+    }
+
+    public Hasher reset() {
+        if (messageDigest != null) {
+            messageDigest.reset();
+        }
+        fnvHash = FNV_OFFSET_BASIS;
+        return this;
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of the characters, without allocating a byte array for them.
+     * @param chars the characters to hash, null is ignored
+     * @return this hasher
+     */
+    public Hasher update(final CharSequence chars) {
+        if (chars == null || chars.length() == 0) {
+            return this;
+        }
+        final CharBuffer in = CharBuffer.wrap(chars);
+        encoder.reset();
+        try {
+            CoderResult result;
+            do {
+                result = encoder.encode(in, buffer, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                drainBuffer();
+            } while (result.isOverflow());
+            while (encoder.flush(buffer).isOverflow()) {
+                drainBuffer();
+            }
+            drainBuffer();
+        } catch (CharacterCodingException e) {
+            // cannot happen, as errors are replaced
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public Hasher update(final byte[] bytes) {
+        return update(bytes, 0, bytes.length);
+    }
+
+    public Hasher update(final byte[] bytes, final int offset, final int length) {
+        if (messageDigest != null) {
+            messageDigest.update(bytes, offset, length);
+        } else {
+            long hash = fnvHash;
+            for (int i = offset; i < offset + length; i++) {
+                hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+            }
+            fnvHash = hash;
+        }
+        return this;
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer, leaving its position at its limit.
+     * @param bytes the bytes to hash
+     * @return this hasher
+     */
+    public Hasher update(final ByteBuffer bytes) {
+        if (messageDigest != null) {
+            messageDigest.update(bytes);
+        } else if (bytes.hasArray()) {
+            update(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            bytes.position(bytes.limit());
+        } else {
+            long hash = fnvHash;
+            while (bytes.hasRemaining()) {
+                hash = (hash ^ (bytes.get() & 0xff)) * FNV_PRIME;
+            }
+            fnvHash = hash;
+        }
+        return this;
+    }
+
+    /**
+     * Hashes everything read from the stream, without closing it.
+     * @param in the stream to read
+     * @return this hasher
+     * @throws IOException if reading fails
+     */
+    public Hasher update(final InputStream in) throws IOException {
+        final byte[] chunk = buffer.array();
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            update(chunk, 0, read);
+        }
+        return this;
+    }
+
+    /**
+     * Completes the hash and resets the hasher.
+     * @return the hash
+     */
+    public byte[] digest() {
+        if (messageDigest != null) {
+            return messageDigest.digest();
+        }
+        final byte[] digest = ByteBuffer.allocate(Long.BYTES).putLong(fnvHash).array();
+        reset();
+        return digest;
+    }
+
+    /**
+     * Completes the hash and resets the hasher.
+     * @return the hash as an url safe base 64 string, as produced by {@link com.izettle.java.Base64}
+     */
+    public String digestToB64String() {
+        return byteArrToB64String(digest());
+    }
+
+    /**
+     * Completes the hash and resets the hasher.
+     * @return the first 8 bytes of the hash, as a big endian long
+     */
+    public long digestToLong() {
+        if (messageDigest == null) {
+            final long hash = fnvHash;
+            reset();
+            return hash;
+        }
+        return ByteBuffer.wrap(messageDigest.digest()).getLong();
+    }
+
+    private void drainBuffer() {
+        buffer.flip();
+        update(buffer.array(), 0, buffer.limit());
+        buffer.clear();
+    }
+}
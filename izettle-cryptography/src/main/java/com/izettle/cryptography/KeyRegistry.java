@@ -0,0 +1,372 @@
+package com.izettle.cryptography;
+
+import com.izettle.java.Hex;
+import com.izettle.java.ResourceUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+
+/**
+ * Thread safe holder of parsed public and secret keyrings, so that keys are parsed once instead of on every use.
+ * Public keys are indexed by key id and by fingerprint, and the private keys extracted to decrypt with are kept, so that
+ * the passphrase is hashed once per key rather than for every message. Registries created from files check, at most
+ * once per reload interval, whether the files have changed and reload them if so, dropping the extracted private keys.
+ * Should a reload fail (for example on a half written file), the previously loaded keys are kept and the reload is
+ * retried after the next interval.
+ */
+public final class KeyRegistry {
+
+    private static final long DEFAULT_RELOAD_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final SecureRandom SALTS = new SecureRandom();
+
+    private final Path publicKeyFile;
+    private final Path secretKeyFile;
+    private final long reloadIntervalMillis;
+    private volatile Keys keys;
+    private volatile long nextReloadCheck;
+
+    private KeyRegistry(
+        final Keys keys,
+        final Path publicKeyFile,
+        final Path secretKeyFile,
+        final long reloadIntervalMillis
+    ) {
+        this.keys = keys;
+        this.publicKeyFile = publicKeyFile;
+        this.secretKeyFile = secretKeyFile;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        this.nextReloadCheck = System.currentTimeMillis() + reloadIntervalMillis;
+    }
+
+    /**
+     * @param publicKeys armored or binary public keyring, possibly null
+     * @param secretKeys armored or binary secret keyring, possibly null
+     * @return a registry holding the provided keys
+     * @throws CryptographyException if the keys cannot be parsed
+     */
+    public static KeyRegistry of(final byte[] publicKeys, final byte[] secretKeys) throws CryptographyException {
+        return new KeyRegistry(Keys.parse(publicKeys, secretKeys, null, null), null, null, 0L);
+    }
+
+    /**
+     * @param publicKeyResource name of the resource holding the public keyring, possibly null
+     * @param secretKeyResource name of the resource holding the secret keyring, possibly null
+     * @return a registry holding the keys of the provided resources
+     * @throws CryptographyException if the resources cannot be read or parsed
+     */
+    public static KeyRegistry fromResources(
+        final String publicKeyResource,
+        final String secretKeyResource
+    ) throws CryptographyException {
+        try {
+            return of(
+                publicKeyResource == null ? null : ResourceUtils.getResourceAsBytes(publicKeyResource),
+                secretKeyResource == null ? null : ResourceUtils.getResourceAsBytes(secretKeyResource)
+            );
+        } catch (IOException e) {
+            throw new CryptographyException("Failed to read keys.", e);
+        }
+    }
+
+    /**
+     * Creates a registry that reloads the keys when the files change, checking at most every 10 seconds.
+     * @param publicKeyFile file holding the public keyring, possibly null
+     * @param secretKeyFile file holding the secret keyring, possibly null
+     * @return a registry holding the keys of the provided files
+     * @throws CryptographyException if the files cannot be read or parsed
+     */
+    public static KeyRegistry fromFiles(
+        final Path publicKeyFile,
+        final Path secretKeyFile
+    ) throws CryptographyException {
+        return fromFiles(publicKeyFile, secretKeyFile, DEFAULT_RELOAD_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a registry that reloads the keys when the files change.
+     * @param publicKeyFile file holding the public keyring, possibly null
+     * @param secretKeyFile file holding the secret keyring, possibly null
+     * @param reloadInterval minimum time between checks for changed files
+     * @param unit unit of the reload interval
+     * @return a registry holding the keys of the provided files
+     * @throws CryptographyException if the files cannot be read or parsed
+     */
+    public static KeyRegistry fromFiles(
+        final Path publicKeyFile,
+        final Path secretKeyFile,
+        final long reloadInterval,
+        final TimeUnit unit
+    ) throws CryptographyException {
+        return new KeyRegistry(
+            Keys.read(publicKeyFile, secretKeyFile),
+            publicKeyFile,
+            secretKeyFile,
+            unit.toMillis(reloadInterval)
+        );
+    }
+
+    /**
+     * The key to encrypt with: the first encryption key found in the public keyring, which is the same key
+     * {@link KeyUtil#findPublicKey(InputStream)} would return.
+     * @return the encryption key
+     * @throws IllegalStateException if the registry holds no public encryption key
+     */
+    public PGPPublicKey getEncryptionKey() {
+        final PGPPublicKey encryptionKey = current().encryptionKey;
+        if (encryptionKey == null) {
+            throw new IllegalStateException("Registry holds no public encryption key");
+        }
+        return encryptionKey;
+    }
+
+    /**
+     * @param keyId the id of the public key
+     * @return the public key, or null if not present
+     */
+    public PGPPublicKey findPublicKey(final long keyId) {
+        return current().publicKeysById.get(keyId);
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the public key
+     * @return the public key, or null if not present
+     */
+    public PGPPublicKey findPublicKey(final byte[] fingerprint) {
+        return current().publicKeysByFingerprint.get(Hex.toHexString(fingerprint));
+    }
+
+    /**
+     * @param keyId the id of the secret key
+     * @return the secret key, or null if not present
+     */
+    public PGPSecretKey findSecretKey(final long keyId) {
+        final PGPSecretKeyRingCollection secretKeys = current().secretKeys;
+        if (secretKeys == null) {
+            return null;
+        }
+        try {
+            return secretKeys.getSecretKey(keyId);
+        } catch (PGPException e) {
+            throw new IllegalStateException("Unable to look up secret key " + keyId, e);
+        }
+    }
+
+    /**
+     * @return the secret keyring
+     * @throws IllegalStateException if the registry holds no secret keys
+     */
+    public PGPSecretKeyRingCollection getSecretKeys() {
+        final PGPSecretKeyRingCollection secretKeys = current().secretKeys;
+        if (secretKeys == null) {
+            throw new IllegalStateException("Registry holds no secret keys");
+        }
+        return secretKeys;
+    }
+
+    /**
+     * Looks up the decryptor of a secret key, extracting the private key only the first time it is used. Later lookups
+     * get the kept decryptor if their passphrase matches the one that unlocked the key, and extract it again otherwise.
+     * @param keyId the id of the secret key
+     * @param passphrase passphrase of the secret key
+     * @return the decryptor, or null if the registry holds no such secret key
+     * @throws IllegalStateException if the registry holds no secret keys
+     */
+    PublicKeyDataDecryptorFactory findDecryptor(final long keyId, final String passphrase) {
+        final Keys current = current();
+        if (current.secretKeys == null) {
+            throw new IllegalStateException("Registry holds no secret keys");
+        }
+        if (passphrase == null) {
+            // fails with the same message as without the registry, if the key is there
+            final PGPPrivateKey key = PGP.findSecretKey(current.secretKeys, keyId, null);
+            return key == null ? null : PGP.newDecryptorFactory(key);
+        }
+        final UnlockedKey cached = current.unlockedKeys.get(keyId);
+        if (cached != null && cached.isUnlockedBy(passphrase)) {
+            return cached.decryptor;
+        }
+        // only keys that were found and unlocked are kept, so the map never grows beyond the secret keys
+        final PGPPrivateKey key = PGP.findSecretKey(current.secretKeys, keyId, passphrase);
+        if (key == null) {
+            return null;
+        }
+        final UnlockedKey unlocked = new UnlockedKey(PGP.newDecryptorFactory(key), passphrase);
+        final UnlockedKey previous = current.unlockedKeys.putIfAbsent(keyId, unlocked);
+        return previous != null && previous.isUnlockedBy(passphrase) ? previous.decryptor : unlocked.decryptor;
+    }
+
+    private Keys current() {
+        if (reloadIntervalMillis > 0 && System.currentTimeMillis() >= nextReloadCheck) {
+            reloadIfModified();
+        }
+        return keys;
+    }
+
+    private synchronized void reloadIfModified() {
+        final long now = System.currentTimeMillis();
+        if (now < nextReloadCheck) {
+            // another thread got here first
+            return;
+        }
+        nextReloadCheck = now + reloadIntervalMillis;
+        final Keys loaded = keys;
+        try {
+            if (!loaded.isSameVersion(lastModified(publicKeyFile), lastModified(secretKeyFile))) {
+                keys = Keys.read(publicKeyFile, secretKeyFile);
+            }
+        } catch (IOException | CryptographyException e) {
+            // keep serving the keys already loaded, and retry on next check
+        }
+    }
+
+    private static FileTime lastModified(final Path file) throws IOException {
+        return file == null ? null : Files.getLastModifiedTime(file);
+    }
+
+    private static final class Keys {
+
+        private final PGPSecretKeyRingCollection secretKeys;
+        private final PGPPublicKey encryptionKey;
+        private final Map<Long, PGPPublicKey> publicKeysById;
+        private final Map<String, PGPPublicKey> publicKeysByFingerprint;
+        private final FileTime publicKeysModified;
+        private final FileTime secretKeysModified;
+        private final ConcurrentMap<Long, UnlockedKey> unlockedKeys = new ConcurrentHashMap<>();
+
+        private Keys(
+            final PGPPublicKeyRingCollection publicKeys,
+            final PGPSecretKeyRingCollection secretKeys,
+            final FileTime publicKeysModified,
+            final FileTime secretKeysModified
+        ) {
+            this.secretKeys = secretKeys;
+            this.publicKeysModified = publicKeysModified;
+            this.secretKeysModified = secretKeysModified;
+            final Map<Long, PGPPublicKey> byId = new HashMap<>();
+            final Map<String, PGPPublicKey> byFingerprint = new HashMap<>();
+            PGPPublicKey firstEncryptionKey = null;
+            if (publicKeys != null) {
+                for (final Iterator<?> rings = publicKeys.getKeyRings(); rings.hasNext();) {
+                    final PGPPublicKeyRing ring = (PGPPublicKeyRing) rings.next();
+                    for (final Iterator<?> ringKeys = ring.getPublicKeys(); ringKeys.hasNext();) {
+                        final PGPPublicKey key = (PGPPublicKey) ringKeys.next();
+                        byId.put(key.getKeyID(), key);
+                        byFingerprint.put(Hex.toHexString(key.getFingerprint()), key);
+                        if (firstEncryptionKey == null && key.isEncryptionKey()) {
+                            firstEncryptionKey = key;
+                        }
+                    }
+                }
+            }
+            this.encryptionKey = firstEncryptionKey;
+            this.publicKeysById = Collections.unmodifiableMap(byId);
+            this.publicKeysByFingerprint = Collections.unmodifiableMap(byFingerprint);
+        }
+
+        static Keys read(final Path publicKeyFile, final Path secretKeyFile) throws CryptographyException {
+            try {
+                // read the timestamps first, so that a change during reading results in another reload
+                final FileTime publicKeysModified = lastModified(publicKeyFile);
+                final FileTime secretKeysModified = lastModified(secretKeyFile);
+                return parse(
+                    publicKeyFile == null ? null : Files.readAllBytes(publicKeyFile),
+                    secretKeyFile == null ? null : Files.readAllBytes(secretKeyFile),
+                    publicKeysModified,
+                    secretKeysModified
+                );
+            } catch (IOException e) {
+                throw new CryptographyException("Failed to read keys.", e);
+            }
+        }
+
+        static Keys parse(
+            final byte[] publicKeys,
+            final byte[] secretKeys,
+            final FileTime publicKeysModified,
+            final FileTime secretKeysModified
+        ) throws CryptographyException {
+            try {
+                final PGPPublicKeyRingCollection publicKeyRings = publicKeys == null ? null
+                    : new PGPPublicKeyRingCollection(
+                        PGPUtil.getDecoderStream(new ByteArrayInputStream(publicKeys)),
+                        new BcKeyFingerprintCalculator()
+                    );
+                final PGPSecretKeyRingCollection secretKeyRings = secretKeys == null ? null
+                    : new PGPSecretKeyRingCollection(
+                        PGPUtil.getDecoderStream(new ByteArrayInputStream(secretKeys)),
+                        new BcKeyFingerprintCalculator()
+                    );
+                // a truncated armored keyring parses as an empty one, rather than failing
+                if ((publicKeyRings != null && publicKeyRings.size() == 0)
+                    || (secretKeyRings != null && secretKeyRings.size() == 0)) {
+                    throw new PGPException("keyring holds no keys.");
+                }
+                return new Keys(publicKeyRings, secretKeyRings, publicKeysModified, secretKeysModified);
+            } catch (IOException | PGPException e) {
+                throw new CryptographyException("Failed to parse keys.", e);
+            }
+        }
+
+        boolean isSameVersion(final FileTime publicKeysModified, final FileTime secretKeysModified) {
+            return Objects.equals(this.publicKeysModified, publicKeysModified)
+                && Objects.equals(this.secretKeysModified, secretKeysModified);
+        }
+    }
+
+    /**
+     * The decryptor of an extracted private key, with a salted digest of the passphrase that unlocked it rather than
+     * the passphrase itself, so that a lookup with another passphrase is not served the decryptor.
+     */
+    private static final class UnlockedKey {
+
+        private final PublicKeyDataDecryptorFactory decryptor;
+        private final byte[] salt;
+        private final byte[] passphraseDigest;
+
+        private UnlockedKey(final PublicKeyDataDecryptorFactory decryptor, final String passphrase) {
+            this.decryptor = decryptor;
+            this.salt = new byte[16];
+            SALTS.nextBytes(salt);
+            this.passphraseDigest = digest(salt, passphrase);
+        }
+
+        boolean isUnlockedBy(final String passphrase) {
+            return MessageDigest.isEqual(passphraseDigest, digest(salt, passphrase));
+        }
+
+        private static byte[] digest(final byte[] salt, final String passphrase) {
+            try {
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(salt);
+                return digest.digest(passphrase.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    }
+}
@@ -5,16 +5,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.SecureRandom;
 import java.security.Security;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.function.LongFunction;
 import org.bouncycastle.bcpg.ArmoredInputStream;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
-import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.PGPContentVerifierBuilderProvider;
 import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentVerifierBuilderProvider;
 import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyDataDecryptorFactoryBuilder;
@@ -32,91 +36,341 @@ public class PGP {
         Security.addProvider(PROVIDER);
     }
 
+    /**
+     * Size of the partial length packets written when streaming, must be a power of two.
+     */
+    private static final int STREAMING_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Size of the chunks copied when the data has to be seen by a signature as well as the output.
+     */
+    private static final int COPY_BUFFER_SIZE = 1 << 13;
+
+    private static final int SIGNATURE_HASH_ALGORITHM = HashAlgorithmTags.SHA256;
+
+    private static final PGPContentVerifierBuilderProvider VERIFIER_BUILDER_PROVIDER =
+        new JcaPGPContentVerifierBuilderProvider().setProvider(PROVIDER);
+
     public static byte[] decrypt(
             final byte[] data,
             final InputStream privateKey,
             final String passphrase)
             throws CryptographyException {
-        final ByteArrayOutputStream out;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        decrypt(new ByteArrayInputStream(data), out, privateKey, passphrase);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decrypts a (possibly armored) message, writing the clear text to the provided output as it is read. Neither
+     * stream is closed.
+     * @param data the encrypted message
+     * @param out where to write the decrypted message
+     * @param privateKey the armored secret keyring
+     * @param passphrase passphrase of the secret key
+     * @throws CryptographyException if decryption fails
+     */
+    public static void decrypt(
+            final InputStream data,
+            final OutputStream out,
+            final InputStream privateKey,
+            final String passphrase)
+            throws CryptographyException {
+        final PGPSecretKeyRingCollection keys;
         try {
-            final PGPLiteralData message = asLiteral(data, privateKey, passphrase);
-            out = new ByteArrayOutputStream();
-            Streams.pipeAll(message.getInputStream(), out);
+            keys = new PGPSecretKeyRingCollection(new ArmoredInputStream(privateKey), new BcKeyFingerprintCalculator());
         } catch (IOException | PGPException e) {
             throw new CryptographyException("Failed to decrypt.", e);
         }
-        return out.toByteArray();
+        decrypt(data, out, keys, passphrase);
+    }
+
+    /**
+     * Decrypts a (possibly armored) message, writing the clear text to the provided output as it is read. Neither
+     * stream is closed. The integrity packet, if present, is verified once all data has been read.
+     * @param data the encrypted message
+     * @param out where to write the decrypted message
+     * @param keyring the secret keys to look for the recipient key in
+     * @param passphrase passphrase of the secret key
+     * @throws CryptographyException if decryption fails
+     */
+    public static void decrypt(
+            final InputStream data,
+            final OutputStream out,
+            final PGPSecretKeyRingCollection keyring,
+            final String passphrase)
+            throws CryptographyException {
+        decrypt(data, out, id -> {
+            final PGPPrivateKey key = findSecretKey(keyring, id, passphrase);
+            return key == null ? null : newDecryptorFactory(key);
+        });
+    }
+
+    /**
+     * Decrypts a (possibly armored) message using the secret keys of the registry. Neither stream is closed. The
+     * private key is extracted from the keyring once and kept by the registry until its keys are reloaded.
+     * @param data the encrypted message
+     * @param out where to write the decrypted message
+     * @param registry the registry holding the recipient key
+     * @param passphrase passphrase of the secret key
+     * @throws CryptographyException if decryption fails
+     */
+    public static void decrypt(
+            final InputStream data,
+            final OutputStream out,
+            final KeyRegistry registry,
+            final String passphrase)
+            throws CryptographyException {
+        decrypt(data, out, id -> registry.findDecryptor(id, passphrase));
+    }
+
+    /**
+     * Decrypts a (possibly armored) signed message and verifies its signature in the same pass, writing the clear text
+     * to the provided output as it is read. Neither stream is closed. As the signature can only be checked once all
+     * data has been read, the output must be discarded if this method throws.
+     * @param data the signed and encrypted message
+     * @param out where to write the decrypted message
+     * @param keyring the secret keys to look for the recipient key in
+     * @param passphrase passphrase of the secret key
+     * @param verificationKeys the registry holding the public key of the signer
+     * @return the public key the message was signed with
+     * @throws CryptographyException if decryption fails, the message is not signed, the signer is unknown or the
+     * signature does not match
+     */
+    public static PGPPublicKey decryptAndVerify(
+            final InputStream data,
+            final OutputStream out,
+            final PGPSecretKeyRingCollection keyring,
+            final String passphrase,
+            final KeyRegistry verificationKeys)
+            throws CryptographyException {
+        return decrypt(data, out, id -> {
+            final PGPPrivateKey key = findSecretKey(keyring, id, passphrase);
+            return key == null ? null : newDecryptorFactory(key);
+        }, verificationKeys::findPublicKey);
+    }
+
+    /**
+     * Decrypts and verifies a signed message using a registry holding both the recipients secret keys and the signers
+     * public keys. Neither stream is closed, and the output must be discarded if this method throws.
+     * @param data the signed and encrypted message
+     * @param out where to write the decrypted message
+     * @param registry the registry holding the recipient and signer keys
+     * @param passphrase passphrase of the secret key
+     * @return the public key the message was signed with
+     * @throws CryptographyException if decryption or verification fails
+     * @see #decryptAndVerify(InputStream, OutputStream, PGPSecretKeyRingCollection, String, KeyRegistry)
+     */
+    public static PGPPublicKey decryptAndVerify(
+            final InputStream data,
+            final OutputStream out,
+            final KeyRegistry registry,
+            final String passphrase)
+            throws CryptographyException {
+        return decrypt(data, out, id -> registry.findDecryptor(id, passphrase), registry::findPublicKey);
+    }
+
+    /**
+     * Decrypts using the first encrypted session key for which the lookup returns a decryptor factory.
+     */
+    static void decrypt(
+            final InputStream data,
+            final OutputStream out,
+            final LongFunction<PublicKeyDataDecryptorFactory> decryptorLookup)
+            throws CryptographyException {
+        decrypt(data, out, decryptorLookup, null);
+    }
+
+    /**
+     * Decrypts using the first encrypted session key for which the lookup returns a decryptor factory, and verifies
+     * the one pass signature of the message unless the verification key lookup is null.
+     * @return the key the message was signed with, or null when not verifying
+     */
+    private static PGPPublicKey decrypt(
+            final InputStream data,
+            final OutputStream out,
+            final LongFunction<PublicKeyDataDecryptorFactory> decryptorLookup,
+            final LongFunction<PGPPublicKey> verificationKeyLookup)
+            throws CryptographyException {
+        try {
+            PublicKeyDataDecryptorFactory decryptor = null;
+            PGPPublicKeyEncryptedData encrypted = null;
+            for (final Iterator<PGPPublicKeyEncryptedData> i = getEncryptedObjects(data);
+                decryptor == null && i.hasNext();) {
+                encrypted = i.next();
+                decryptor = decryptorLookup.apply(encrypted.getKeyID());
+            }
+            if (decryptor == null) {
+                throw new IllegalArgumentException("secret key for message not found.");
+            }
+            final PGPPublicKey signer;
+            if (verificationKeyLookup == null) {
+                final PGPLiteralData message = asLiteral(encrypted.getDataStream(decryptor));
+                Streams.pipeAll(message.getInputStream(), out);
+                signer = null;
+            } else {
+                signer = pipeVerified(encrypted.getDataStream(decryptor), out, verificationKeyLookup);
+            }
+            if (encrypted.isIntegrityProtected() && !encrypted.verify()) {
+                throw new PGPException("message failed integrity check.");
+            }
+            return signer;
+        } catch (IOException | PGPException e) {
+            throw new CryptographyException("Failed to decrypt.", e);
+        }
+    }
+
+    static PublicKeyDataDecryptorFactory newDecryptorFactory(final PGPPrivateKey key) {
+        return new JcePublicKeyDataDecryptorFactoryBuilder()
+            .setProvider(PROVIDER)
+                .build(key);
     }
 
     public static byte[] encrypt(
             final byte[] secret,
             final PGPPublicKey... keys)
             throws CryptographyException {
-        final ByteArrayOutputStream out;
-        try (ByteArrayInputStream in = new ByteArrayInputStream(secret);
-            ByteArrayOutputStream bOut = new ByteArrayOutputStream()) {
+        return encrypt(secret, EncryptionProfile.LEGACY, keys);
+    }
+
+    public static byte[] encrypt(
+            final byte[] secret,
+            final EncryptionProfile profile,
+            final PGPPublicKey... keys)
+            throws CryptographyException {
+        try {
+            return new Encryptor(profile, keys).encrypt(secret);
+        } catch (IOException | PGPException e) {
+            throw new CryptographyException("Failed to encrypt.", e);
+        }
+    }
+
+    /**
+     * Encrypts everything read from the input, writing the encrypted message to the output as it goes. The size of the
+     * input doesn't need to be known: data is written as partial length packets, so memory use is bounded regardless
+     * of the input size. Neither stream is closed.
+     * @param in the clear text to encrypt
+     * @param out where to write the encrypted message
+     * @param profile how to encrypt the message
+     * @param keys the recipients public keys
+     * @throws CryptographyException if encryption fails
+     */
+    public static void encrypt(
+            final InputStream in,
+            final OutputStream out,
+            final EncryptionProfile profile,
+            final PGPPublicKey... keys)
+            throws CryptographyException {
+        try {
+            final OutputStream target = profile.isArmored() ? new ArmoredOutputStream(out) : out;
+            final PGPEncryptedDataGenerator generator = newEncryptedDataGenerator(profile, keys);
+            final OutputStream cOut = generator.open(target, new byte[STREAMING_BUFFER_SIZE]);
+            final PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(profile.getCompression());
             final PGPLiteralDataGenerator literal = new PGPLiteralDataGenerator();
-            final PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(CompressionAlgorithmTags.UNCOMPRESSED);
             final OutputStream pOut = literal.open(
-                    comData.open(bOut),
+                    comData.open(cOut, new byte[STREAMING_BUFFER_SIZE]),
                     PGPLiteralData.BINARY,
                     "filename",
-                    in.available(),
-                    new Date());
+                    new Date(),
+                    new byte[STREAMING_BUFFER_SIZE]);
             Streams.pipeAll(in, pOut);
+            literal.close();
             comData.close();
-            final byte[] bytes = bOut.toByteArray();
-            final PGPEncryptedDataGenerator generator = new PGPEncryptedDataGenerator(
-                    new JcePGPDataEncryptorBuilder(PGPEncryptedData.CAST5)
-                            .setWithIntegrityPacket(true)
-                            .setSecureRandom(new SecureRandom())
-                        .setProvider(PROVIDER));
-            for (final PGPPublicKey key : keys) {
-                generator.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(key).setProvider(PROVIDER));
+            generator.close();
+            if (target != out) {
+                target.close();
             }
-            out = new ByteArrayOutputStream();
-            final ArmoredOutputStream armor = new ArmoredOutputStream(out);
-            final OutputStream cOut = generator.open(armor, bytes.length);
-            cOut.write(bytes);
-            cOut.close();
-            armor.close();
         } catch (IOException | PGPException e) {
             throw new CryptographyException("Failed to encrypt.", e);
         }
-        return out.toByteArray();
+    }
+
+    /**
+     * Signs and encrypts everything read from the input in a single pass, writing a one pass signed message (signature
+     * inside the encryption) to the output as it goes. Like {@link #encrypt(InputStream, OutputStream,
+     * EncryptionProfile, PGPPublicKey...)}, memory use is bounded regardless of the input size. Neither stream is
+     * closed.
+     * @param in the clear text to sign and encrypt
+     * @param out where to write the signed and encrypted message
+     * @param profile how to encrypt the message
+     * @param signingKey the senders private key, see {@link #extractPrivateKey(PGPSecretKey, String)}
+     * @param keys the recipients public keys
+     * @throws CryptographyException if signing or encryption fails
+     */
+    public static void signAndEncrypt(
+            final InputStream in,
+            final OutputStream out,
+            final EncryptionProfile profile,
+            final PGPPrivateKey signingKey,
+            final PGPPublicKey... keys)
+            throws CryptographyException {
+        try {
+            final PGPSignatureGenerator signature = new PGPSignatureGenerator(
+                    new JcaPGPContentSignerBuilder(
+                            signingKey.getPublicKeyPacket().getAlgorithm(),
+                            SIGNATURE_HASH_ALGORITHM)
+                        .setProvider(PROVIDER));
+            signature.init(PGPSignature.BINARY_DOCUMENT, signingKey);
+            final OutputStream target = profile.isArmored() ? new ArmoredOutputStream(out) : out;
+            final PGPEncryptedDataGenerator generator = newEncryptedDataGenerator(profile, keys);
+            final OutputStream cOut = generator.open(target, new byte[STREAMING_BUFFER_SIZE]);
+            final PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(profile.getCompression());
+            final OutputStream bcOut = comData.open(cOut, new byte[STREAMING_BUFFER_SIZE]);
+            signature.generateOnePassVersion(false).encode(bcOut);
+            final PGPLiteralDataGenerator literal = new PGPLiteralDataGenerator();
+            final OutputStream pOut = literal.open(
+                    bcOut,
+                    PGPLiteralData.BINARY,
+                    "filename",
+                    new Date(),
+                    new byte[STREAMING_BUFFER_SIZE]);
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                signature.update(buffer, 0, read);
+                pOut.write(buffer, 0, read);
+            }
+            literal.close();
+            signature.generate().encode(bcOut);
+            comData.close();
+            generator.close();
+            if (target != out) {
+                target.close();
+            }
+        } catch (IOException | PGPException e) {
+            throw new CryptographyException("Failed to sign and encrypt.", e);
+        }
+    }
+
+    static PGPEncryptedDataGenerator newEncryptedDataGenerator(
+            final EncryptionProfile profile,
+            final PGPPublicKey... keys) {
+        final PGPEncryptedDataGenerator generator = new PGPEncryptedDataGenerator(
+                new JcePGPDataEncryptorBuilder(profile.getAlgorithm())
+                        .setWithIntegrityPacket(true)
+                        .setSecureRandom(profile.getSecureRandom())
+                    .setProvider(PROVIDER));
+        for (final PGPPublicKey key : keys) {
+            generator.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(key)
+                .setSecureRandom(profile.getSecureRandom())
+                .setProvider(PROVIDER));
+        }
+        return generator;
     }
 
     @SuppressWarnings("unchecked")
-    private static Iterator<PGPPublicKeyEncryptedData> getEncryptedObjects(final byte[] data) throws IOException {
+    private static Iterator<PGPPublicKeyEncryptedData> getEncryptedObjects(final InputStream data)
+            throws IOException, PGPException {
         final PGPObjectFactory factory = new PGPObjectFactory(
-            PGPUtil.getDecoderStream(new ByteArrayInputStream(data)),
+            PGPUtil.getDecoderStream(data),
             new BcKeyFingerprintCalculator()
         );
         final Object first = factory.nextObject();
         final Object list = (first instanceof PGPEncryptedDataList) ? first : factory.nextObject();
-        return ((PGPEncryptedDataList) list).getEncryptedDataObjects();
-    }
-
-    private static PGPLiteralData asLiteral(
-            final byte[] data,
-            final InputStream keyfile,
-            final String passphrase) throws IOException, PGPException {
-        PGPPrivateKey key = null;
-        PGPPublicKeyEncryptedData encrypted = null;
-        final PGPSecretKeyRingCollection keys =
-            new PGPSecretKeyRingCollection(new ArmoredInputStream(keyfile), new BcKeyFingerprintCalculator());
-        for (final Iterator<PGPPublicKeyEncryptedData> i = getEncryptedObjects(data); key == null && i.hasNext();) {
-            encrypted = i.next();
-            key = findSecretKey(keys, encrypted.getKeyID(), passphrase);
+        if (!(list instanceof PGPEncryptedDataList)) {
+            throw new PGPException("message is not encrypted.");
         }
-        if (key == null) {
-            throw new IllegalArgumentException("secret key for message not found.");
-        }
-        final InputStream stream = encrypted.getDataStream(
-                new JcePublicKeyDataDecryptorFactoryBuilder()
-                    .setProvider(PROVIDER)
-                        .build(key));
-        return asLiteral(stream);
+        return ((PGPEncryptedDataList) list).getEncryptedDataObjects();
     }
 
     private static PGPLiteralData asLiteral(final InputStream clear) throws IOException, PGPException {
@@ -141,16 +395,83 @@ public class PGP {
         }
     }
 
-    private static PGPPrivateKey findSecretKey(
+    /**
+     * Reads the literal data of a one pass signed message, writing it to the output and verifying the signature.
+     */
+    private static PGPPublicKey pipeVerified(
+            final InputStream clear,
+            final OutputStream out,
+            final LongFunction<PGPPublicKey> verificationKeyLookup)
+            throws IOException, PGPException {
+        final BcKeyFingerprintCalculator bcKeyFingerprintCalculator = new BcKeyFingerprintCalculator();
+        PGPObjectFactory factory = new PGPObjectFactory(clear, bcKeyFingerprintCalculator);
+        Object message = factory.nextObject();
+        if (message instanceof PGPCompressedData) {
+            factory = new PGPObjectFactory(((PGPCompressedData) message).getDataStream(), bcKeyFingerprintCalculator);
+            message = factory.nextObject();
+        }
+        if (!(message instanceof PGPOnePassSignatureList)) {
+            throw new PGPException("encrypted message is not signed.");
+        }
+        final PGPOnePassSignature onePassSignature = ((PGPOnePassSignatureList) message).get(0);
+        final PGPPublicKey key = verificationKeyLookup.apply(onePassSignature.getKeyID());
+        if (key == null) {
+            throw new PGPException("public key for signer " + Long.toHexString(onePassSignature.getKeyID())
+                    + " not found.");
+        }
+        onePassSignature.init(VERIFIER_BUILDER_PROVIDER, key);
+        message = factory.nextObject();
+        if (!(message instanceof PGPLiteralData)) {
+            throw new PGPException("signed message contains no literal data.");
+        }
+        final InputStream literal = ((PGPLiteralData) message).getInputStream();
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = literal.read(buffer)) != -1) {
+            onePassSignature.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+        }
+        final Object signatures = factory.nextObject();
+        if (!(signatures instanceof PGPSignatureList)
+                || !onePassSignature.verify(((PGPSignatureList) signatures).get(0))) {
+            throw new PGPException("message failed signature verification.");
+        }
+        return key;
+    }
+
+    /**
+     * Extracting a private key is deliberately slow, so callers signing many messages should do it once and keep the
+     * result.
+     * @param key the secret key
+     * @param passphrase passphrase of the secret key
+     * @return the private key
+     * @throws CryptographyException if the passphrase is wrong or the key cannot be extracted
+     */
+    public static PGPPrivateKey extractPrivateKey(
+            final PGPSecretKey key,
+            final String passphrase)
+            throws CryptographyException {
+        try {
+            return extract(key, passphrase);
+        } catch (PGPException e) {
+            throw new CryptographyException("Failed to extract private key.", e);
+        }
+    }
+
+    private static PGPPrivateKey extract(final PGPSecretKey key, final String passphrase) throws PGPException {
+        return key.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder()
+            .setProvider(PROVIDER)
+                .build(passphrase.toCharArray()));
+    }
+
+    static PGPPrivateKey findSecretKey(
             final PGPSecretKeyRingCollection keys,
             final long id,
             final String passphrase) {
         try {
             final PGPSecretKey key = keys.getSecretKey(id);
             if (key != null) {
-                return key.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder()
-                    .setProvider(PROVIDER)
-                        .build(passphrase.toCharArray()));
+                return extract(key, passphrase);
             }
         } catch (Exception e) {
             final String passphraseMessage = (passphrase == null) ? "null" : passphrase.length() + " character";
@@ -158,4 +479,44 @@ public class PGP {
         }
         return null;
     }
+
+    /**
+     * Encrypts byte arrays using one set of generators. Not thread safe, but reusable: the generators are reset when
+     * closed, and a fresh session key is generated for every message.
+     */
+    static final class Encryptor {
+
+        private final EncryptionProfile profile;
+        private final PGPEncryptedDataGenerator generator;
+        private final PGPCompressedDataGenerator comData;
+        private final PGPLiteralDataGenerator literal = new PGPLiteralDataGenerator();
+        private final ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+
+        Encryptor(final EncryptionProfile profile, final PGPPublicKey... keys) {
+            this.profile = profile;
+            this.generator = newEncryptedDataGenerator(profile, keys);
+            this.comData = new PGPCompressedDataGenerator(profile.getCompression());
+        }
+
+        byte[] encrypt(final byte[] secret) throws IOException, PGPException {
+            bOut.reset();
+            final OutputStream pOut = literal.open(
+                    comData.open(bOut),
+                    PGPLiteralData.BINARY,
+                    "filename",
+                    secret.length,
+                    new Date());
+            pOut.write(secret);
+            literal.close();
+            comData.close();
+            final byte[] bytes = bOut.toByteArray();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 1024);
+            final OutputStream target = profile.isArmored() ? new ArmoredOutputStream(out) : out;
+            final OutputStream cOut = generator.open(target, bytes.length);
+            cOut.write(bytes);
+            cOut.close();
+            target.close();
+            return out.toByteArray();
+        }
+    }
 }
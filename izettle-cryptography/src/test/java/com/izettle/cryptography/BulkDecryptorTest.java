@@ -0,0 +1,74 @@
+package com.izettle.cryptography;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkDecryptorTest {
+
+    private PGPPublicKey publicKey;
+    private PGPSecretKeyRingCollection secretKeys;
+    private List<byte[]> secrets;
+
+    @Before
+    public void setup() throws Exception {
+        publicKey = ExampleKeys.encryptionKey();
+        secretKeys = ExampleKeys.secretKeys();
+        secrets = IntStream.range(0, 100)
+            .mapToObj(i -> ("payload " + i).getBytes(StandardCharsets.UTF_8))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    public void itShouldKeepTheOrderOfTheMessages() throws Exception {
+        final List<byte[]> encrypted = encryptAll();
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<byte[]> decrypted =
+                new BulkDecryptor(pool, secretKeys, ExampleKeys.PASSPHRASE).decryptAll(encrypted.stream());
+            assertEquals(secrets.size(), decrypted.size());
+            for (int i = 0; i < secrets.size(); i++) {
+                assertArrayEquals(secrets.get(i), decrypted.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void itShouldFailOnABadMessageWithoutHangingThePool() throws Exception {
+        final List<byte[]> encrypted = encryptAll();
+        final byte[] corrupted = encrypted.get(57).clone();
+        corrupted[corrupted.length - 2] ^= 1;
+        encrypted.set(57, corrupted);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final BulkDecryptor decryptor = new BulkDecryptor(pool, secretKeys, ExampleKeys.PASSPHRASE);
+            try {
+                decryptor.decryptAll(encrypted);
+                fail("a bad message should fail the bulk decryption");
+            } catch (CryptographyException expected) {
+                // the pool is still usable afterwards
+            }
+            encrypted.set(57, PGP.encrypt(secrets.get(57), publicKey));
+            final List<byte[]> decrypted = decryptor.decryptAll(encrypted);
+            assertArrayEquals(secrets.get(57), decrypted.get(57));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<byte[]> encryptAll() throws CryptographyException {
+        return new BulkEncryptor(EncryptionProfile.AES_256_BINARY, publicKey).encryptAll(secrets);
+    }
+}
@@ -0,0 +1,50 @@
+package com.izettle.cryptography;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkEncryptorTest {
+
+    private PGPPublicKey publicKey;
+    private PGPSecretKeyRingCollection secretKeys;
+
+    @Before
+    public void setup() throws Exception {
+        publicKey = ExampleKeys.encryptionKey();
+        secretKeys = ExampleKeys.secretKeys();
+    }
+
+    @Test
+    public void itShouldKeepTheOrderOfThePayloads() throws Exception {
+        // well above the sequential threshold, so the work is split between threads
+        final List<byte[]> secrets = IntStream.range(0, 100)
+            .mapToObj(i -> ("payload " + i).getBytes(StandardCharsets.UTF_8))
+            .collect(Collectors.toList());
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final EncryptionProfile profile : new EncryptionProfile[]{
+                EncryptionProfile.LEGACY, EncryptionProfile.AES_256_BINARY}) {
+                final BulkEncryptor encryptor = new BulkEncryptor(pool, profile, publicKey);
+                final List<byte[]> encrypted = encryptor.encryptAll(secrets.stream());
+                assertEquals(secrets.size(), encrypted.size());
+                final BulkDecryptor decryptor = new BulkDecryptor(pool, secretKeys, ExampleKeys.PASSPHRASE);
+                final List<byte[]> decrypted = decryptor.decryptAll(encrypted);
+                for (int i = 0; i < secrets.size(); i++) {
+                    assertArrayEquals(secrets.get(i), decrypted.get(i));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
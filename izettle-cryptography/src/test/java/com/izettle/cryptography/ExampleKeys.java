@@ -0,0 +1,54 @@
+package com.izettle.cryptography;
+
+import com.izettle.java.ResourceUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+
+/**
+ * The example keyring of izettle-messaging: an RSA master key and an RSA encryption subkey, produced by gpg --gen-key.
+ */
+final class ExampleKeys {
+
+    static final String PASSPHRASE = "example";
+    static final String PUBLIC_KEY_RESOURCE = "pgp-example-public.key";
+    static final String SECRET_KEY_RESOURCE = "pgp-example-private.key";
+
+    private ExampleKeys() {
+    }
+
+    /**
+     * @return the armored public keyring
+     */
+    static byte[] publicKeyRing() throws IOException {
+        return ResourceUtils.getResourceAsBytes(PUBLIC_KEY_RESOURCE);
+    }
+
+    /**
+     * @return the armored secret keyring
+     */
+    static byte[] secretKeyRing() throws IOException {
+        return ResourceUtils.getResourceAsBytes(SECRET_KEY_RESOURCE);
+    }
+
+    /**
+     * @return the encryption subkey
+     */
+    static PGPPublicKey encryptionKey() throws IOException, CryptographyException {
+        return KeyUtil.findPublicKey(new ByteArrayInputStream(publicKeyRing()));
+    }
+
+    /**
+     * @return the parsed secret keyring
+     */
+    static PGPSecretKeyRingCollection secretKeys() throws IOException, PGPException {
+        return new PGPSecretKeyRingCollection(
+            PGPUtil.getDecoderStream(new ByteArrayInputStream(secretKeyRing())),
+            new BcKeyFingerprintCalculator()
+        );
+    }
+}
@@ -0,0 +1,63 @@
+package com.izettle.cryptography;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.junit.Test;
+
+public class HasherTest {
+
+    @Test
+    public void itShouldHashStringsAsTheirUtf8Bytes() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            // multi byte characters and surrogate pairs, crossing the internal buffer boundaries
+            sb.append("åäö€😀x");
+        }
+        String subject = sb.toString();
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(("prefix" + subject).getBytes("UTF-8"));
+
+        byte[] actual = Hasher.get(Hasher.Algorithm.SHA_256).update("prefix").update(subject).digest();
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void itShouldHashAllInputTypesAlike() throws Exception {
+        byte[] bytes = "cache key".getBytes(StandardCharsets.UTF_8);
+        for (Hasher.Algorithm algorithm : Hasher.Algorithm.values()) {
+            byte[] fromString = Hasher.get(algorithm).update("cache key").digest();
+            byte[] fromBytes = Hasher.get(algorithm).update(bytes).digest();
+            byte[] fromBuffer = Hasher.get(algorithm).update(ByteBuffer.wrap(bytes)).digest();
+            byte[] fromDirectBuffer = Hasher.get(algorithm)
+                .update((ByteBuffer) ByteBuffer.allocateDirect(bytes.length).put(bytes).flip())
+                .digest();
+            byte[] fromStream = Hasher.get(algorithm).update(new ByteArrayInputStream(bytes)).digest();
+            assertArrayEquals(fromString, fromBytes);
+            assertArrayEquals(fromString, fromBuffer);
+            assertArrayEquals(fromString, fromDirectBuffer);
+            assertArrayEquals(fromString, fromStream);
+        }
+    }
+
+    @Test
+    public void itShouldCalculateFnv1a() {
+        assertEquals(0xcbf29ce484222325L, Hasher.get(Hasher.Algorithm.FNV_1A_64).digestToLong());
+        assertEquals(0xaf63dc4c8601ec8cL, Hasher.get(Hasher.Algorithm.FNV_1A_64).update("a").digestToLong());
+        assertEquals(0x85944171f73967e8L, Hasher.get(Hasher.Algorithm.FNV_1A_64).update("foobar").digestToLong());
+    }
+
+    @Test
+    public void itShouldProduceTheSameMd5HashAsBefore() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update("one".getBytes("utf-8"));
+        md.update("three".getBytes("utf-8"));
+        String expected = com.izettle.java.Base64.byteArrToB64String(md.digest());
+
+        assertEquals(expected, HashMD5.digestStringsToB64Hash("one", " ", null, "three"));
+    }
+}
@@ -0,0 +1,225 @@
+package com.izettle.cryptography;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRingGenerator;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyEncryptorBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyRegistryTest {
+
+    private static final String PASSPHRASE = ExampleKeys.PASSPHRASE;
+    private static final long RELOAD_INTERVAL_MILLIS = 50;
+
+    private byte[] publicKeys;
+    private byte[] secretKeys;
+
+    @Before
+    public void setup() throws Exception {
+        publicKeys = ExampleKeys.publicKeyRing();
+        secretKeys = ExampleKeys.secretKeyRing();
+    }
+
+    @Test
+    public void itShouldFindPublicKeysByIdAndFingerprint() throws Exception {
+        final KeyRegistry registry = KeyRegistry.of(publicKeys, null);
+        final PGPPublicKey encryptionKey = registry.getEncryptionKey();
+        assertEquals(KeyUtil.findPublicKey(new ByteArrayInputStream(publicKeys)).getKeyID(), encryptionKey.getKeyID());
+        assertSame(encryptionKey, registry.findPublicKey(encryptionKey.getKeyID()));
+        assertSame(encryptionKey, registry.findPublicKey(encryptionKey.getFingerprint()));
+        assertNull(registry.findPublicKey(encryptionKey.getKeyID() + 1));
+        assertNull(registry.findSecretKey(encryptionKey.getKeyID()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void itShouldRefuseToDecryptWithoutSecretKeys() throws Exception {
+        final KeyRegistry registry = KeyRegistry.of(publicKeys, null);
+        final byte[] encrypted = PGP.encrypt(new byte[1], registry.getEncryptionKey());
+        PGP.decrypt(new ByteArrayInputStream(encrypted), new ByteArrayOutputStream(), registry, PASSPHRASE);
+    }
+
+    @Test(expected = CryptographyException.class)
+    public void itShouldFailOnUnparsableKeys() throws Exception {
+        KeyRegistry.of("not a keyring".getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    @Test
+    public void itShouldExtractEachPrivateKeyOnce() throws Exception {
+        final KeyRegistry registry = KeyRegistry.of(publicKeys, secretKeys);
+        final long keyId = registry.getEncryptionKey().getKeyID();
+        final Object decryptor = registry.findDecryptor(keyId, PASSPHRASE);
+        assertSame(decryptor, registry.findDecryptor(keyId, PASSPHRASE));
+        assertNull(registry.findDecryptor(keyId + 1, PASSPHRASE));
+        try {
+            registry.findDecryptor(keyId, "wrong");
+            fail("a cached decryptor should not be handed out for a wrong passphrase");
+        } catch (RuntimeException expected) {
+            // as without the registry
+        }
+        assertSame(decryptor, registry.findDecryptor(keyId, PASSPHRASE));
+    }
+
+    @Test
+    public void itShouldNotKeepAnythingForAWrongPassphrase() throws Exception {
+        final KeyRegistry registry = KeyRegistry.of(publicKeys, secretKeys);
+        final long keyId = registry.getEncryptionKey().getKeyID();
+        try {
+            registry.findDecryptor(keyId, "wrong");
+            fail("a wrong passphrase should not unlock the key");
+        } catch (RuntimeException expected) {
+            // nothing is kept for the key
+        }
+        assertSame(registry.findDecryptor(keyId, PASSPHRASE), registry.findDecryptor(keyId, PASSPHRASE));
+    }
+
+    @Test
+    public void itShouldReloadChangedFiles() throws Exception {
+        final Path directory = Files.createTempDirectory("keys");
+        final Path publicKeyFile = directory.resolve("public.key");
+        final Path secretKeyFile = directory.resolve("secret.key");
+        try {
+            write(publicKeyFile, publicKeys, 1);
+            write(secretKeyFile, secretKeys, 1);
+            final KeyRegistry registry = KeyRegistry.fromFiles(
+                publicKeyFile,
+                secretKeyFile,
+                RELOAD_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS
+            );
+            final PGPPublicKey oldKey = registry.getEncryptionKey();
+            final byte[] oldMessage = PGP.encrypt("old".getBytes(StandardCharsets.UTF_8), oldKey);
+            assertArrayEquals("old".getBytes(StandardCharsets.UTF_8), decrypt(registry, oldMessage));
+
+            final PGPKeyRingGenerator generated = generateKeyRing("new@example.com", "other");
+            write(publicKeyFile, generated.generatePublicKeyRing().getEncoded(), 2);
+            write(secretKeyFile, generated.generateSecretKeyRing().getEncoded(), 2);
+            waitForReload();
+
+            final PGPPublicKey newKey = registry.getEncryptionKey();
+            assertEquals(generated.generatePublicKeyRing().getPublicKey().getKeyID(), newKey.getKeyID());
+            assertSame(newKey, registry.findPublicKey(newKey.getFingerprint()));
+            assertNull(registry.findPublicKey(oldKey.getKeyID()));
+            final byte[] newMessage = PGP.encrypt("new".getBytes(StandardCharsets.UTF_8), newKey);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PGP.decrypt(new ByteArrayInputStream(newMessage), out, registry, "other");
+            assertArrayEquals("new".getBytes(StandardCharsets.UTF_8), out.toByteArray());
+            try {
+                decrypt(registry, oldMessage);
+                fail("the private key extracted before the reload should be gone");
+            } catch (IllegalArgumentException expected) {
+                // secret key for message not found
+            }
+        } finally {
+            delete(publicKeyFile, secretKeyFile, directory);
+        }
+    }
+
+    @Test
+    public void itShouldKeepTheKeysWhenAReloadFails() throws Exception {
+        final Path directory = Files.createTempDirectory("keys");
+        final Path publicKeyFile = directory.resolve("public.key");
+        final Path secretKeyFile = directory.resolve("secret.key");
+        try {
+            write(publicKeyFile, publicKeys, 1);
+            write(secretKeyFile, secretKeys, 1);
+            final KeyRegistry registry = KeyRegistry.fromFiles(
+                publicKeyFile,
+                secretKeyFile,
+                RELOAD_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS
+            );
+            final PGPPublicKey key = registry.getEncryptionKey();
+            final byte[] message = PGP.encrypt("secret".getBytes(StandardCharsets.UTF_8), key);
+
+            // a half written file
+            write(publicKeyFile, new byte[]{publicKeys[0], publicKeys[1], publicKeys[2]}, 2);
+            waitForReload();
+            assertSame(key, registry.getEncryptionKey());
+            assertArrayEquals("secret".getBytes(StandardCharsets.UTF_8), decrypt(registry, message));
+
+            // rewritten in full, the same keys are parsed again, and their private keys extracted again
+            final Object decryptor = registry.findDecryptor(key.getKeyID(), PASSPHRASE);
+            write(publicKeyFile, publicKeys, 3);
+            waitForReload();
+            assertNotNull(registry.findPublicKey(key.getKeyID()));
+            assertNotSame(key, registry.getEncryptionKey());
+            assertNotSame(decryptor, registry.findDecryptor(key.getKeyID(), PASSPHRASE));
+            assertArrayEquals("secret".getBytes(StandardCharsets.UTF_8), decrypt(registry, message));
+        } finally {
+            delete(publicKeyFile, secretKeyFile, directory);
+        }
+    }
+
+    private static byte[] decrypt(final KeyRegistry registry, final byte[] message) throws CryptographyException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PGP.decrypt(new ByteArrayInputStream(message), out, registry, PASSPHRASE);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the file with a modification time of its own, as a rewrite within the resolution of the file system
+     * clock would otherwise go unnoticed.
+     */
+    private static void write(final Path file, final byte[] content, final int version) throws Exception {
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(TimeUnit.DAYS.toMillis(version)));
+    }
+
+    private static void waitForReload() throws InterruptedException {
+        Thread.sleep(2 * RELOAD_INTERVAL_MILLIS);
+    }
+
+    private static void delete(final Path... paths) throws Exception {
+        for (final Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static PGPKeyRingGenerator generateKeyRing(final String id, final String passphrase) throws Exception {
+        final KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA", PGP.PROVIDER);
+        rsa.initialize(1024);
+        final PGPKeyPair keyPair =
+            new JcaPGPKeyPair(PublicKeyAlgorithmTags.RSA_GENERAL, rsa.generateKeyPair(), new Date());
+        final PGPDigestCalculator sha1 = new JcaPGPDigestCalculatorProviderBuilder()
+            .build()
+            .get(HashAlgorithmTags.SHA1);
+        return new PGPKeyRingGenerator(
+            PGPSignature.POSITIVE_CERTIFICATION,
+            keyPair,
+            id,
+            sha1,
+            null,
+            null,
+            new JcaPGPContentSignerBuilder(PublicKeyAlgorithmTags.RSA_GENERAL, HashAlgorithmTags.SHA256),
+            new JcePBESecretKeyEncryptorBuilder(SymmetricKeyAlgorithmTags.AES_256, sha1)
+                .setProvider(PGP.PROVIDER)
+                .build(passphrase.toCharArray())
+        );
+    }
+}
@@ -0,0 +1,212 @@
+package com.izettle.cryptography;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PGPTest {
+
+    private static final EncryptionProfile[] PROFILES = {EncryptionProfile.LEGACY, EncryptionProfile.AES_256_BINARY};
+
+    private byte[] secretKeyRing;
+    private PGPSecretKeyRingCollection secretKeys;
+    private PGPPublicKey publicKey;
+    private KeyRegistry registry;
+
+    @Before
+    public void setup() throws Exception {
+        secretKeyRing = ExampleKeys.secretKeyRing();
+        secretKeys = ExampleKeys.secretKeys();
+        publicKey = ExampleKeys.encryptionKey();
+        registry = KeyRegistry.fromResources(ExampleKeys.PUBLIC_KEY_RESOURCE, ExampleKeys.SECRET_KEY_RESOURCE);
+    }
+
+    @Test
+    public void itShouldRoundTripStreamsAcrossPacketBoundaries() throws Exception {
+        for (final EncryptionProfile profile : PROFILES) {
+            // empty, exactly one partial packet, and several packets plus a remainder
+            for (final int size : new int[]{0, 1 << 16, 3 * (1 << 16) + 17}) {
+                final byte[] secret = randomBytes(size);
+                final byte[] encrypted = encryptStream(secret, profile);
+                assertTrue(profile.isArmored() == new String(encrypted, "US-ASCII").startsWith("-----BEGIN PGP"));
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                PGP.decrypt(
+                    new ByteArrayInputStream(encrypted),
+                    out,
+                    new ByteArrayInputStream(secretKeyRing),
+                    ExampleKeys.PASSPHRASE
+                );
+                assertArrayEquals(secret, out.toByteArray());
+
+                out.reset();
+                PGP.decrypt(new ByteArrayInputStream(encrypted), out, secretKeys, ExampleKeys.PASSPHRASE);
+                assertArrayEquals(secret, out.toByteArray());
+
+                out.reset();
+                PGP.decrypt(new ByteArrayInputStream(encrypted), out, registry, ExampleKeys.PASSPHRASE);
+                assertArrayEquals(secret, out.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void itShouldDecryptStreamsEncryptedAsByteArrays() throws Exception {
+        for (final EncryptionProfile profile : PROFILES) {
+            final byte[] secret = randomBytes(100000);
+            final byte[] encrypted = PGP.encrypt(secret, profile, publicKey);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PGP.decrypt(new ByteArrayInputStream(encrypted), out, secretKeys, ExampleKeys.PASSPHRASE);
+            assertArrayEquals(secret, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void itShouldDecryptAsByteArraysWhatWasEncryptedAsStreams() throws Exception {
+        for (final EncryptionProfile profile : PROFILES) {
+            final byte[] secret = randomBytes(100000);
+            final byte[] encrypted = encryptStream(secret, profile);
+            assertArrayEquals(
+                secret,
+                PGP.decrypt(encrypted, new ByteArrayInputStream(secretKeyRing), ExampleKeys.PASSPHRASE)
+            );
+        }
+    }
+
+    @Test(expected = CryptographyException.class)
+    public void itShouldFailOnACorruptedIntegrityPacket() throws Exception {
+        final byte[] encrypted = encryptStream(randomBytes(1000), EncryptionProfile.AES_256_BINARY);
+        // the last bytes are the encrypted modification detection code
+        encrypted[encrypted.length - 2] ^= 0x01;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PGP.decrypt(new ByteArrayInputStream(encrypted), out, secretKeys, ExampleKeys.PASSPHRASE);
+    }
+
+    @Test
+    public void itShouldEncryptDifferentlyEachTimeAnEncryptorIsReused() throws Exception {
+        for (final EncryptionProfile profile : PROFILES) {
+            final PGP.Encryptor encryptor = new PGP.Encryptor(profile, publicKey);
+            final byte[] secret = randomBytes(1000);
+            final Set<String> seen = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                final byte[] encrypted = encryptor.encrypt(secret);
+                // a new session key each time
+                assertTrue(seen.add(Arrays.toString(encrypted)));
+                assertArrayEquals(
+                    secret,
+                    PGP.decrypt(encrypted, new ByteArrayInputStream(secretKeyRing), ExampleKeys.PASSPHRASE)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void itShouldVerifySignedMessagesAndReturnTheSigner() throws Exception {
+        for (final EncryptionProfile profile : PROFILES) {
+            for (final int size : new int[]{0, 1 << 16, 3 * (1 << 16) + 17}) {
+                final byte[] secret = randomBytes(size);
+                final byte[] signed = signAndEncrypt(secret, profile);
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final PGPPublicKey signer =
+                    PGP.decryptAndVerify(new ByteArrayInputStream(signed), out, registry, ExampleKeys.PASSPHRASE);
+                assertEquals(signingKey().getKeyID(), signer.getKeyID());
+                assertArrayEquals(secret, out.toByteArray());
+
+                out.reset();
+                assertEquals(signingKey().getKeyID(), PGP.decryptAndVerify(
+                    new ByteArrayInputStream(signed), out, secretKeys, ExampleKeys.PASSPHRASE, registry).getKeyID());
+                assertArrayEquals(secret, out.toByteArray());
+
+                // signed messages are still readable without verifying
+                assertArrayEquals(
+                    secret,
+                    PGP.decrypt(signed, new ByteArrayInputStream(secretKeyRing), ExampleKeys.PASSPHRASE)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void itShouldRejectTamperedSignedMessages() throws Exception {
+        final byte[] signed = signAndEncrypt(randomBytes(100000), EncryptionProfile.AES_256_BINARY);
+        // within the literal data, which the signature covers
+        signed[signed.length / 2] ^= 0x01;
+        assertDecryptAndVerifyFails(signed, registry, "message failed signature verification.");
+    }
+
+    @Test
+    public void itShouldRejectSignedMessagesOfUnknownSigners() throws Exception {
+        final byte[] signed = signAndEncrypt(randomBytes(1000), EncryptionProfile.AES_256_BINARY);
+        final KeyRegistry withoutPublicKeys = KeyRegistry.of(null, secretKeyRing);
+        assertDecryptAndVerifyFails(signed, withoutPublicKeys,
+            "public key for signer " + Long.toHexString(signingKey().getKeyID()) + " not found.");
+    }
+
+    @Test
+    public void itShouldRejectUnsignedMessagesWhenVerifying() throws Exception {
+        final byte[] encrypted = encryptStream(randomBytes(1000), EncryptionProfile.AES_256_BINARY);
+        assertDecryptAndVerifyFails(encrypted, registry, "encrypted message is not signed.");
+    }
+
+    private static void assertDecryptAndVerifyFails(
+        final byte[] data,
+        final KeyRegistry keys,
+        final String reason
+    ) {
+        try {
+            PGP.decryptAndVerify(
+                new ByteArrayInputStream(data),
+                new ByteArrayOutputStream(),
+                keys,
+                ExampleKeys.PASSPHRASE
+            );
+            fail("decryptAndVerify should fail: " + reason);
+        } catch (CryptographyException e) {
+            assertEquals(reason, e.getCause().getMessage());
+        }
+    }
+
+    private byte[] signAndEncrypt(final byte[] secret, final EncryptionProfile profile) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PGP.signAndEncrypt(
+            new ByteArrayInputStream(secret),
+            out,
+            profile,
+            PGP.extractPrivateKey(signingKey(), ExampleKeys.PASSPHRASE),
+            publicKey
+        );
+        return out.toByteArray();
+    }
+
+    private PGPSecretKey signingKey() {
+        // the master key of the example keyring, its subkey being the encryption key
+        return ((PGPSecretKeyRing) secretKeys.getKeyRings().next()).getSecretKey();
+    }
+
+    private byte[] encryptStream(final byte[] secret, final EncryptionProfile profile) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PGP.encrypt(new ByteArrayInputStream(secret), out, profile, publicKey);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
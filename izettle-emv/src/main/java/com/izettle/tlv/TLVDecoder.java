@@ -1,16 +1,16 @@
 package com.izettle.tlv;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 /**
  * ISO 7816 / ASN.1 compliantish decoder.
  */
 public class TLVDecoder {
 
-    private final Set<Integer> expandTags = new HashSet<>();
+    private int[] expandTags = new int[0];
     private boolean strictMode;
 
     public TLVDecoder() {
@@ -25,102 +25,250 @@ public class TLVDecoder {
     }
 
     public void addExpandTag(byte[] tag) throws TLVException {
-        expandTags.add(TLVUtils.tagToInt(tag));
+        int tagAsInteger = TLVUtils.tagToInt(tag);
+        if (!isExpandTag(tagAsInteger)) {
+            expandTags = Arrays.copyOf(expandTags, expandTags.length + 1);
+            expandTags[expandTags.length - 1] = tagAsInteger;
+        }
+    }
+
+    private boolean isExpandTag(int tagAsInteger) {
+        // Only a handful of tags are ever expanded, so a scan beats hashing a boxed integer per tag
+        for (int expandTag : expandTags) {
+            if (expandTag == tagAsInteger) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public List<TLV> decode(byte[] in) throws TLVException {
 
         List<TLV> out = new ArrayList<>();
-        helper(in, 0, out);
+        decode(in, 0, in.length, (input, tagOffset, lengthOffset, valueOffset, valueLength, tag, depth) -> {
+            out.add(new TLV(
+                Arrays.copyOfRange(input, tagOffset, lengthOffset),
+                Arrays.copyOfRange(input, lengthOffset, valueOffset),
+                Arrays.copyOfRange(input, valueOffset, valueOffset + valueLength)));
+            return true;
+        });
         return out;
     }
 
-    private void helper(byte[] input, int offset, List<TLV> tags) throws TLVException {
+    /**
+     * Decodes the same TLVs as {@link #decode(byte[])}, as views of the input instead of copies of their tag, length
+     * and value. The input must not be changed while the views are in use.
+     */
+    public List<TLVView> decodeViews(byte[] in) throws TLVException {
 
-        if (!strictMode) {
-            // Remove leading zeroes
-            while (offset < input.length && 0 == input[offset]) {
-                offset++;
-            }
-        }
+        return decodeViews(in, 0, in.length);
+    }
 
-        if (offset == input.length) {
-            return;
-        }
+    /**
+     * Decodes the remaining bytes of the buffer like {@link #decodeViews(byte[])}, without changing its position. The
+     * views share the array backing the buffer, if it has an accessible one, otherwise the bytes are copied once.
+     */
+    public List<TLVView> decodeViews(ByteBuffer in) throws TLVException {
 
-        // Parse tag
-        byte[] tag = {input[offset]};
-        if ((input[offset] & 0x1f) == 0x1f) {
-            /*
-             * If first byte of a tag has lowest 5 bits set, it's a multi-byte
-             * tag. Subsequent tag bytes have 0x80 bit set.
-             */
-            do {
-                if (offset + 1 >= input.length) {
-                    throw new TLVException("Malformed tag, exceeds buffer size: " + Hex.toHexString(tag));
-                }
-                tag = ArrayUtils.concat(tag, new byte[]{input[++offset]});
-            } while ((input[offset] & 0x80) == 0x80);
+        if (in.hasArray()) {
+            int start = in.arrayOffset() + in.position();
+            return decodeViews(in.array(), start, start + in.remaining());
         }
+        return decodeViews(copyRemaining(in));
+    }
 
-        // Validate tag
-        TLVUtils.validateTag(tag);
+    private List<TLVView> decodeViews(byte[] in, int start, int end) throws TLVException {
 
-        if (offset + 1 >= input.length) {
-            throw new TLVException("Malformed data: Tag, but no length present");
-        }
+        List<TLVView> out = new ArrayList<>();
+        decode(in, start, end, (input, tagOffset, lengthOffset, valueOffset, valueLength, tag, depth) -> {
+            out.add(new TLVView(input, start, tagOffset, lengthOffset, valueOffset, valueLength, tag));
+            return true;
+        });
+        return out;
+    }
 
-        int length = input[++offset];
-        byte[] lengthEncoded;
+    /**
+     * Decodes the same TLVs as {@link #decodeViews(byte[])}, along with the expand tags, into an index by tag.
+     */
+    public TLVIndex decodeIndex(byte[] in) throws TLVException {
+
+        return decodeIndex(in, 0, in.length);
+    }
 
-        if ((length & 0x80) == 0x80) {
+    /**
+     * Decodes the remaining bytes of the buffer like {@link #decodeIndex(byte[])}, without changing its position,
+     * sharing the array backing it like {@link #decodeViews(ByteBuffer)}.
+     */
+    public TLVIndex decodeIndex(ByteBuffer in) throws TLVException {
+
+        if (in.hasArray()) {
+            int start = in.arrayOffset() + in.position();
+            return decodeIndex(in.array(), start, start + in.remaining());
+        }
+        return decodeIndex(copyRemaining(in));
+    }
 
-            int numBytesForLength = length ^ (byte) 0x80;
+    private TLVIndex decodeIndex(byte[] in, int start, int end) throws TLVException {
 
-            // Save the actual encoded length
-            lengthEncoded = new byte[numBytesForLength + 1];
-            if (numBytesForLength + offset > input.length) {
-                throw new TLVException("Malformed length, first length byte indiciates length that doesn't fit");
+        TLVIndex.Builder index = new TLVIndex.Builder();
+        decode(in, start, end, new Handler() {
+            @Override
+            public boolean onTag(byte[] input, int tagOffset, int lengthOffset, int valueOffset, int valueLength,
+                int tag, int depth) {
+                index.add(new TLVView(input, start, tagOffset, lengthOffset, valueOffset, valueLength, tag));
+                return true;
             }
-            System.arraycopy(input, offset, lengthEncoded, 0, numBytesForLength + 1);
 
-            length = 0;
-            while (numBytesForLength-- > 0) {
-                length |= (input[++offset] & 0xff) << (numBytesForLength * 8);
+            @Override
+            public void onExpandTag(byte[] input, int tagOffset, int lengthOffset, int valueOffset, int valueLength,
+                int tag, int depth) {
+                index.add(new TLVView(input, start, tagOffset, lengthOffset, valueOffset, valueLength, tag));
             }
+        });
+        return index.build();
+    }
+
+    /**
+     * Decodes the same TLVs as {@link #decode(byte[])}, handing each one to the visitor as soon as it is decoded
+     * instead of collecting them. Malformed data is only found when decoding reaches it, so the visitor may already
+     * have been given the TLVs before it when the exception is thrown, and it's not found at all if the visitor
+     * stops decoding before it.
+     */
+    public void decode(byte[] in, TLVVisitor visitor) throws TLVException {
+
+        decode(in, 0, in.length, (input, tagOffset, lengthOffset, valueOffset, valueLength, tag, depth) ->
+            visitor.onTag(tag, valueOffset, valueLength, depth));
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer like {@link #decode(byte[], TLVVisitor)}, without changing its
+     * position. Offsets are from the position of the buffer.
+     */
+    public void decode(ByteBuffer in, TLVVisitor visitor) throws TLVException {
+
+        if (in.hasArray()) {
+            int start = in.arrayOffset() + in.position();
+            decode(in.array(), start, start + in.remaining(),
+                (input, tagOffset, lengthOffset, valueOffset, valueLength, tag, depth) ->
+                    visitor.onTag(tag, valueOffset - start, valueLength, depth));
         } else {
-            lengthEncoded = new byte[]{(byte) length};
+            decode(copyRemaining(in), visitor);
         }
+    }
 
-        ++offset; // Now positioned at first data byte
+    private static byte[] copyRemaining(ByteBuffer in) {
+        byte[] copy = new byte[in.remaining()];
+        in.duplicate().get(copy);
+        return copy;
+    }
 
-        if (length < 0) {
-            throw new TLVException("Length of tag " + Hex.toHexString(tag) + " is negative");
-        }
-        if (length > input.length - offset) {
-            throw new TLVException("Tag " + Hex.toHexString(tag) + " exceeds data length");
+    private interface Handler {
+        boolean onTag(byte[] input, int tagOffset, int lengthOffset, int valueOffset, int valueLength, int tag,
+            int depth) throws TLVException;
+
+        /**
+         * Called for an expand tag before the TLVs in its value, at the depth of the expand tag itself.
+         */
+        default void onExpandTag(byte[] input, int tagOffset, int lengthOffset, int valueOffset, int valueLength,
+            int tag, int depth) {
         }
+    }
+
+    /**
+     * Decodes the input between start and end in a single loop. The values of expand tags are decoded in place, with
+     * the end of each expanded value kept on a stack of its own rather than on the call stack, so neither long nor
+     * deeply nested data can overflow it.
+     */
+    private void decode(byte[] input, int start, int end, Handler handler) throws TLVException {
 
-        byte[] value = new byte[length];
-        System.arraycopy(input, offset, value, 0, length);
+        int[] ends = new int[8];
+        int depth = 0;
+        ends[0] = end;
+        int offset = start;
 
-        int tagAsInteger = TLVUtils.tagToInt(tag);
+        while (true) {
+            if (!strictMode) {
+                // Remove leading zeroes
+                while (offset < end && 0 == input[offset]) {
+                    offset++;
+                }
+            }
 
-        if (expandTags.contains(tagAsInteger)) {
-            if (offset + value.length > input.length) {
-                throw new TLVException("Expand tag " + Hex.toHexString(tag) + " is invalid, exceeds data length");
+            if (offset == end) {
+                if (depth == 0) {
+                    return;
+                }
+                // Done with an expanded value, go on with the data around it
+                end = ends[--depth];
+                continue;
             }
-            helper(value, 0, tags);
-            if (offset + length < input.length) {
-                // There are more tags after the expander tag.
-                helper(input, offset + length, tags);
+
+            // Parse tag
+            int tagOffset = offset;
+            if ((input[offset] & 0x1f) == 0x1f) {
+                /*
+                 * If first byte of a tag has lowest 5 bits set, it's a multi-byte
+                 * tag. Subsequent tag bytes have 0x80 bit set.
+                 */
+                do {
+                    if (offset + 1 >= end) {
+                        throw new TLVException("Malformed tag, exceeds buffer size: "
+                            + Hex.toHexString(Arrays.copyOfRange(input, tagOffset, offset + 1)));
+                    }
+                    offset++;
+                } while ((input[offset] & 0x80) == 0x80);
             }
-        } else {
-            tags.add(new TLV(tag, lengthEncoded, value));
-            if (offset + length == input.length) {
-                // We are finished
+
+            // Validate tag
+            TLVUtils.validateTag(input, tagOffset, offset + 1 - tagOffset);
+
+            if (offset + 1 >= end) {
+                throw new TLVException("Malformed data: Tag, but no length present");
+            }
+
+            int lengthOffset = ++offset;
+            int length = input[offset];
+
+            if ((length & 0x80) == 0x80) {
+
+                int numBytesForLength = length ^ (byte) 0x80;
+
+                if (numBytesForLength + offset >= end) {
+                    throw new TLVException("Malformed length, first length byte indiciates length that doesn't fit");
+                }
+
+                length = 0;
+                while (numBytesForLength-- > 0) {
+                    length |= (input[++offset] & 0xff) << (numBytesForLength * 8);
+                }
+            }
+
+            ++offset; // Now positioned at first data byte
+
+            if (length < 0) {
+                throw new TLVException("Length of tag " + Hex.toHexString(Arrays.copyOfRange(input, tagOffset,
+                    lengthOffset)) + " is negative");
+            }
+            if (length > end - offset) {
+                throw new TLVException("Tag " + Hex.toHexString(Arrays.copyOfRange(input, tagOffset, lengthOffset))
+                    + " exceeds data length");
+            }
+
+            int tagAsInteger = TLVUtils.tagToInt(input, tagOffset, lengthOffset - tagOffset);
+
+            if (isExpandTag(tagAsInteger)) {
+                handler.onExpandTag(input, tagOffset, lengthOffset, offset, length, tagAsInteger, depth);
+                // Decode the value next, and the data after it once done
+                if (++depth == ends.length) {
+                    ends = Arrays.copyOf(ends, 2 * ends.length);
+                }
+                ends[depth] = offset + length;
+                end = ends[depth];
             } else {
-                helper(input, offset + length, tags);
+                if (!handler.onTag(input, tagOffset, lengthOffset, offset, length, tagAsInteger, depth)) {
+                    return;
+                }
+                offset += length;
             }
         }
     }
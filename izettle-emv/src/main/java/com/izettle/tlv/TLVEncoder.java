@@ -34,34 +34,45 @@ public class TLVEncoder {
             throw new TLVException("Length less than zero");
         }
 
-        byte[] out;
+        byte[] out = new byte[lengthSize(l)];
+        encodeLength(l, out, 0);
+        return out;
+    }
 
+    /**
+     * @param l Length to encode, not less than zero
+     * @return The number of bytes of the encoded length field, from 1 to 5
+     */
+    static int lengthSize(int l) {
         if (l > 0x00FFFFFF) {
-            out = new byte[5];
-            out[0] = (byte) 0x84;
-            out[1] = (byte) ((l >> 24) & 0xff);
-            out[2] = (byte) ((l >> 16) & 0xff);
-            out[3] = (byte) ((l >> 8) & 0xff);
-            out[4] = (byte) (l & 0xff);
+            return 5;
         } else if (l > 0x0000FFFF) {
-            out = new byte[4];
-            out[0] = (byte) 0x83;
-            out[1] = (byte) ((l >> 16) & 0xff);
-            out[2] = (byte) ((l >> 8) & 0xff);
-            out[3] = (byte) (l & 0xff);
+            return 4;
         } else if (l > 0x000000FF) {
-            out = new byte[3];
-            out[0] = (byte) 0x82;
-            out[1] = (byte) ((l >> 8) & 0xff);
-            out[2] = (byte) (l & 0xff);
+            return 3;
         } else if (l > 0x0000007F) {
-            out = new byte[2];
-            out[0] = (byte) 0x81;
-            out[1] = (byte) (l & 0xff);
-        } else {
-            out = new byte[]{(byte) l};
+            return 2;
         }
+        return 1;
+    }
 
-        return out;
+    /**
+     * Same as {@link #encodeLength(int)}, writing the length field into a buffer, such as one being encoded into.
+     * @param l Length to encode, not less than zero
+     * @param out Buffer to write into, with room for {@link #lengthSize(int)} bytes from the offset
+     * @param offset Where to write the length field
+     * @return The number of bytes written
+     */
+    static int encodeLength(int l, byte[] out, int offset) {
+        int size = lengthSize(l);
+        if (size == 1) {
+            out[offset] = (byte) l;
+            return size;
+        }
+        out[offset] = (byte) (0x80 | (size - 1));
+        for (int i = 1; i < size; i++) {
+            out[offset + i] = (byte) ((l >> (8 * (size - i - 1))) & 0xff);
+        }
+        return size;
     }
 }
@@ -0,0 +1,163 @@
+package com.izettle.tlv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The TLVs of decoded data by tag, made by {@link TLVDecoder#decodeIndex(byte[])}, for looking up tags such as 9F02,
+ * 5A or 57 without going through all TLVs and comparing copies of their tags. The expand tags are kept too, before the
+ * TLVs in their values, so both a template and the tags within it can be looked up. A tag found several times gives
+ * all of its TLVs, in the order of the data.
+ * <p>
+ * The tags are kept in an open addressing table of ints, giving the first TLV of the tag, and each TLV links to the
+ * next one of the same tag.
+ */
+public final class TLVIndex {
+
+    private static final int NONE = -1;
+
+    private final TLVView[] tlvs;
+    private final int[] nextOfTag;
+    private final int[] tags;
+    private final int[] firstOfTag;
+
+    private TLVIndex(TLVView[] tlvs, int[] nextOfTag, int[] tags, int[] firstOfTag) {
+        this.tlvs = tlvs;
+        this.nextOfTag = nextOfTag;
+        this.tags = tags;
+        this.firstOfTag = firstOfTag;
+    }
+
+    /**
+     * @param tag the tag as an integer, such as 0x9F02
+     * @return the first TLV of the tag, or null if there is none
+     */
+    public TLVView get(int tag) {
+        int i = firstOfTag[slot(tags, firstOfTag, tag)];
+        return i == NONE ? null : tlvs[i];
+    }
+
+    /**
+     * @param tag the tag as an integer, such as 0x9F02
+     * @return a copy of the value of the first TLV of the tag, or null if there is none
+     */
+    public byte[] getValue(int tag) {
+        TLVView tlv = get(tag);
+        return tlv == null ? null : tlv.getValue();
+    }
+
+    /**
+     * @param tag the tag as an integer, such as 0x9F02
+     * @return whether the tag was found
+     */
+    public boolean contains(int tag) {
+        return firstOfTag[slot(tags, firstOfTag, tag)] != NONE;
+    }
+
+    /**
+     * @param tag the tag as an integer, such as 0x9F02
+     * @return all TLVs of the tag in the order of the data, empty if there are none
+     */
+    public List<TLVView> getAll(int tag) {
+        int i = firstOfTag[slot(tags, firstOfTag, tag)];
+        if (i == NONE) {
+            return Collections.emptyList();
+        }
+        List<TLVView> all = new ArrayList<>(1);
+        for (; i != NONE; i = nextOfTag[i]) {
+            all.add(tlvs[i]);
+        }
+        return all;
+    }
+
+    /**
+     * @return all TLVs in the order of the data, including the expand tags
+     */
+    public List<TLVView> getTLVs() {
+        return Collections.unmodifiableList(Arrays.asList(tlvs));
+    }
+
+    public int size() {
+        return tlvs.length;
+    }
+
+    /**
+     * Finds the slot of a tag by linear probing, either the one holding it or the empty one where it would go. The
+     * table is never more than half full, so there always is an empty slot.
+     */
+    private static int slot(int[] tags, int[] firstOfTag, int tag) {
+        int mask = tags.length - 1;
+        int hash = tag * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (firstOfTag[slot] != NONE && tags[slot] != tag) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Adds the TLVs as they are decoded.
+     */
+    static final class Builder {
+
+        private TLVView[] tlvs = new TLVView[16];
+        private int[] nextOfTag = new int[16];
+        private int[] lastOfTag = new int[32];
+        private int[] tags = new int[32];
+        private int[] firstOfTag = newSlots(32);
+        private int size;
+        private int tagCount;
+
+        void add(TLVView tlv) {
+            if (size == tlvs.length) {
+                tlvs = Arrays.copyOf(tlvs, 2 * size);
+                nextOfTag = Arrays.copyOf(nextOfTag, 2 * size);
+            }
+            tlvs[size] = tlv;
+            nextOfTag[size] = NONE;
+
+            int slot = slot(tags, firstOfTag, tlv.getTagAsInt());
+            if (firstOfTag[slot] == NONE) {
+                tags[slot] = tlv.getTagAsInt();
+                firstOfTag[slot] = size;
+                lastOfTag[slot] = size;
+                if (2 * ++tagCount > tags.length) {
+                    rehash();
+                }
+            } else {
+                nextOfTag[lastOfTag[slot]] = size;
+                lastOfTag[slot] = size;
+            }
+            size++;
+        }
+
+        private void rehash() {
+            int[] oldTags = tags;
+            int[] oldFirstOfTag = firstOfTag;
+            int[] oldLastOfTag = lastOfTag;
+            tags = new int[2 * oldTags.length];
+            firstOfTag = newSlots(tags.length);
+            lastOfTag = new int[tags.length];
+            for (int i = 0; i < oldTags.length; i++) {
+                if (oldFirstOfTag[i] != NONE) {
+                    int slot = slot(tags, firstOfTag, oldTags[i]);
+                    tags[slot] = oldTags[i];
+                    firstOfTag[slot] = oldFirstOfTag[i];
+                    lastOfTag[slot] = oldLastOfTag[i];
+                }
+            }
+        }
+
+        private static int[] newSlots(int length) {
+            int[] slots = new int[length];
+            Arrays.fill(slots, NONE);
+            return slots;
+        }
+
+        TLVIndex build() {
+            return new TLVIndex(Arrays.copyOf(tlvs, size), nextOfTag, tags, firstOfTag);
+        }
+    }
+}
@@ -7,22 +7,44 @@ public class TLVUtils {
 
     static int tagToInt(byte[] tag) throws TLVException {
 
-        validateTag(tag);
+        if (tag == null) {
+            throw new TLVException("Malformed tag: empty");
+        }
+        return tagToInt(tag, 0, tag.length);
+    }
+
+    /**
+     * Same as {@link #tagToInt(byte[])} for a tag within a buffer, such as one being decoded.
+     */
+    static int tagToInt(byte[] buffer, int offset, int length) throws TLVException {
+
+        validateTag(buffer, offset, length);
 
-        if (tag.length > 4) {
+        if (length > 4) {
             throw new TLVException("Cannot convert tag more than 4 bytes long into an integer");
         }
 
         int tagAsInteger = 0;
-        for (int i = 0; i < tag.length; i++) {
-            tagAsInteger |= (tag[i] & 0xff) << (8 * (tag.length - i - 1));
+        for (int i = 0; i < length; i++) {
+            tagAsInteger |= (buffer[offset + i] & 0xff) << (8 * (length - i - 1));
         }
         return tagAsInteger;
     }
 
     static void validateTag(byte[] tag) throws TLVException {
 
-        if (tag == null || tag.length == 0) {
+        if (tag == null) {
+            throw new TLVException("Malformed tag: empty");
+        }
+        validateTag(tag, 0, tag.length);
+    }
+
+    /**
+     * Same as {@link #validateTag(byte[])} for a tag within a buffer, such as one being decoded.
+     */
+    static void validateTag(byte[] buffer, int offset, int length) throws TLVException {
+
+        if (length == 0) {
             throw new TLVException("Malformed tag: empty");
         }
 
@@ -30,22 +52,22 @@ public class TLVUtils {
          UNUSED: Leading byte, B8 + B7 is application class
          UNUSED: Leading byte, B6 is primitive/constructed flag
          */
-        boolean isMultiByteTag = (tag[0] & 0x1f) == 0x1f;
+        boolean isMultiByteTag = (buffer[offset] & 0x1f) == 0x1f;
 
         if (isMultiByteTag) {
-            if (1 == tag.length) {
+            if (1 == length) {
                 throw new TLVException("Malformed tag: indicates multibyte, but is not");
             }
-            if (0x80 == (tag[tag.length - 1] & 0x80)) {
+            if (0x80 == (buffer[offset + length - 1] & 0x80)) {
                 throw new TLVException("Malformed tag: multibyte, but last byte doesn't close");
             }
-            for (int i = 1; i < tag.length - 1; i++) {
-                if (0x80 != (tag[i] & 0x80)) {
+            for (int i = 1; i < length - 1; i++) {
+                if (0x80 != (buffer[offset + i] & 0x80)) {
                     throw new TLVException("Malformed tag: multibyte, but 0x80 not set in tag byte " + i);
                 }
             }
         } else {
-            if (1 != tag.length) {
+            if (1 != length) {
                 throw new TLVException("Malformed tag: indicates single byte, but is not");
             }
         }
@@ -0,0 +1,109 @@
+package com.izettle.tlv;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A decoded TLV that refers to the tag, length and value where they are in the decoded data instead of holding copies
+ * of them, made by {@link TLVDecoder#decodeViews(byte[])}. Arrays are only made when asked for, so the data must not be
+ * changed while a view of it is in use.
+ */
+public final class TLVView {
+
+    private final byte[] buffer;
+    private final int start;
+    private final int tagOffset;
+    private final int lengthOffset;
+    private final int valueOffset;
+    private final int valueLength;
+    private final int tag;
+
+    TLVView(byte[] buffer, int start, int tagOffset, int lengthOffset, int valueOffset, int valueLength, int tag) {
+        this.buffer = buffer;
+        this.start = start;
+        this.tagOffset = tagOffset;
+        this.lengthOffset = lengthOffset;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
+        this.tag = tag;
+    }
+
+    public byte[] getTag() {
+        return Arrays.copyOfRange(buffer, tagOffset, lengthOffset);
+    }
+
+    /**
+     * @return the tag as an integer, such as 0x9F02
+     */
+    public int getTagAsInt() {
+        return tag;
+    }
+
+    public byte[] getLength() {
+        return Arrays.copyOfRange(buffer, lengthOffset, valueOffset);
+    }
+
+    public byte[] getValue() {
+        return Arrays.copyOfRange(buffer, valueOffset, valueOffset + valueLength);
+    }
+
+    /**
+     * @return the offset of the tag from the start of the decoded data
+     */
+    public int getOffset() {
+        return tagOffset - start;
+    }
+
+    /**
+     * @return the offset of the value from the start of the decoded data
+     */
+    public int getValueOffset() {
+        return valueOffset - start;
+    }
+
+    public int getValueLength() {
+        return valueLength;
+    }
+
+    /**
+     * @param index the index of a byte in the value
+     * @return the byte, without copying the value
+     */
+    public byte getValueByte(int index) {
+        if (index < 0 || index >= valueLength) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside value of length " + valueLength);
+        }
+        return buffer[valueOffset + index];
+    }
+
+    /**
+     * Copies the value into an array of the caller, such as one reused between views.
+     */
+    public void copyValueTo(byte[] destination, int destinationOffset) {
+        System.arraycopy(buffer, valueOffset, destination, destinationOffset, valueLength);
+    }
+
+    /**
+     * @return a read only buffer of the value, sharing the decoded data
+     */
+    public ByteBuffer getValueBuffer() {
+        return ByteBuffer.wrap(buffer, valueOffset, valueLength).slice().asReadOnlyBuffer();
+    }
+
+    public byte[] toBytes() {
+        return Arrays.copyOfRange(buffer, tagOffset, valueOffset + valueLength);
+    }
+
+    public TLV toTLV() {
+        return new TLV(getTag(), getLength(), getValue());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "[T:%s L:%s V:%s]",
+            Hex.toHexString(getTag()),
+            Hex.toHexString(getLength()),
+            Hex.toHexString(getValue()));
+    }
+}
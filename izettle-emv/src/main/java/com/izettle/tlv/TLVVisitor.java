@@ -0,0 +1,18 @@
+package com.izettle.tlv;
+
+/**
+ * Receives the TLVs found by {@link TLVDecoder#decode(byte[], TLVVisitor)} as they are decoded, in the order of the
+ * data, so that a few tags can be picked out without making objects for all of them.
+ */
+public interface TLVVisitor {
+
+    /**
+     * @param tag the tag as an integer, such as 0x9F02
+     * @param offset the offset of the value from the start of the decoded data
+     * @param length the length of the value
+     * @param depth the number of expanded tags the TLV is found in, zero at the top level
+     * @return true to go on decoding, false to stop after this TLV
+     * @throws TLVException to stop decoding with an error
+     */
+    boolean onTag(int tag, int offset, int length, int depth) throws TLVException;
+}
@@ -0,0 +1,212 @@
+package com.izettle.tlv;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes TLVs one after the other into a single buffer, encoded like {@link TLVEncoder}, instead of making a
+ * {@link TLV} of each and joining their bytes. A constructed tag is written around the TLVs added between
+ * {@link #begin(byte[])} and {@link #end()}: its length is written when it ends, in the byte kept for it, so the TLVs
+ * within it are only moved if they turn out to need more than one length byte, being over 127 bytes.
+ * <p>
+ * The writer either grows a buffer of its own, or writes into one given by the caller from its position, which is
+ * moved along as TLVs are written, and throws {@link BufferOverflowException} if that buffer is full. It can be
+ * {@link #reset()} to write another message into the same buffer.
+ */
+public final class TLVWriter {
+
+    private ByteBuffer buffer;
+    private final boolean growable;
+    private final int start;
+    private final byte[] tagBytes = new byte[4];
+    private final byte[] lengthBytes = new byte[5];
+    private int[] lengthOffsets = new int[8];
+    private int depth;
+
+    public TLVWriter() {
+        this.buffer = ByteBuffer.allocate(256);
+        this.growable = true;
+        this.start = 0;
+    }
+
+    /**
+     * @param buffer the buffer to write into, from its position
+     */
+    public TLVWriter(ByteBuffer buffer) {
+        this.buffer = requireNonNull(buffer, "Buffer cannot be null");
+        this.growable = false;
+        this.start = buffer.position();
+    }
+
+    /**
+     * Writes a primitive TLV.
+     * @param tag Tag bytes
+     * @param value Data bytes
+     * @return this writer
+     * @throws TLVException on malformed inputs
+     */
+    public TLVWriter add(byte[] tag, byte[] value) throws TLVException {
+        TLVUtils.validateTag(tag);
+        if (null == value) {
+            throw new TLVException("Value cannot be null");
+        }
+        ensureRemaining(tag.length + TLVEncoder.lengthSize(value.length) + value.length);
+        buffer.put(tag);
+        putLength(value.length);
+        buffer.put(value);
+        return this;
+    }
+
+    /**
+     * Writes a primitive TLV.
+     * @param tag Tag as an integer, such as 0x9F02
+     * @param value Data bytes
+     * @return this writer
+     * @throws TLVException on malformed inputs
+     */
+    public TLVWriter add(int tag, byte[] value) throws TLVException {
+        int tagLength = tagBytes(tag);
+        if (null == value) {
+            throw new TLVException("Value cannot be null");
+        }
+        ensureRemaining(tagLength + TLVEncoder.lengthSize(value.length) + value.length);
+        buffer.put(tagBytes, tagBytes.length - tagLength, tagLength);
+        putLength(value.length);
+        buffer.put(value);
+        return this;
+    }
+
+    /**
+     * Starts a constructed TLV, holding the TLVs written until the matching {@link #end()}.
+     * @param tag Tag bytes
+     * @return this writer
+     * @throws TLVException on malformed tag
+     */
+    public TLVWriter begin(byte[] tag) throws TLVException {
+        TLVUtils.validateTag(tag);
+        ensureRemaining(tag.length + 1);
+        buffer.put(tag);
+        return beginValue();
+    }
+
+    /**
+     * Starts a constructed TLV, holding the TLVs written until the matching {@link #end()}.
+     * @param tag Tag as an integer, such as 0x70
+     * @return this writer
+     * @throws TLVException on malformed tag
+     */
+    public TLVWriter begin(int tag) throws TLVException {
+        int tagLength = tagBytes(tag);
+        ensureRemaining(tagLength + 1);
+        buffer.put(tagBytes, tagBytes.length - tagLength, tagLength);
+        return beginValue();
+    }
+
+    private TLVWriter beginValue() {
+        if (depth == lengthOffsets.length) {
+            lengthOffsets = Arrays.copyOf(lengthOffsets, 2 * depth);
+        }
+        lengthOffsets[depth++] = buffer.position();
+        // A single length byte, for as long as the value fits in it
+        buffer.put((byte) 0);
+        return this;
+    }
+
+    /**
+     * Ends the constructed TLV started last, writing its length.
+     * @return this writer
+     * @throws TLVException if there is no constructed TLV to end
+     */
+    public TLVWriter end() throws TLVException {
+        if (depth == 0) {
+            throw new TLVException("No constructed tag to end");
+        }
+        int lengthOffset = lengthOffsets[--depth];
+        int valueOffset = lengthOffset + 1;
+        int length = buffer.position() - valueOffset;
+        int extraLengthBytes = TLVEncoder.lengthSize(length) - 1;
+        if (extraLengthBytes > 0) {
+            ensureRemaining(extraLengthBytes);
+            move(valueOffset, valueOffset + extraLengthBytes, length);
+            buffer.position(buffer.position() + extraLengthBytes);
+        }
+        int end = buffer.position();
+        buffer.position(lengthOffset);
+        putLength(length);
+        buffer.position(end);
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() {
+        return buffer.position() - start;
+    }
+
+    /**
+     * @return the bytes written, in an array of their own
+     * @throws TLVException if a constructed TLV hasn't ended
+     */
+    public byte[] toByteArray() throws TLVException {
+        if (depth > 0) {
+            throw new TLVException("Constructed tag not ended");
+        }
+        byte[] out = new byte[size()];
+        ByteBuffer written = buffer.duplicate();
+        written.position(start);
+        written.get(out);
+        return out;
+    }
+
+    /**
+     * Forgets the bytes written, to write again from the start of the buffer.
+     * @return this writer
+     */
+    public TLVWriter reset() {
+        buffer.position(start);
+        depth = 0;
+        return this;
+    }
+
+    private int tagBytes(int tag) throws TLVException {
+        int tagLength = Math.max(1, 4 - Integer.numberOfLeadingZeros(tag) / 8);
+        for (int i = 0; i < tagBytes.length; i++) {
+            tagBytes[i] = (byte) (tag >>> (8 * (tagBytes.length - i - 1)));
+        }
+        TLVUtils.validateTag(tagBytes, tagBytes.length - tagLength, tagLength);
+        return tagLength;
+    }
+
+    private void putLength(int l) {
+        buffer.put(lengthBytes, 0, TLVEncoder.encodeLength(l, lengthBytes, 0));
+    }
+
+    private void move(int from, int to, int length) {
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            System.arraycopy(buffer.array(), offset + from, buffer.array(), offset + to, length);
+        } else {
+            // Moved towards the end, so from the last byte
+            for (int i = length - 1; i >= 0; i--) {
+                buffer.put(to + i, buffer.get(from + i));
+            }
+        }
+    }
+
+    private void ensureRemaining(int needed) {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        if (!growable) {
+            throw new BufferOverflowException();
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + needed));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
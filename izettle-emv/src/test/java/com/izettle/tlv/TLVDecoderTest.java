@@ -3,6 +3,8 @@ package com.izettle.tlv;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertEquals;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -232,4 +234,77 @@ public class TLVDecoderTest {
         // Act
         new TLVDecoder().decode(tlvData);
     }
+
+    @Test
+    public void testVisitorGetsTagsWithDepth() throws Exception {
+        byte[] tlvData = Hex.hexToByteArray("5A01AAE109E2045F2A01BB9F0200");
+        TLVDecoder dec = new TLVDecoder();
+        dec.addExpandTag(Hex.hexToByteArray("E1"));
+        dec.addExpandTag(Hex.hexToByteArray("E2"));
+        List<String> visited = new ArrayList<>();
+        dec.decode(tlvData, (tag, offset, length, depth) -> {
+            visited.add(Integer.toHexString(tag) + " " + offset + " " + length + " " + depth);
+            return true;
+        });
+        assertEquals("[5a 2 1 0, 5f2a 10 1 2, 9f02 14 0 1]", visited.toString());
+    }
+
+    @Test
+    public void testVisitorStopsDecoding() throws Exception {
+        // Garbage after the wanted tag isn't decoded
+        byte[] tlvData = Hex.hexToByteArray("5A01AA9F02020100570190");
+        List<Integer> lengths = new ArrayList<>();
+        new TLVDecoder().decode(ByteBuffer.wrap(tlvData, 3, 8), (tag, offset, length, depth) -> {
+            lengths.add(length);
+            return tag != 0x9F02;
+        });
+        assertEquals(1, lengths.size());
+        assertEquals(2, (int) lengths.get(0));
+    }
+
+    @Test
+    public void testVisitorOffsetsInBuffer() throws Exception {
+        byte[] tlvData = Hex.hexToByteArray("5A01AA9F02020100");
+        ByteBuffer direct = ByteBuffer.allocateDirect(tlvData.length);
+        direct.put(tlvData).position(3);
+        List<Integer> offsets = new ArrayList<>();
+        new TLVDecoder().decode(direct, (tag, offset, length, depth) -> offsets.add(offset));
+        assertEquals(1, offsets.size());
+        assertEquals(3, (int) offsets.get(0));
+        assertEquals(3, direct.position());
+    }
+
+    @Test
+    public void testManyTags() throws Exception {
+        byte[] tlvData = new byte[200000];
+        for (int i = 0; i < tlvData.length; i += 2) {
+            tlvData[i] = 0x5A;
+        }
+        TLVDecoder dec = new TLVDecoder();
+        dec.setStrictMode(true);
+        Assert.assertEquals(100000, dec.decode(tlvData).size());
+    }
+
+    @Test
+    public void testDeeplyNestedExpands() throws Exception {
+        byte[] tlvData = new byte[4 * 10000 + 3];
+        tlvData[tlvData.length - 3] = 0x5A;
+        tlvData[tlvData.length - 2] = 0x01;
+        for (int i = 0; i < 10000; i++) {
+            int length = tlvData.length - 4 * i - 4;
+            tlvData[4 * i] = (byte) 0xE1;
+            tlvData[4 * i + 1] = (byte) 0x82;
+            tlvData[4 * i + 2] = (byte) (length >> 8);
+            tlvData[4 * i + 3] = (byte) length;
+        }
+        TLVDecoder dec = new TLVDecoder();
+        dec.addExpandTag(Hex.hexToByteArray("E1"));
+        int[] depths = new int[1];
+        dec.decode(tlvData, (tag, offset, length, depth) -> {
+            depths[0] = depth;
+            return true;
+        });
+        assertEquals(10000, depths[0]);
+        Assert.assertEquals("[T:5A L:01 V:00]", dec.decode(tlvData).get(0).toString());
+    }
 }
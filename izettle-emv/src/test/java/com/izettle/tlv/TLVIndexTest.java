@@ -0,0 +1,98 @@
+package com.izettle.tlv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TLVIndexTest {
+
+    @Test
+    public void testLookupByTag() throws Exception {
+
+        byte[] tlvData = Hex.hexToByteArray("9F02060000000010005A0847617390010100105F340101");
+        TLVIndex index = new TLVDecoder().decodeIndex(tlvData);
+
+        assertEquals(3, index.size());
+        Assert.assertEquals("000000001000", Hex.toHexString(index.getValue(0x9F02)));
+        Assert.assertEquals("4761739001010010", Hex.toHexString(index.get(0x5A).getValue()));
+        Assert.assertEquals(0x5F34, index.get(0x5F34).getTagAsInt());
+        Assert.assertTrue(index.contains(0x5A));
+        Assert.assertFalse(index.contains(0x57));
+        Assert.assertNull(index.get(0x57));
+        Assert.assertNull(index.getValue(0x57));
+        Assert.assertTrue(index.getAll(0x57).isEmpty());
+    }
+
+    @Test
+    public void testNestedTemplatesAndRepeatedTags() throws Exception {
+
+        byte[] tlvData = Hex.hexToByteArray("7006570111E1015A70085A0122E1035A0133");
+        TLVDecoder dec = new TLVDecoder();
+        dec.addExpandTag(Hex.hexToByteArray("70"));
+        TLVIndex index = dec.decodeIndex(ByteBuffer.wrap(tlvData));
+
+        assertEquals(6, index.size());
+        List<TLVView> templates = index.getAll(0x70);
+        assertEquals(2, templates.size());
+        Assert.assertEquals("[T:70 L:06 V:570111E1015A]", templates.get(0).toString());
+        Assert.assertEquals(8, templates.get(1).getOffset());
+        Assert.assertEquals("[T:57 L:01 V:11]", index.get(0x57).toString());
+
+        // E1 isn't expanded, so the 5A within it isn't found
+        List<TLVView> e1 = index.getAll(0xE1);
+        assertEquals(2, e1.size());
+        Assert.assertEquals("5A0133", Hex.toHexString(e1.get(1).getValue()));
+        List<TLVView> pans = index.getAll(0x5A);
+        assertEquals(1, pans.size());
+        Assert.assertEquals("[T:5A L:01 V:22]", pans.get(0).toString());
+
+        assertEquals(index.getTLVs().get(0), templates.get(0));
+        assertEquals(index.getTLVs().get(4), pans.get(0));
+    }
+
+    @Test
+    public void testZeroTagInStrictMode() throws Exception {
+
+        TLVDecoder dec = new TLVDecoder();
+        dec.setStrictMode(true);
+        TLVIndex index = dec.decodeIndex(Hex.hexToByteArray("5A01AA00000000"));
+        assertEquals(2, index.getAll(0).size());
+        Assert.assertTrue(index.contains(0x5A));
+    }
+
+    @Test
+    public void testSameTLVsAsViews() throws Exception {
+
+        Random random = new Random(49L);
+        for (int run = 0; run < 1000; run++) {
+            byte[] tlvData = new byte[0];
+            int count = random.nextInt(200);
+            for (int i = 0; i < count; i++) {
+                int tag = random.nextBoolean() ? 0xDF00 | random.nextInt(0x80) : 0xC0 | random.nextInt(0x1F);
+                byte[] value = new byte[random.nextInt(4)];
+                random.nextBytes(value);
+                byte[] tagBytes = tag > 0xFF ? new byte[]{(byte) (tag >> 8), (byte) tag} : new byte[]{(byte) tag};
+                tlvData = ArrayUtils.concat(tlvData, new TLVEncoder().encode(tagBytes, value).toBytes());
+            }
+            TLVDecoder dec = new TLVDecoder();
+            List<TLVView> views = dec.decodeViews(tlvData);
+            TLVIndex index = dec.decodeIndex(tlvData);
+            assertEquals(views.size(), index.size());
+            for (int i = 0; i < views.size(); i++) {
+                assertEquals(views.get(i).toString(), index.getTLVs().get(i).toString());
+                List<String> expected = new ArrayList<>();
+                for (TLVView view : views) {
+                    if (view.getTagAsInt() == views.get(i).getTagAsInt()) {
+                        expected.add(view.toString());
+                    }
+                }
+                assertEquals(expected.toString(), index.getAll(views.get(i).getTagAsInt()).toString());
+            }
+        }
+    }
+}
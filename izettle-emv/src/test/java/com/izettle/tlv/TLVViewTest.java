@@ -0,0 +1,153 @@
+package com.izettle.tlv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TLVViewTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testViewsOfSimpleTag() throws Exception {
+
+        byte[] tlvData = Hex.hexToByteArray("9F4F820002FFDD");
+        TLVView view = new TLVDecoder().decodeViews(tlvData).get(0);
+
+        Assert.assertEquals("9F4F", Hex.toHexString(view.getTag()));
+        Assert.assertEquals(0x9F4F, view.getTagAsInt());
+        Assert.assertEquals("820002", Hex.toHexString(view.getLength()));
+        Assert.assertEquals("FFDD", Hex.toHexString(view.getValue()));
+        Assert.assertEquals(0, view.getOffset());
+        Assert.assertEquals(5, view.getValueOffset());
+        Assert.assertEquals(2, view.getValueLength());
+        Assert.assertEquals((byte) 0xDD, view.getValueByte(1));
+        Assert.assertEquals("9F4F820002FFDD", Hex.toHexString(view.toBytes()));
+        Assert.assertEquals("[T:9F4F L:820002 V:FFDD]", view.toString());
+    }
+
+    @Test
+    public void testViewsShareTheInput() throws Exception {
+
+        byte[] tlvData = Hex.hexToByteArray("5A02AABB");
+        TLVView view = new TLVDecoder().decodeViews(tlvData).get(0);
+        tlvData[3] = (byte) 0xCC;
+
+        Assert.assertEquals("AACC", Hex.toHexString(view.getValue()));
+        ByteBuffer value = view.getValueBuffer();
+        Assert.assertEquals(0, value.position());
+        Assert.assertEquals(2, value.remaining());
+        Assert.assertEquals((byte) 0xCC, value.get(1));
+        Assert.assertTrue(value.isReadOnly());
+
+        byte[] copy = new byte[4];
+        view.copyValueTo(copy, 1);
+        Assert.assertEquals("00AACC00", Hex.toHexString(copy));
+    }
+
+    @Test
+    public void testDecodeByteBufferFromItsPosition() throws Exception {
+
+        byte[] tlvData = Hex.hexToByteArray("FFFF5A02AABB9F02020100FFFF");
+        ByteBuffer buffer = ByteBuffer.wrap(tlvData, 2, 9).slice();
+        buffer.position(4);
+        List<TLVView> views = new TLVDecoder().decodeViews(buffer);
+
+        assertEquals(4, buffer.position());
+        assertEquals(1, views.size());
+        Assert.assertEquals(0x9F02, views.get(0).getTagAsInt());
+        Assert.assertEquals(0, views.get(0).getOffset());
+        Assert.assertEquals(3, views.get(0).getValueOffset());
+        Assert.assertEquals("0100", Hex.toHexString(views.get(0).getValue()));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(tlvData.length);
+        direct.put(tlvData).position(2).limit(11);
+        views = new TLVDecoder().decodeViews(direct);
+        assertEquals(2, views.size());
+        Assert.assertEquals("[T:5A L:02 V:AABB]", views.get(0).toString());
+        Assert.assertEquals(4, views.get(1).getOffset());
+    }
+
+    @Test
+    public void testViewsWithExpandersAndPadding() throws Exception {
+
+        TLVDecoder dec = new TLVDecoder();
+        dec.addExpandTag(Hex.hexToByteArray("E1"));
+        dec.addExpandTag(Hex.hexToByteArray("E2"));
+        dec.addExpandTag(Hex.hexToByteArray("E1"));
+        List<TLVView> views = dec.decodeViews(Hex.hexToByteArray("0000E10900E203E3010100000057010200"));
+
+        assertEquals(2, views.size());
+        Assert.assertEquals("[T:E3 L:01 V:01]", views.get(0).toString());
+        Assert.assertEquals(7, views.get(0).getOffset());
+        Assert.assertEquals("[T:57 L:01 V:02]", views.get(1).toString());
+    }
+
+    @Test
+    public void testTruncatedMultiByteLength() throws Exception {
+        thrown.expect(TLVException.class);
+        thrown.expectMessage("Malformed length, first length byte indiciates length that doesn't fit");
+        new TLVDecoder().decodeViews(Hex.hexToByteArray("5A81"));
+    }
+
+    @Test
+    public void testSameTagsAsDecode() throws Exception {
+
+        Random random = new Random(47L);
+        for (int run = 0; run < 10000; run++) {
+            TLVDecoder dec = new TLVDecoder();
+            dec.setStrictMode(random.nextBoolean());
+            dec.addExpandTag(Hex.hexToByteArray("E1"));
+            byte[] tlvData = randomTLVs(random, 2);
+            if (tlvData.length > 0 && random.nextInt(4) == 0) {
+                // Mostly well formed, but some of them broken
+                tlvData[random.nextInt(tlvData.length)] = (byte) random.nextInt();
+            }
+            List<TLV> expected;
+            try {
+                expected = dec.decode(tlvData);
+            } catch (TLVException e) {
+                try {
+                    dec.decodeViews(tlvData);
+                    Assert.fail("Expected " + e.getMessage() + " for " + Hex.toHexString(tlvData));
+                } catch (TLVException viewException) {
+                    assertEquals(e.getMessage(), viewException.getMessage());
+                }
+                continue;
+            }
+            List<TLVView> actual = dec.decodeViews(tlvData);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).toString(), actual.get(i).toString());
+                assertEquals(TLVUtils.tagToInt(expected.get(i).getTag()), actual.get(i).getTagAsInt());
+            }
+        }
+    }
+
+    private static byte[] randomTLVs(Random random, int depth) throws TLVException {
+
+        TLVEncoder enc = new TLVEncoder();
+        byte[][] tags = {
+            Hex.hexToByteArray("5A"), Hex.hexToByteArray("57"), Hex.hexToByteArray("9F02"), Hex.hexToByteArray("00")
+        };
+        byte[] out = new byte[0];
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            if (depth > 0 && random.nextInt(3) == 0) {
+                out = ArrayUtils.concat(out, enc.encode(Hex.hexToByteArray("E1"), randomTLVs(random, depth - 1))
+                    .toBytes());
+            } else {
+                byte[] value = new byte[random.nextInt(3) == 0 ? 130 + random.nextInt(200) : random.nextInt(8)];
+                random.nextBytes(value);
+                out = ArrayUtils.concat(out, enc.encode(tags[random.nextInt(tags.length)], value).toBytes());
+            }
+        }
+        return out;
+    }
+}
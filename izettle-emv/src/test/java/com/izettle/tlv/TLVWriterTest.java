@@ -0,0 +1,168 @@
+package com.izettle.tlv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TLVWriterTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testSameBytesAsEncoder() throws Exception {
+
+        TLVEncoder enc = new TLVEncoder();
+        TLVWriter writer = new TLVWriter();
+        byte[] expected = new byte[0];
+        int[] lengths = {0, 1, 127, 128, 255, 256, 65535, 65536};
+        for (int length : lengths) {
+            byte[] value = new byte[length];
+            new Random(length).nextBytes(value);
+            writer.add(Hex.hexToByteArray("9F02"), value);
+            writer.add(0x5A, value);
+            expected = ArrayUtils.concat(expected, enc.encode(Hex.hexToByteArray("9F02"), value).toBytes(),
+                enc.encode(Hex.hexToByteArray("5A"), value).toBytes());
+        }
+        assertEquals(expected.length, writer.size());
+        Assert.assertArrayEquals(expected, writer.toByteArray());
+    }
+
+    @Test
+    public void testIntegerTags() throws Exception {
+        TLVWriter writer = new TLVWriter()
+            .add(0x00, new byte[0])
+            .add(0x57, new byte[0])
+            .add(0x9F02, new byte[0])
+            .add(0xDF8101, new byte[0])
+            .add(0xFF818101, new byte[0]);
+        Assert.assertEquals("000057009F0200DF810100FF81810100", Hex.toHexString(writer.toByteArray()));
+    }
+
+    @Test
+    public void testInvalidIntegerTag() throws Exception {
+        thrown.expect(TLVException.class);
+        thrown.expectMessage("Malformed tag: multibyte, but last byte doesn't close");
+        new TLVWriter().add(0x9F82, new byte[0]);
+    }
+
+    @Test
+    public void testNestedTags() throws Exception {
+
+        byte[] longValue = new byte[300];
+        byte[] tlvData = new TLVWriter()
+            .begin(0x70)
+            .add(0x5A, Hex.hexToByteArray("4761739001010010"))
+            .begin(Hex.hexToByteArray("BF0C"))
+            .add(0x9F4D, longValue)
+            .end()
+            .begin(0x77)
+            .end()
+            .end()
+            .add(0x9F36, Hex.hexToByteArray("001F"))
+            .toByteArray();
+
+        TLV template = new TLVEncoder().encode(Hex.hexToByteArray("70"), ArrayUtils.concat(
+            Hex.hexToByteArray("5A084761739001010010"),
+            new TLVEncoder().encode(Hex.hexToByteArray("BF0C"),
+                new TLVEncoder().encode(Hex.hexToByteArray("9F4D"), longValue).toBytes()).toBytes(),
+            Hex.hexToByteArray("7700")));
+        Assert.assertEquals(Hex.toHexString(template.toBytes()) + "9F3602001F", Hex.toHexString(tlvData));
+
+        TLVDecoder dec = new TLVDecoder();
+        dec.addExpandTag(Hex.hexToByteArray("70"));
+        dec.addExpandTag(Hex.hexToByteArray("BF0C"));
+        TLVIndex index = dec.decodeIndex(tlvData);
+        assertEquals(300, index.get(0x9F4D).getValueLength());
+        Assert.assertEquals("820131", Hex.toHexString(index.get(0xBF0C).getLength()));
+        Assert.assertEquals("001F", Hex.toHexString(index.getValue(0x9F36)));
+    }
+
+    @Test
+    public void testSameBytesAsEncoderWhenNested() throws Exception {
+
+        Random random = new Random(50L);
+        for (int run = 0; run < 200; run++) {
+            TLVWriter writer = new TLVWriter();
+            ByteBuffer direct = ByteBuffer.allocateDirect(1 << 18);
+            direct.position(3);
+            TLVWriter directWriter = new TLVWriter(direct);
+            byte[] expected = nested(random, 3, writer, directWriter);
+            Assert.assertArrayEquals(expected, writer.toByteArray());
+            Assert.assertArrayEquals(expected, directWriter.toByteArray());
+            assertEquals(3 + expected.length, direct.position());
+        }
+    }
+
+    private static byte[] nested(Random random, int depth, TLVWriter... writers) throws TLVException {
+
+        TLVEncoder enc = new TLVEncoder();
+        byte[] out = new byte[0];
+        int count = random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            if (depth > 0 && random.nextBoolean()) {
+                for (TLVWriter writer : writers) {
+                    writer.begin(0xE1);
+                }
+                byte[] value = nested(random, depth - 1, writers);
+                for (TLVWriter writer : writers) {
+                    writer.end();
+                }
+                out = ArrayUtils.concat(out, enc.encode(Hex.hexToByteArray("E1"), value).toBytes());
+            } else {
+                byte[] value = new byte[random.nextInt(3) == 0 ? random.nextInt(600) : random.nextInt(10)];
+                random.nextBytes(value);
+                for (TLVWriter writer : writers) {
+                    writer.add(0x9F10, value);
+                }
+                out = ArrayUtils.concat(out, enc.encode(Hex.hexToByteArray("9F10"), value).toBytes());
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void testWriteIntoBuffer() throws Exception {
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.put((byte) 0xFF);
+        TLVWriter writer = new TLVWriter(buffer).begin(0x70).add(0x5A, Hex.hexToByteArray("AABB")).end();
+        assertEquals(7, buffer.position());
+        buffer.flip();
+        buffer.get();
+        List<TLVView> views = new TLVDecoder().decodeViews(buffer);
+        Assert.assertEquals("[T:70 L:04 V:5A02AABB]", views.get(0).toString());
+
+        writer.reset().add(0x57, new byte[1]);
+        assertEquals(3, writer.size());
+        Assert.assertEquals("570100", Hex.toHexString(writer.toByteArray()));
+    }
+
+    @Test
+    public void testFullBuffer() throws Exception {
+        TLVWriter writer = new TLVWriter(ByteBuffer.allocate(4));
+        writer.add(0x5A, new byte[2]);
+        thrown.expect(BufferOverflowException.class);
+        writer.add(0x5A, new byte[0]);
+    }
+
+    @Test
+    public void testEndWithoutBegin() throws Exception {
+        thrown.expect(TLVException.class);
+        thrown.expectMessage("No constructed tag to end");
+        new TLVWriter().begin(0x70).end().end();
+    }
+
+    @Test
+    public void testBytesOfUnendedTag() throws Exception {
+        thrown.expect(TLVException.class);
+        thrown.expectMessage("Constructed tag not ended");
+        new TLVWriter().begin(0x70).toByteArray();
+    }
+}
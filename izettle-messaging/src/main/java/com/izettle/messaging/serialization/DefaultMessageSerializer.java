@@ -1,8 +1,13 @@
 package com.izettle.messaging.serialization;
 
+import static com.izettle.java.Base64.byteArrToB64String;
+import static java.util.Objects.requireNonNull;
+
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.izettle.cryptography.CryptographyException;
+import com.izettle.cryptography.EncryptionProfile;
+import com.izettle.cryptography.KeyRegistry;
 import com.izettle.cryptography.KeyUtil;
 import com.izettle.cryptography.PGP;
 import java.io.ByteArrayInputStream;
@@ -13,27 +18,62 @@ import org.bouncycastle.openpgp.PGPPublicKey;
 public class DefaultMessageSerializer implements MessageSerializer {
 
     private final PGPPublicKey publicKey;
+    private final KeyRegistry keyRegistry;
+    private final EncryptionProfile encryptionProfile;
     private static final ObjectMapper JSON_MAPPER = JsonSerializer.getInstance();
 
     public DefaultMessageSerializer(byte[] publicPgpKey) throws CryptographyException {
+        this(publicPgpKey, EncryptionProfile.LEGACY);
+    }
+
+    /**
+     * @param publicPgpKey the armored public key to encrypt messages with
+     * @param encryptionProfile how to encrypt messages. Binary (non armored) output is base 64 encoded, which
+     * {@link MessageDeserializer} detects and handles.
+     * @throws CryptographyException if the public key cannot be read
+     */
+    public DefaultMessageSerializer(
+        byte[] publicPgpKey,
+        EncryptionProfile encryptionProfile
+    ) throws CryptographyException {
+        this.encryptionProfile = requireNonNull(encryptionProfile, "encryptionProfile");
         try (InputStream publicPgpKeyInputStream = new ByteArrayInputStream(publicPgpKey)) {
             this.publicKey = KeyUtil.findPublicKey(publicPgpKeyInputStream);
         } catch (IOException e) {
             throw new CryptographyException("Could not create public PGP key", e);
         }
+        this.keyRegistry = null;
+    }
+
+    /**
+     * @param keyRegistry registry holding the public key to encrypt messages with. The key is looked up for each
+     * message, so that a reloaded registry takes effect immediately.
+     * @param encryptionProfile how to encrypt messages
+     */
+    public DefaultMessageSerializer(KeyRegistry keyRegistry, EncryptionProfile encryptionProfile) {
+        this.publicKey = null;
+        this.keyRegistry = requireNonNull(keyRegistry, "keyRegistry");
+        this.encryptionProfile = requireNonNull(encryptionProfile, "encryptionProfile");
     }
 
     public DefaultMessageSerializer() {
         this.publicKey = null;
+        this.keyRegistry = null;
+        this.encryptionProfile = null;
     }
 
     @Override
     public String encrypt(String message) throws CryptographyException {
-        if (publicKey == null) {
+        final PGPPublicKey key = keyRegistry != null ? keyRegistry.getEncryptionKey() : publicKey;
+        if (key == null) {
             return message;
         }
 
-        return new String(PGP.encrypt(message.getBytes(), publicKey));
+        final byte[] encrypted = PGP.encrypt(message.getBytes(), encryptionProfile, key);
+        if (encryptionProfile.isArmored()) {
+            return new String(encrypted);
+        }
+        return byteArrToB64String(encrypted);
     }
 
     @Override
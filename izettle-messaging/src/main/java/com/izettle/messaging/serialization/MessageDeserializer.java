@@ -1,18 +1,24 @@
 package com.izettle.messaging.serialization;
 
+import static com.izettle.java.Base64.b64StringToByteArr;
 import static com.izettle.java.ValueChecks.anyNull;
 import static com.izettle.java.ValueChecks.empty;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.izettle.cryptography.CryptographyException;
+import com.izettle.cryptography.KeyRegistry;
 import com.izettle.cryptography.PGP;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 public class MessageDeserializer<M> {
 
+    private static final String ARMOR_HEADER = "-----BEGIN PGP";
+
     private final byte[] privatePgpKey;
+    private final KeyRegistry keyRegistry;
     private final String privatePgpKeyPassphrase;
     private final ObjectMapper objectMapper;
     private final Class<M> messageClass;
@@ -24,6 +30,26 @@ public class MessageDeserializer<M> {
         ObjectMapper objectMapper
     ) {
         this.privatePgpKey = privatePgpKey;
+        this.keyRegistry = null;
+        this.privatePgpKeyPassphrase = privatePgpKeyPassphrase;
+        this.messageClass = messageClass;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param messageClass the type of the messages
+     * @param keyRegistry registry holding the secret key, parsed once instead of for every message
+     * @param privatePgpKeyPassphrase passphrase of the secret key
+     * @param objectMapper mapper used for deserialization
+     */
+    public MessageDeserializer(
+        Class<M> messageClass,
+        KeyRegistry keyRegistry,
+        final String privatePgpKeyPassphrase,
+        ObjectMapper objectMapper
+    ) {
+        this.privatePgpKey = null;
+        this.keyRegistry = keyRegistry;
         this.privatePgpKeyPassphrase = privatePgpKeyPassphrase;
         this.messageClass = messageClass;
         this.objectMapper = objectMapper;
@@ -32,20 +58,43 @@ public class MessageDeserializer<M> {
     public MessageDeserializer(Class<M> messageClass, ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
         this.privatePgpKey = null;
+        this.keyRegistry = null;
         this.privatePgpKeyPassphrase = null;
         this.messageClass = messageClass;
     }
 
     public String decrypt(String encrypted) throws IOException, CryptographyException {
+        if (!anyNull(keyRegistry, privatePgpKeyPassphrase)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(encrypted.length());
+            PGP.decrypt(new ByteArrayInputStream(toPgpBytes(encrypted)), out, keyRegistry, privatePgpKeyPassphrase);
+            return new String(out.toByteArray(), "UTF-8");
+        }
         if (!anyNull(privatePgpKey, privatePgpKeyPassphrase)) {
             // noinspection ConstantConditions
             try (ByteArrayInputStream keyStream = new ByteArrayInputStream(privatePgpKey)) {
-                return new String(PGP.decrypt(encrypted.getBytes(), keyStream, privatePgpKeyPassphrase), "UTF-8");
+                return new String(PGP.decrypt(toPgpBytes(encrypted), keyStream, privatePgpKeyPassphrase), "UTF-8");
             }
         }
         return encrypted;
     }
 
+    /**
+     * Armored messages are passed to PGP as-is, anything else is expected to be binary PGP data in base 64 (as
+     * produced by {@link DefaultMessageSerializer} with a non armored profile).
+     * @throws CryptographyException if the message is not valid base 64
+     */
+    private static byte[] toPgpBytes(String encrypted) throws CryptographyException {
+        final String trimmed = encrypted.trim();
+        if (trimmed.startsWith(ARMOR_HEADER)) {
+            return encrypted.getBytes();
+        }
+        try {
+            return b64StringToByteArr(trimmed);
+        } catch (RuntimeException e) {
+            throw new CryptographyException("Message is neither armored nor base 64 encoded.", e);
+        }
+    }
+
     public M deserialize(String message) throws IOException {
         return objectMapper.readValue(message, messageClass);
     }
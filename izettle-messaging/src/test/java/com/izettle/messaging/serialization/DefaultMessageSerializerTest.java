@@ -7,6 +7,8 @@ import static org.junit.Assert.assertTrue;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.izettle.cryptography.CryptographyException;
+import com.izettle.cryptography.EncryptionProfile;
+import com.izettle.cryptography.KeyRegistry;
 import com.izettle.java.DateFormatCreator;
 import com.izettle.java.ResourceUtils;
 import com.izettle.java.TimeZoneId;
@@ -80,6 +82,56 @@ public class DefaultMessageSerializerTest {
         assertEquals(msg.getMessage(), deserializedMessage.getMessage());
     }
 
+    @Test
+    public void encryptAndDecryptUsingBinaryProfileShouldResultInTheSameMessage() throws Exception {
+        DefaultMessageSerializer binarySerializer = new DefaultMessageSerializer(
+            ResourceUtils.getResourceAsBytes("pgp-example-public.key"),
+            EncryptionProfile.AES_256_BINARY
+        );
+        TestMessage msg = new TestMessage("message in a bottle");
+        String encryptedBody = binarySerializer.encrypt(binarySerializer.serialize(msg));
+        String armoredBody = pgpSerializer.encrypt(pgpSerializer.serialize(msg));
+        assertTrue(encryptedBody.length() < armoredBody.length());
+        TestMessage deserializedMessage = pgpDeserializer.deserialize(pgpDeserializer.decrypt(encryptedBody));
+        assertEquals(msg.getMessage(), deserializedMessage.getMessage());
+    }
+
+    @Test
+    public void encryptAndDecryptUsingKeyRegistryShouldResultInTheSameMessage() throws Exception {
+        KeyRegistry keyRegistry = KeyRegistry.fromResources("pgp-example-public.key", "pgp-example-private.key");
+        DefaultMessageSerializer serializer = new DefaultMessageSerializer(keyRegistry, EncryptionProfile.LEGACY);
+        MessageDeserializer<TestMessage> deserializer =
+            new MessageDeserializer<>(TestMessage.class, keyRegistry, "example", JsonSerializer.getInstance());
+        TestMessage msg = new TestMessage("message in a bottle");
+        String encryptedBody = serializer.encrypt(serializer.serialize(msg));
+        TestMessage deserializedMessage = deserializer.deserialize(deserializer.decrypt(encryptedBody));
+        assertEquals(msg.getMessage(), deserializedMessage.getMessage());
+        // messages encrypted without the registry are still readable
+        assertEquals(msg.getMessage(), deserializer.deserialize(deserializer.decrypt(pgpSerializer.encrypt(
+            pgpSerializer.serialize(msg)))).getMessage());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void creatingPgpSerializerWithoutEncryptionProfileShouldFail() throws Exception {
+        new DefaultMessageSerializer(ResourceUtils.getResourceAsBytes("pgp-example-public.key"), null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void creatingKeyRegistrySerializerWithoutEncryptionProfileShouldFail() throws Exception {
+        KeyRegistry keyRegistry = KeyRegistry.fromResources("pgp-example-public.key", "pgp-example-private.key");
+        new DefaultMessageSerializer(keyRegistry, null);
+    }
+
+    @Test(expected = CryptographyException.class)
+    public void decryptingInvalidBase64ShouldFailWithCryptographyException() throws Exception {
+        pgpDeserializer.decrypt("{\"message\": \"not encrypted\"}");
+    }
+
+    @Test(expected = CryptographyException.class)
+    public void decryptingBase64WhichIsNotPgpShouldFailWithCryptographyException() throws Exception {
+        pgpDeserializer.decrypt("bm90IGEgcGdwIG1lc3NhZ2U=");
+    }
+
     @Test
     public void serializingMessageWithDateShouldFormatTheDateAccordingToRfc3339() throws Exception {
         // Arrange